@@ -0,0 +1,104 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.benchmark;
+
+import org.cloudfoundry.identity.uaa.audit.AuditEvent;
+import org.cloudfoundry.identity.uaa.audit.AuditEventType;
+import org.cloudfoundry.identity.uaa.audit.JdbcAuditService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of the recent audit events of a principal in a large <code>sec_audit</code>
+ * table, with and without the (principal_id, created) index. Every principal has
+ * ten events spread over the last day. The full size table takes a while to
+ * load; run with <code>-p rows=10000000</code> for ten million rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuditFindBenchmark {
+
+    private static final String INSERT_SQL = "insert into sec_audit (principal_id, event_type, origin, event_data, identity_zone_id, created) values (?,?,?,?,?,?)";
+    private static final int EVENTS_PER_PRINCIPAL = 10;
+    private static final int INSERT_BATCH_SIZE = 10000;
+
+    @Param({"100000", "1000000"})
+    private int rows;
+
+    @Param({"principal_created", "none"})
+    private String index;
+
+    private BenchmarkDatabase database;
+    private JdbcAuditService auditService;
+    private int principals;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        database = new BenchmarkDatabase(BenchmarkKeys.MAC, false);
+        JdbcTemplate jdbcTemplate = database.getJdbcTemplate();
+        if ("none".equals(index)) {
+            jdbcTemplate.execute("drop index audit_principal_created");
+        }
+        auditService = new JdbcAuditService(database.getDataSource());
+        principals = rows / EVENTS_PER_PRINCIPAL;
+        long now = System.currentTimeMillis();
+        long spacing = TimeUnit.DAYS.toMillis(1) / EVENTS_PER_PRINCIPAL;
+        String zoneId = database.getZone().getId();
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 0; i < rows; i++) {
+            AuditEventType type = i % 3 == 0 ? AuditEventType.UserAuthenticationFailure : AuditEventType.UserAuthenticationSuccess;
+            Timestamp created = new Timestamp(now - (i / principals) * spacing);
+            batch.add(new Object[] {"principal-" + (i % principals), type.getCode(), "1.1.1.1", "user", zoneId, created});
+            if (batch.size() == INSERT_BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<AuditEvent> findLastHour() {
+        String principal = "principal-" + ThreadLocalRandom.current().nextInt(principals);
+        return auditService.find(principal, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+    }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.benchmark;
+
+import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneConfiguration;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.JdbcIdentityZoneProvisioning;
+import org.cloudfoundry.identity.uaa.zone.TokenPolicy;
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.context.support.XmlWebApplicationContext;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+
+/**
+ * In memory HSQLDB database created with the UAA Flyway migrations, with the
+ * signing key of the uaa zone set to one of the {@link BenchmarkKeys}.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+
+    public static final String KEY_ID = "benchmark-key";
+
+    private final XmlWebApplicationContext context;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final LimitSqlAdapter limitSqlAdapter;
+    private final IdentityZone zone;
+
+    public BenchmarkDatabase(BenchmarkKeys key, boolean revocable) {
+        context = new XmlWebApplicationContext();
+        context.setConfigLocations(new String[] {"classpath:spring/env.xml", "classpath:spring/data-source.xml"});
+        context.refresh();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        dataSource = context.getBean(DataSource.class);
+        limitSqlAdapter = context.getBean(LimitSqlAdapter.class);
+
+        TokenPolicy tokenPolicy = new TokenPolicy(3600, 7200);
+        tokenPolicy.setKeys(Collections.singletonMap(KEY_ID, key.getSigningKey()));
+        tokenPolicy.setActiveKeyId(KEY_ID);
+        tokenPolicy.setJwtRevocable(revocable);
+
+        JdbcIdentityZoneProvisioning zoneProvisioning = new JdbcIdentityZoneProvisioning(jdbcTemplate);
+        IdentityZone uaa = zoneProvisioning.retrieve(IdentityZone.getUaa().getId());
+        IdentityZoneConfiguration config = new IdentityZoneConfiguration();
+        config.setTokenPolicy(tokenPolicy);
+        uaa.setConfig(config);
+        zone = zoneProvisioning.update(uaa);
+        IdentityZoneHolder.setProvisioning(zoneProvisioning);
+        bindZone();
+    }
+
+    /**
+     * Makes the benchmark zone the current zone of the calling thread.
+     */
+    public void bindZone() {
+        IdentityZoneHolder.set(zone);
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public JdbcPagingListFactory getPagingListFactory() {
+        return new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter);
+    }
+
+    public IdentityZone getZone() {
+        return zone;
+    }
+
+    @Override
+    public void close() {
+        IdentityZoneHolder.clear();
+        context.getBean(Flyway.class).clean();
+        ((org.apache.tomcat.jdbc.pool.DataSource) dataSource).close(true);
+        context.close();
+    }
+}
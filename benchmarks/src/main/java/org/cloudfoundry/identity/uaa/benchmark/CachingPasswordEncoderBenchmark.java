@@ -0,0 +1,74 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.benchmark;
+
+import org.cloudfoundry.identity.uaa.util.CachingPasswordEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Password checks against the caching password encoder from several threads, as
+ * done by concurrent password and client credentials grants. All passwords are
+ * matched once during setup, so the measurement covers the cached path.
+ * Run with <code>-t</code> to vary the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class CachingPasswordEncoderBenchmark {
+
+    @Param({"1", "100"})
+    private int users;
+
+    private CachingPasswordEncoder encoder;
+    private String[] passwords;
+    private String[] hashes;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        encoder = new CachingPasswordEncoder();
+        encoder.setPasswordEncoder(new BCryptPasswordEncoder(4));
+        passwords = new String[users];
+        hashes = new String[users];
+        for (int i = 0; i < users; i++) {
+            passwords[i] = "password-" + i;
+            hashes[i] = encoder.encode(passwords[i]);
+            encoder.matches(passwords[i], hashes[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean matches() {
+        int i = ThreadLocalRandom.current().nextInt(users);
+        return encoder.matches(passwords[i], hashes[i]);
+    }
+}
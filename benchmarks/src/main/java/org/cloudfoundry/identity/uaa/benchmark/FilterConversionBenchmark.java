@@ -0,0 +1,95 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.benchmark;
+
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.SCIMFilter;
+import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.jdbc.SearchQueryConverter.ProcessedFilter;
+import org.cloudfoundry.identity.uaa.scim.jdbc.ScimSearchQueryConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a SCIM filter and converting it to SQL, with and without the cache of
+ * converted filter shapes. Every invocation uses a different value so that only
+ * the shape can be reused.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterConversionBenchmark {
+
+    public enum Shape {
+        APPROVALS("user_id eq \"%s\" and client_id eq \"%s\""),
+        GROUP_NAME("displayName eq \"%s\""),
+        USER_SEARCH("(userName sw \"%s\" or emails.value co \"%s\") and origin eq \"uaa\" and active eq true");
+
+        private final String format;
+
+        Shape(String format) {
+            this.format = format;
+        }
+
+        String filter(int i) {
+            return String.format(format, "user-" + i, "client-" + i);
+        }
+    }
+
+    @Param({"APPROVALS", "GROUP_NAME", "USER_SEARCH"})
+    private Shape shape;
+
+    private ScimSearchQueryConverter uncached;
+    private ScimSearchQueryConverter cached;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        uncached = new ScimSearchQueryConverter();
+        uncached.setAttributeNameMapper(new SimpleAttributeNameMapper(Collections.singletonMap("emails\\.value", "email")));
+        uncached.setPlanCacheSize(0);
+        cached = new ScimSearchQueryConverter();
+        cached.setAttributeNameMapper(new SimpleAttributeNameMapper(Collections.singletonMap("emails\\.value", "email")));
+    }
+
+    @Benchmark
+    public SCIMFilter parse() throws SCIMException {
+        return SCIMFilter.parse(shape.filter(counter++));
+    }
+
+    @Benchmark
+    public ProcessedFilter convertUncached() {
+        return uncached.convert(shape.filter(counter++), null, true);
+    }
+
+    @Benchmark
+    public ProcessedFilter convertCached() {
+        return cached.convert(shape.filter(counter++), null, true);
+    }
+}
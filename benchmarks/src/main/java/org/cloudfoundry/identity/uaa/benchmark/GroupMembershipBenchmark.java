@@ -0,0 +1,99 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.benchmark;
+
+import org.cloudfoundry.identity.uaa.user.GroupMembershipSqlAdapter;
+import org.cloudfoundry.identity.uaa.user.IterativeGroupMembershipSqlAdapter;
+import org.cloudfoundry.identity.uaa.user.RecursiveGroupMembershipSqlAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nested group expansion for a user, comparing one query per group with a single
+ * recursive query. A <code>deep</code> graph is a chain of nested groups, a
+ * <code>wide</code> graph has every group as a direct membership that contains one
+ * further nested group.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupMembershipBenchmark {
+
+    private static final String USER_ID = "benchmark-user";
+    private static final String ADD_GROUP_SQL = "insert into groups (id, displayName, identity_zone_id) values (?,?,?)";
+    private static final String ADD_MEMBER_SQL = "insert into group_membership (group_id, member_id, member_type, authorities) values (?,?,?,?)";
+
+    @Param({"iterative", "recursive"})
+    private String adapter;
+
+    @Param({"deep", "wide"})
+    private String shape;
+
+    @Param({"10", "30", "100"})
+    private int groups;
+
+    private BenchmarkDatabase database;
+    private GroupMembershipSqlAdapter sqlAdapter;
+    private String zoneId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        database = new BenchmarkDatabase(BenchmarkKeys.MAC, false);
+        zoneId = database.getZone().getId();
+        sqlAdapter = "recursive".equals(adapter) ? new RecursiveGroupMembershipSqlAdapter() : new IterativeGroupMembershipSqlAdapter();
+
+        JdbcTemplate jdbcTemplate = database.getJdbcTemplate();
+        String memberId = USER_ID;
+        for (int i = 0; i < groups; i++) {
+            String groupId = "group-" + i;
+            jdbcTemplate.update(ADD_GROUP_SQL, groupId, "benchmark.group." + i, zoneId);
+            if ("deep".equals(shape)) {
+                jdbcTemplate.update(ADD_MEMBER_SQL, groupId, memberId, memberId.equals(USER_ID) ? "USER" : "GROUP", "MEMBER");
+                memberId = groupId;
+            } else {
+                String nestedId = "nested-" + i;
+                jdbcTemplate.update(ADD_GROUP_SQL, nestedId, "benchmark.nested." + i, zoneId);
+                jdbcTemplate.update(ADD_MEMBER_SQL, groupId, USER_ID, "USER", "MEMBER");
+                jdbcTemplate.update(ADD_MEMBER_SQL, nestedId, groupId, "GROUP", "MEMBER");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Set<String> getGroupNames() {
+        return sqlAdapter.getGroupNames(database.getJdbcTemplate(), USER_ID, zoneId);
+    }
+}
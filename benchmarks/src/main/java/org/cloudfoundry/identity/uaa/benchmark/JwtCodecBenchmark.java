@@ -0,0 +1,124 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.benchmark;
+
+import org.apache.commons.codec.binary.Base64;
+import org.cloudfoundry.identity.uaa.oauth.CommonSignatureVerifier;
+import org.cloudfoundry.identity.uaa.oauth.CommonSigner;
+import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
+import org.cloudfoundry.identity.uaa.oauth.jwt.Jwt;
+import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TokenValidation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.cloudfoundry.identity.uaa.util.TokenValidation.validate;
+
+/**
+ * Encoding, decoding and validation of JWTs with a claim set similar to a user
+ * access token. {@link #encodeLegacy()} is the string concatenating encoder
+ * that {@link JwtHelper} replaced, kept as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtCodecBenchmark {
+
+    @Param({"MAC", "RSA"})
+    private BenchmarkKeys key;
+
+    private CommonSigner signer;
+    private CommonSignatureVerifier verifier;
+    private Map<String, Object> header;
+    private Map<String, Object> claims;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        KeyInfo keyInfo = new KeyInfo();
+        keyInfo.setKeyId(BenchmarkDatabase.KEY_ID);
+        keyInfo.setSigningKey(key.getSigningKey());
+        signer = new CommonSigner(BenchmarkDatabase.KEY_ID, key.getSigningKey());
+        verifier = new CommonSignatureVerifier(keyInfo.getVerifierKey());
+
+        header = new LinkedHashMap<>();
+        header.put("alg", signer.algorithm());
+        header.put("kid", signer.keyId());
+
+        long now = System.currentTimeMillis() / 1000;
+        claims = new LinkedHashMap<>();
+        claims.put("jti", "0d5e4c5b0fb8495c9d0c3b9d1b4f0e2c");
+        claims.put("sub", "7f2a4b3c-6a0e-4c5f-9d0e-1b2c3d4e5f60");
+        claims.put("scope", Arrays.asList("openid", "scim.read", "scim.write", "password.write", "uaa.user"));
+        claims.put("client_id", "benchmark");
+        claims.put("cid", "benchmark");
+        claims.put("azp", "benchmark");
+        claims.put("grant_type", "password");
+        claims.put("user_id", "7f2a4b3c-6a0e-4c5f-9d0e-1b2c3d4e5f60");
+        claims.put("origin", "uaa");
+        claims.put("user_name", "benchmark-user");
+        claims.put("email", "benchmark-user@test.org");
+        claims.put("auth_time", now);
+        claims.put("rev_sig", "a1b2c3d4");
+        claims.put("iat", now);
+        claims.put("exp", now + 3600);
+        claims.put("iss", "http://localhost:8080/uaa/oauth/token");
+        claims.put("zid", "uaa");
+        claims.put("aud", Arrays.asList("benchmark", "scim", "openid", "password", "uaa"));
+
+        token = encode().getEncoded();
+    }
+
+    @Benchmark
+    public String encodeLegacy() {
+        String headerBase64 = Base64.encodeBase64URLSafeString(JsonUtils.writeValueAsBytes(header));
+        String claimsBase64 = Base64.encodeBase64URLSafeString(JsonUtils.writeValueAsBytes(claims));
+        String headerAndClaims = headerBase64 + "." + claimsBase64;
+        byte[] signature = signer.sign(headerAndClaims.getBytes());
+        return headerAndClaims + "." + Base64.encodeBase64URLSafeString(signature);
+    }
+
+    @Benchmark
+    public Jwt encode() {
+        return JwtHelper.encode(claims, signer);
+    }
+
+    @Benchmark
+    public Map<String, Object> decode() {
+        return JsonUtils.readValue(JwtHelper.decode(token).getClaims(), Map.class);
+    }
+
+    @Benchmark
+    public TokenValidation validateSignature() {
+        return validate(token).checkSignature(verifier);
+    }
+}
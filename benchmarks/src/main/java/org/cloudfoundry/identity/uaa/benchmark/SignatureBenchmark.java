@@ -0,0 +1,101 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.benchmark;
+
+import org.cloudfoundry.identity.uaa.oauth.CommonSignatureVerifier;
+import org.cloudfoundry.identity.uaa.oauth.CommonSigner;
+import org.cloudfoundry.identity.uaa.oauth.KeyInfo;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneConfiguration;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.TokenPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing, verification and active key lookup for MAC and RSA keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark {
+
+    private static final byte[] CONTENT = ("eyJhbGciOiJIUzI1NiIsImtpZCI6ImJlbmNobWFyay1rZXkifQ." +
+        "eyJqdGkiOiJiZW5jaG1hcmsiLCJzdWIiOiJ1c2VyIiwic2NvcGUiOlsib3BlbmlkIl0sImNpZCI6ImNsaWVudCJ9")
+        .getBytes(StandardCharsets.US_ASCII);
+
+    @Param({"MAC", "RSA"})
+    private BenchmarkKeys key;
+
+    private CommonSigner signer;
+    private CommonSignatureVerifier verifier;
+    private byte[] signature;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        KeyInfo keyInfo = new KeyInfo();
+        keyInfo.setKeyId(BenchmarkDatabase.KEY_ID);
+        keyInfo.setSigningKey(key.getSigningKey());
+        signer = new CommonSigner(BenchmarkDatabase.KEY_ID, key.getSigningKey());
+        verifier = new CommonSignatureVerifier(keyInfo.getVerifierKey());
+        signature = signer.sign(CONTENT);
+
+        TokenPolicy tokenPolicy = new TokenPolicy();
+        tokenPolicy.setKeys(Collections.singletonMap(BenchmarkDatabase.KEY_ID, key.getSigningKey()));
+        tokenPolicy.setActiveKeyId(BenchmarkDatabase.KEY_ID);
+        IdentityZoneConfiguration config = new IdentityZoneConfiguration();
+        config.setTokenPolicy(tokenPolicy);
+        IdentityZone zone = IdentityZone.getUaa();
+        zone.setConfig(config);
+        IdentityZoneHolder.set(zone);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        IdentityZoneHolder.clear();
+        KeyInfo.evictAllKeys();
+    }
+
+    @Benchmark
+    public byte[] sign() {
+        return signer.sign(CONTENT);
+    }
+
+    @Benchmark
+    public void verify() {
+        verifier.verify(CONTENT, signature);
+    }
+
+    @Benchmark
+    public KeyInfo activeKey() {
+        return KeyInfo.getActiveKey();
+    }
+}
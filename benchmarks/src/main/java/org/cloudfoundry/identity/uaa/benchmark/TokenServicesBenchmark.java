@@ -0,0 +1,170 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.benchmark;
+
+import org.cloudfoundry.identity.uaa.approval.JdbcApprovalStore;
+import org.cloudfoundry.identity.uaa.authentication.UaaPrincipal;
+import org.cloudfoundry.identity.uaa.oauth.UaaTokenServices;
+import org.cloudfoundry.identity.uaa.oauth.token.JdbcRevocableTokenProvisioning;
+import org.cloudfoundry.identity.uaa.oauth.token.TokenConstants;
+import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
+import org.cloudfoundry.identity.uaa.resources.jdbc.SimpleSearchQueryConverter;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcScimUserProvisioning;
+import org.cloudfoundry.identity.uaa.user.JdbcUaaUserDatabase;
+import org.cloudfoundry.identity.uaa.zone.MultitenantJdbcClientDetailsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.provider.AuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issuing and validating access tokens through {@link UaaTokenServices} backed
+ * by the JDBC client, user, approval and revocable token stores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenServicesBenchmark {
+
+    private static final String CLIENT_ID = "benchmark";
+    private static final String SCOPES = "openid,scim.read,scim.write,password.write";
+
+    @Param({"MAC", "RSA"})
+    private BenchmarkKeys key;
+
+    @Param({"jwt", TokenConstants.OPAQUE})
+    private String tokenFormat;
+
+    @Param({"false", "true"})
+    private boolean revocable;
+
+    private BenchmarkDatabase database;
+    private UaaTokenServices tokenServices;
+    private OAuth2Authentication userAuthentication;
+    private OAuth2Authentication clientAuthentication;
+    private String accessToken;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        database = new BenchmarkDatabase(key, revocable);
+        JdbcPagingListFactory pagingListFactory = database.getPagingListFactory();
+
+        MultitenantJdbcClientDetailsService clientDetailsService = new MultitenantJdbcClientDetailsService(database.getDataSource());
+        BaseClientDetails client = new BaseClientDetails(CLIENT_ID, "scim", SCOPES, "password,client_credentials", "uaa.resource,scim.read");
+        client.setClientSecret("secret");
+        clientDetailsService.addClientDetails(client);
+
+        ScimUser user = new ScimUser(null, "benchmark-user", "Benchmark", "User");
+        user.setPrimaryEmail("benchmark-user@test.org");
+        user = new JdbcScimUserProvisioning(database.getJdbcTemplate(), pagingListFactory).createUser(user, "password");
+        JdbcUaaUserDatabase userDatabase = new JdbcUaaUserDatabase(database.getJdbcTemplate());
+
+        tokenServices = new UaaTokenServices();
+        tokenServices.setClientDetailsService(clientDetailsService);
+        tokenServices.setUserDatabase(userDatabase);
+        tokenServices.setApprovalStore(new JdbcApprovalStore(database.getJdbcTemplate(), pagingListFactory, new SimpleSearchQueryConverter()));
+        tokenServices.setTokenProvisioning(new JdbcRevocableTokenProvisioning(database.getJdbcTemplate()));
+        tokenServices.setTokenPolicy(database.getZone().getConfig().getTokenPolicy());
+        tokenServices.setDefaultUserAuthorities(AuthorityUtils.authorityListToSet(AuthorityUtils.commaSeparatedStringToAuthorityList(SCOPES)));
+        tokenServices.setIssuer("http://localhost:8080/uaa");
+        tokenServices.afterPropertiesSet();
+
+        Authentication principal = new UsernamePasswordAuthenticationToken(
+            new UaaPrincipal(userDatabase.retrieveUserById(user.getId())), "n/a", null);
+        userAuthentication = new OAuth2Authentication(request("password"), principal);
+        clientAuthentication = new OAuth2Authentication(request("client_credentials"), null);
+        accessToken = tokenServices.createAccessToken(userAuthentication).getValue();
+    }
+
+    private OAuth2Request request(String grantType) {
+        AuthorizationRequest authorizationRequest = new AuthorizationRequest(CLIENT_ID, Arrays.asList(SCOPES.split(",")));
+        Map<String, String> parameters = new HashMap<>(authorizationRequest.getRequestParameters());
+        parameters.put(OAuth2Utils.GRANT_TYPE, grantType);
+        if (TokenConstants.OPAQUE.equals(tokenFormat)) {
+            parameters.put(TokenConstants.REQUEST_TOKEN_FORMAT, TokenConstants.OPAQUE);
+        }
+        authorizationRequest.setRequestParameters(parameters);
+        authorizationRequest.setApproved(true);
+        return authorizationRequest.createOAuth2Request();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    /**
+     * Binds the zone and the authenticated client to each benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadContext {
+        @Setup(Level.Trial)
+        public void bind(TokenServicesBenchmark benchmark) {
+            benchmark.database.bindZone();
+            SecurityContextHolder.getContext().setAuthentication(benchmark.clientAuthentication);
+        }
+
+        @TearDown(Level.Trial)
+        public void clear() {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Benchmark
+    public OAuth2AccessToken createPasswordToken(ThreadContext context) {
+        return tokenServices.createAccessToken(userAuthentication);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken createClientCredentialsToken(ThreadContext context) {
+        return tokenServices.createAccessToken(clientAuthentication);
+    }
+
+    @Benchmark
+    public OAuth2Authentication loadAuthentication(ThreadContext context) {
+        return tokenServices.loadAuthentication(accessToken);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken readAccessToken(ThreadContext context) {
+        return tokenServices.readAccessToken(accessToken);
+    }
+}
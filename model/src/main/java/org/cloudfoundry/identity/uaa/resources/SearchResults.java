@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.resources;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -27,6 +29,7 @@ public class SearchResults<T> {
     private int itemsPerPage;
     private int totalResults;
     private Collection<String> schemas;
+    private String nextCursor;
 
     public SearchResults() {}
     public SearchResults(Collection<String> schemas, Collection<T> resources, int startIndex, int itemsPerPage,
@@ -58,6 +61,19 @@ public class SearchResults<T> {
         return resources;
     }
 
+    /**
+     * @return the cursor of the next page when the results were requested with a
+     * cursor, or <code>null</code> on the last page
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder("SearchResults[schemas:");
@@ -19,6 +19,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
 
 
@@ -41,6 +42,14 @@ public class JsonUtils {
         }
     }
 
+    public static void writeValue(OutputStream out, Object object) throws JsonUtilException {
+        try {
+            objectMapper.writeValue(out, object);
+        } catch (IOException e) {
+            throw new JsonUtilException(e);
+        }
+    }
+
     public static <T> T readValue(String s, Class<T> clazz) throws JsonUtilException {
         try {
             if (StringUtils.hasText(s)) {
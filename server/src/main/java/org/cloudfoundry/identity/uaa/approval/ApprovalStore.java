@@ -14,7 +14,9 @@ package org.cloudfoundry.identity.uaa.approval;
 
 import org.cloudfoundry.identity.uaa.approval.Approval;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface ApprovalStore {
 
@@ -27,4 +29,6 @@ public interface ApprovalStore {
     public List<Approval> getApprovals(String filter);
 
     public List<Approval> getApprovals(String userId, String clientId);
+
+    public Map<String, List<Approval>> getApprovalsForUsers(Collection<String> userIds);
 }
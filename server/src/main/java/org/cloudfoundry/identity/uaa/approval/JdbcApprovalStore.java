@@ -18,10 +18,16 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.collect.Iterables;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.event.ApprovalModifiedEvent;
@@ -68,6 +74,12 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
 
     private static final String GET_AUTHZ_SQL = String.format("select %s from %s", FIELDS, TABLE_NAME);
 
+    private static final String GET_AUTHZ_BY_USER_AND_CLIENT_SQL = GET_AUTHZ_SQL + " where user_id=? and client_id=?";
+
+    private static final String GET_AUTHZ_BY_USERS_SQL = GET_AUTHZ_SQL + " where user_id in (:userIds)";
+
+    private static final int MAX_USERS_PER_QUERY = 500;
+
     private static final String DELETE_AUTHZ_SQL = String.format("delete from %s", TABLE_NAME);
 
     private static final String EXPIRE_AUTHZ_SQL = String.format("update %s set expiresAt = :expiry", TABLE_NAME);
@@ -195,7 +207,22 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
 
     @Override
     public List<Approval> getApprovals(String userId, String clientId) {
-        return getApprovals(String.format("user_id eq \"%s\" and client_id eq \"%s\"", userId, clientId));
+        return jdbcTemplate.query(GET_AUTHZ_BY_USER_AND_CLIENT_SQL, rowMapper, userId, clientId);
+    }
+
+    @Override
+    public Map<String, List<Approval>> getApprovalsForUsers(Collection<String> userIds) {
+        Map<String, List<Approval>> result = new HashMap<>();
+        for (String userId : userIds) {
+            result.put(userId, new ArrayList<>());
+        }
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(jdbcTemplate);
+        for (List<String> ids : Iterables.partition(result.keySet(), MAX_USERS_PER_QUERY)) {
+            for (Approval approval : template.query(GET_AUTHZ_BY_USERS_SQL, Collections.singletonMap("userIds", ids), rowMapper)) {
+                result.get(approval.getUserId()).add(approval);
+            }
+        }
+        return result;
     }
 
     @Override
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.audit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs audit events on a background thread, so that requests do not wait for the
+ * audit records to be written.
+ * <p>
+ * Events are put in a queue holding at most {@link #getCapacity()} events. A
+ * single writer thread takes them from the queue and passes them to
+ * {@link UaaAuditService#logAll(List)} of the delegate in batches of up to
+ * {@link #getBatchSize()} events; a batch is written once it is full or
+ * {@link #getFlushIntervalMillis()} after its first event was taken.
+ * When the queue is full, a request waits up to {@link #getMaxWaitMillis()} for
+ * space and the event is dropped and counted if there is none. On shutdown the
+ * events still queued are written before the service stops.
+ */
+@ManagedResource
+public class AsyncAuditService implements UaaAuditService, InitializingBean, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(AsyncAuditService.class);
+
+    //how long the writer waits for events before checking whether it is stopped
+    private static final long STOP_CHECK_MILLIS = 100;
+
+    private final UaaAuditService delegate;
+
+    private boolean enabled = true;
+    private int capacity = 10000;
+    private int batchSize = 100;
+    private long flushIntervalMillis = 200;
+    private long maxWaitMillis = 0;
+    private long shutdownTimeoutMillis = 10000;
+
+    private volatile BlockingQueue<AuditEvent> queue;
+    private volatile Thread writer;
+    private volatile boolean running;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public AsyncAuditService(UaaAuditService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            queue = new ArrayBlockingQueue<>(capacity);
+            running = true;
+            writer = new Thread(this::writeEvents, "AsyncAuditService.Writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        Thread current = writer;
+        if (current == null) {
+            return;
+        }
+        writer = null;
+        running = false;
+        current.join(shutdownTimeoutMillis);
+        if (current.isAlive()) {
+            logger.warn("Audit writer did not finish within " + shutdownTimeoutMillis + "ms, " + queue.size() + " events not written.");
+            return;
+        }
+        //events queued while the writer was stopping
+        List<AuditEvent> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        write(remaining);
+    }
+
+    @Override
+    public List<AuditEvent> find(String principal, long after) {
+        return delegate.find(principal, after);
+    }
+
+    @Override
+    public void log(AuditEvent auditEvent) {
+        if (writer == null) {
+            delegate.log(auditEvent);
+            return;
+        }
+        boolean queued;
+        try {
+            queued = maxWaitMillis > 0 ? queue.offer(auditEvent, maxWaitMillis, TimeUnit.MILLISECONDS) : queue.offer(auditEvent);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            dropped.incrementAndGet();
+            logger.debug("Audit queue full, dropped event: " + auditEvent.getType() + " for " + auditEvent.getPrincipalId());
+        }
+    }
+
+    private void writeEvents() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AuditEvent first = queue.poll(STOP_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long flushAt = System.currentTimeMillis() + flushIntervalMillis;
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = flushAt - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || wait <= 0) {
+                        break;
+                    }
+                    AuditEvent next = queue.poll(Math.min(wait, STOP_CHECK_MILLIS), TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<AuditEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            delegate.logAll(batch);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            logger.warn("Unable to write " + batch.size() + " audit events.", e);
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Audit Events Queued")
+    public int getQueueSize() {
+        BlockingQueue<AuditEvent> current = queue;
+        return current == null ? 0 : current.size();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Audit Events Written")
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Audit Events Dropped")
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Audit Events Failed")
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Audit Batches Written")
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public UaaAuditService getDelegate() {
+        return delegate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+}
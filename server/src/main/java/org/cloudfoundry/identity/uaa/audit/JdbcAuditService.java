@@ -19,6 +19,7 @@ import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -27,6 +28,8 @@ import java.util.List;
  */
 public class JdbcAuditService implements UaaAuditService {
 
+    private static final String INSERT_QUERY = "insert into sec_audit (principal_id, event_type, origin, event_data, identity_zone_id, created) values (?,?,?,?,?,?)";
+
     private final JdbcTemplate template;
 
     public JdbcAuditService(DataSource dataSource) {
@@ -46,15 +49,33 @@ public class JdbcAuditService implements UaaAuditService {
 
     @Override
     public void log(AuditEvent auditEvent) {
+        template.update(INSERT_QUERY, getInsertArgs(auditEvent));
+    }
+
+    /**
+     * Inserts the events with a single JDBC batch.
+     */
+    @Override
+    public void logAll(List<AuditEvent> auditEvents) {
+        if (auditEvents.isEmpty()) {
+            return;
+        }
+        List<Object[]> batchArgs = new ArrayList<>(auditEvents.size());
+        for (AuditEvent auditEvent : auditEvents) {
+            batchArgs.add(getInsertArgs(auditEvent));
+        }
+        template.batchUpdate(INSERT_QUERY, batchArgs);
+    }
+
+    private Object[] getInsertArgs(AuditEvent auditEvent) {
         String origin = auditEvent.getOrigin();
         String data = auditEvent.getData();
         origin = origin == null ? "" : origin;
         origin = origin.length() > 255 ? origin.substring(0, 255) : origin;
         data = data == null ? "" : data;
         data = data.length() > 255 ? data.substring(0, 255) : data;
-        template.update("insert into sec_audit (principal_id, event_type, origin, event_data, identity_zone_id) values (?,?,?,?,?)",
-                        auditEvent.getPrincipalId(), auditEvent.getType().getCode(), origin,
-                        data, auditEvent.getIdentityZoneId());
+        return new Object[] {auditEvent.getPrincipalId(), auditEvent.getType().getCode(), origin,
+                        data, auditEvent.getIdentityZoneId(), new Timestamp(auditEvent.getTime())};
     }
 
     private class AuditEventRowMapper implements RowMapper<AuditEvent> {
@@ -13,20 +13,41 @@
 package org.cloudfoundry.identity.uaa.audit;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.resources.jdbc.DefaultLimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiringEntryStore;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
+
 /**
  * An audit service that subscribes to audit events but only saves enough data
  * to answer queries about consecutive
  * failed logins.
+ * <p>
+ * Data older than the save data period is not deleted when events are logged,
+ * but by the {@link org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredEntrySweeper}.
  * 
  * @author Dave Syer
  */
-public class JdbcFailedLoginCountingAuditService extends JdbcAuditService {
+public class JdbcFailedLoginCountingAuditService extends JdbcAuditService implements ExpiringEntryStore {
+
+    private static final Log logger = LogFactory.getLog(JdbcFailedLoginCountingAuditService.class);
+
+    private static final String SELECT_EXPIRED_BOUNDARY_QUERY = "select created from sec_audit where created < ? order by created";
+
+    private static final String DELETE_EXPIRED_QUERY = "delete from sec_audit where created < ?";
+
+    private static final String DELETE_EXPIRED_UP_TO_QUERY = "delete from sec_audit where created <= ?";
 
     private int saveDataPeriodMillis = 24 * 3600 * 1000; // 24hr
 
+    private LimitSqlAdapter limitSqlAdapter = new DefaultLimitSqlAdapter();
+
     public JdbcFailedLoginCountingAuditService(DataSource dataSource) {
         super(dataSource);
     }
@@ -38,33 +59,73 @@ public class JdbcFailedLoginCountingAuditService extends JdbcAuditService {
         this.saveDataPeriodMillis = saveDataPeriodMillis;
     }
 
+    public void setLimitSqlAdapter(LimitSqlAdapter limitSqlAdapter) {
+        this.limitSqlAdapter = limitSqlAdapter;
+    }
+
     @Override
     public void log(AuditEvent auditEvent) {
         switch (auditEvent.getType()) {
             case UserAuthenticationSuccess:
             case PasswordChangeSuccess:
             case UserAccountUnlockedEvent:
-                getJdbcTemplate().update("delete from sec_audit where principal_id=?", auditEvent.getPrincipalId());
-                break;
-            case UserAuthenticationFailure:
-                getJdbcTemplate().update("delete from sec_audit where created < ?",
-                                new Timestamp(System.currentTimeMillis()
-                                                - saveDataPeriodMillis));
-                super.log(auditEvent);
-                break;
             case ClientAuthenticationSuccess:
             case SecretChangeSuccess:
                 getJdbcTemplate().update("delete from sec_audit where principal_id=?", auditEvent.getPrincipalId());
                 break;
+            case UserAuthenticationFailure:
             case ClientAuthenticationFailure:
                 super.log(auditEvent);
-                getJdbcTemplate().update("delete from sec_audit where created < ?",
-                                new Timestamp(System.currentTimeMillis()
-                                                - saveDataPeriodMillis));
                 break;
             default:
                 break;
         }
     }
 
+    /**
+     * Inserts the failures of consecutive events with a single JDBC batch,
+     * keeping the order of the inserts and deletes of a principal.
+     */
+    @Override
+    public void logAll(List<AuditEvent> auditEvents) {
+        List<AuditEvent> failures = new ArrayList<>();
+        for (AuditEvent auditEvent : auditEvents) {
+            switch (auditEvent.getType()) {
+                case UserAuthenticationSuccess:
+                case PasswordChangeSuccess:
+                case UserAccountUnlockedEvent:
+                case ClientAuthenticationSuccess:
+                case SecretChangeSuccess:
+                    super.logAll(failures);
+                    failures.clear();
+                    getJdbcTemplate().update("delete from sec_audit where principal_id=?", auditEvent.getPrincipalId());
+                    break;
+                case UserAuthenticationFailure:
+                case ClientAuthenticationFailure:
+                    failures.add(auditEvent);
+                    break;
+                default:
+                    break;
+            }
+        }
+        super.logAll(failures);
+    }
+
+    /**
+     * The rows of <code>sec_audit</code> have no key, so a chunk is bounded by the
+     * creation time of the <code>maxEntries</code>th oldest expired row. Rows
+     * created at the same time as that row are deleted with it.
+     */
+    @Override
+    public int deleteExpiredEntries(int maxEntries) {
+        Timestamp expiredBefore = new Timestamp(System.currentTimeMillis() - saveDataPeriodMillis);
+        List<Timestamp> boundary = getJdbcTemplate().queryForList(
+            limitSqlAdapter.getLimitSql(SELECT_EXPIRED_BOUNDARY_QUERY, maxEntries - 1, 1), Timestamp.class, expiredBefore);
+        int count = boundary.isEmpty() ?
+            getJdbcTemplate().update(DELETE_EXPIRED_QUERY, expiredBefore) :
+            getJdbcTemplate().update(DELETE_EXPIRED_UP_TO_QUERY, boundary.get(0));
+        logger.debug("Audit sweeper deleted " + count + " entries.");
+        return count;
+    }
+
 }
@@ -40,4 +40,15 @@ public interface UaaAuditService {
      */
     void log(AuditEvent auditEvent);
 
+    /**
+     * Log several events, in the order given.
+     * 
+     * @param auditEvents the audit events to log
+     */
+    default void logAll(List<AuditEvent> auditEvents) {
+        for (AuditEvent auditEvent : auditEvents) {
+            log(auditEvent);
+        }
+    }
+
 }
@@ -17,6 +17,7 @@ import org.cloudfoundry.identity.uaa.audit.AuditEvent;
 import org.cloudfoundry.identity.uaa.audit.AuditEventType;
 import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.UaaTokenUtils;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.jwt.Jwt;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
@@ -25,12 +26,22 @@ import java.util.Map;
 
 public class TokenIssuedEvent extends AbstractUaaEvent {
 
+    private final String principalId;
 
     public TokenIssuedEvent(OAuth2AccessToken source, Authentication principal) {
+        this(source, principal, null);
+    }
+
+    /**
+     * @param principalId the user id, or the client id for client tokens, of the token;
+     *                    when null it is read from the token value
+     */
+    public TokenIssuedEvent(OAuth2AccessToken source, Authentication principal, String principalId) {
         super(source, principal);
         if (!OAuth2AccessToken.class.isAssignableFrom(source.getClass())) {
             throw new IllegalArgumentException();
         }
+        this.principalId = principalId;
     }
 
     @Override
@@ -45,7 +56,13 @@ public class TokenIssuedEvent extends AbstractUaaEvent {
     }
 
     private String getPrincipalId() {
+        if (principalId != null) {
+            return principalId;
+        }
         OAuth2AccessToken token = getSource();
+        if (token.getValue() == null || !UaaTokenUtils.isJwtToken(token.getValue())) {
+            return null;
+        }
         Jwt jwt = JwtHelper.decode(token.getValue());
         Map<String, Object> claims = JsonUtils.readValue(jwt.getClaims(), new TypeReference<Map<String, Object>>() {});
         return (claims.get("user_id") != null ? claims.get("user_id") : claims.get("client_id")).toString();
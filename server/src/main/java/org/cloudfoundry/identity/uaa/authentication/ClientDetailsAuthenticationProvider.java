@@ -48,6 +48,8 @@ public class ClientDetailsAuthenticationProvider extends DaoAuthenticationProvid
                 super.additionalAuthenticationChecks(user, authentication);
                 error = null;
                 break;
+            } catch (PasswordCheckRejectedException e) {
+                throw e;
             } catch (AuthenticationException e) {
                 error = e;
             }
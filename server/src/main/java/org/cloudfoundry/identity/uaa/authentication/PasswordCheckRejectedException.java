@@ -0,0 +1,52 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.authentication;
+
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+
+/**
+ * Thrown when a password could not be checked because the password hashing pool
+ * is saturated. The credentials were not verified, so this is not an
+ * authentication failure; the cause is an {@link OAuth2Exception} that the OAuth
+ * exception translators render as <code>503</code> when the whole pool is busy,
+ * or <code>429</code> when the identity zone exceeded its share of the pool.
+ */
+public class PasswordCheckRejectedException extends InternalAuthenticationServiceException {
+
+    public PasswordCheckRejectedException(String msg, int httpStatus) {
+        super(msg, new TemporarilyUnavailableException(msg, httpStatus));
+    }
+
+    public int getHttpStatus() {
+        return ((TemporarilyUnavailableException) getCause()).getHttpErrorCode();
+    }
+
+    private static class TemporarilyUnavailableException extends OAuth2Exception {
+
+        private final int httpStatus;
+
+        public TemporarilyUnavailableException(String msg, int httpStatus) {
+            super(msg);
+            this.httpStatus = httpStatus;
+        }
+
+        public String getOAuth2ErrorCode() {
+            return "temporarily_unavailable";
+        }
+
+        public int getHttpErrorCode() {
+            return httpStatus;
+        }
+    }
+}
@@ -18,7 +18,6 @@ package org.cloudfoundry.identity.uaa.authentication;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
-import org.cloudfoundry.identity.uaa.user.UaaUser;
 import org.cloudfoundry.identity.uaa.user.UaaUserDatabase;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -65,9 +64,8 @@ public class SessionResetFilter extends OncePerRequestFilter {
                 String userId = authentication.getPrincipal().getId();
                 try {
                     logger.debug("Evaluating user-id for session reset:"+userId);
-                    UaaUser user = userDatabase.retrieveUserById(userId);
                     Date lastModified;
-                    if ((lastModified = user.getPasswordLastModified()) != null) {
+                    if ((lastModified = userDatabase.retrievePasswordLastModified(userId)) != null) {
                         long lastAuthTime = authentication.getAuthenticatedTime();
                         long passwordModTime = lastModified.getTime();
                         //if the password has changed after authentication time
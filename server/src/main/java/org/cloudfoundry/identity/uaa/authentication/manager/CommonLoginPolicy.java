@@ -12,27 +12,37 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.authentication.manager;
 
+import java.util.Collections;
 import java.util.List;
 
 import org.cloudfoundry.identity.uaa.audit.AuditEvent;
 import org.cloudfoundry.identity.uaa.audit.AuditEventType;
-import org.cloudfoundry.identity.uaa.audit.UaaAuditService;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
 import org.cloudfoundry.identity.uaa.provider.LockoutPolicy;
+import org.springframework.context.ApplicationListener;
 
 
 /**
  * Common login policy for both user login and client credential authentication, specifically for
  * lockouts.
+ * <p>
+ * Failures are counted in a {@link LockoutStateStore} as the authentication events are
+ * published: a failure event increments the count of the principal, a success event or
+ * one of the {@link #setResetEventTypes(List) reset events} clears it. The count restarts
+ * when the first failure counted is older than the period failures are counted in, and
+ * the principal is locked while it has reached the allowed failures and its last failure
+ * is within the lockout period.
  */
-public class CommonLoginPolicy implements LoginPolicy {
-    private final UaaAuditService auditService;
+public class CommonLoginPolicy implements LoginPolicy, ApplicationListener<AbstractUaaEvent> {
+    private final LockoutStateStore lockoutStateStore;
     private final LockoutPolicyRetriever lockoutPolicyRetriever;
     private final AuditEventType successEventType;
     private final AuditEventType failureEventType;
+    private List<AuditEventType> resetEventTypes = Collections.emptyList();
     
-    public CommonLoginPolicy(UaaAuditService auditService, LockoutPolicyRetriever lockoutPolicyRetriever, AuditEventType successEventType,
+    public CommonLoginPolicy(LockoutStateStore lockoutStateStore, LockoutPolicyRetriever lockoutPolicyRetriever, AuditEventType successEventType,
             AuditEventType failureEventType) {
-        this.auditService = auditService;
+        this.lockoutStateStore = lockoutStateStore;
         this.lockoutPolicyRetriever = lockoutPolicyRetriever;
         this.successEventType = successEventType;
         this.failureEventType = failureEventType;
@@ -41,50 +51,42 @@ public class CommonLoginPolicy implements LoginPolicy {
     @Override
     public Result isAllowed(String principalId) {
         LockoutPolicy lockoutPolicy = lockoutPolicyRetriever.getLockoutPolicy();
-        
-        long eventsAfter = System.currentTimeMillis() - lockoutPolicy.getCountFailuresWithin() * 1000;
-        List<AuditEvent> events = auditService.find(principalId, eventsAfter);
+        long now = System.currentTimeMillis();
+        LockoutState state = lockoutStateStore.getState(principalId);
 
-        final int failureCount = sequentialFailureCount(events);
+        boolean counted = state.getLastFailure() > now - lockoutPolicy.getCountFailuresWithin() * 1000L;
+        final int failureCount = counted ? state.getFailureCount() : 0;
 
         if (failureCount >= lockoutPolicy.getLockoutAfterFailures()) {
             // Check whether time of most recent failure is within the lockout
             // period
-            AuditEvent lastFailure = mostRecentFailure(events);
-            if (lastFailure != null && lastFailure.getTime() > System.currentTimeMillis() - lockoutPolicy.getLockoutPeriodSeconds() * 1000) {
+            if (state.getLastFailure() > now - lockoutPolicy.getLockoutPeriodSeconds() * 1000L) {
                 return new Result(false, failureCount);
             }
         }
         return new Result(true, failureCount);
     }
-    
-    /**
-     * Counts the number of failures that occurred without an intervening
-     * successful login.
-     */
-    private int sequentialFailureCount(List<AuditEvent> events) {
-        int failureCount = 0;
-        for (AuditEvent event : events) {
-            if (event.getType() == failureEventType) {
-                failureCount++;
-            } else if (event.getType() == successEventType) {
-                // Successful authentication occurred within last allowable
-                // failures, so ignore
-                break;
-            }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        AuditEvent auditEvent = event.getAuditEvent();
+        AuditEventType type = auditEvent.getType();
+        if (type == failureEventType) {
+            long countFailuresAfter = auditEvent.getTime() - lockoutPolicyRetriever.getLockoutPolicy().getCountFailuresWithin() * 1000L;
+            lockoutStateStore.recordFailure(auditEvent.getPrincipalId(), auditEvent.getIdentityZoneId(), auditEvent.getTime(), countFailuresAfter);
+        } else if (type == successEventType || resetEventTypes.contains(type)) {
+            lockoutStateStore.reset(auditEvent.getPrincipalId());
         }
-        return failureCount;
     }
-    
-    private AuditEvent mostRecentFailure(List<AuditEvent> events) {
-        for (AuditEvent event : events) {
-            if (event.getType() == failureEventType) {
-                return event;
-            }
-        }
-        return null;
+
+    /**
+     * @param resetEventTypes events besides the success event that clear the failures
+     * of the principal, such as a change of its credentials
+     */
+    public void setResetEventTypes(List<AuditEventType> resetEventTypes) {
+        this.resetEventTypes = resetEventTypes;
     }
-    
+
     public LockoutPolicyRetriever getLockoutPolicyRetriever() {
         return lockoutPolicyRetriever;
     }
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.authentication.manager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.resources.jdbc.DefaultLimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiringEntryStore;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores the lockout state in the <code>login_lockout_state</code> table, one row
+ * per principal, so a lockout check is a single primary key read. Failures are
+ * counted with a single update statement, which also restarts the count when the
+ * first failure counted is older than the counting period.
+ * <p>
+ * States read are kept in memory for {@link #getCacheExpiryInSeconds()}. Changes
+ * made on this node replace or evict the cached state right away; failures
+ * recorded by other nodes are seen once the cached state expires.
+ * Rows without a failure within {@link #getRetentionPeriodInSeconds()} are removed
+ * by the {@link org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredEntrySweeper}.
+ */
+@ManagedResource
+public class JdbcLockoutStateStore implements LockoutStateStore, ExpiringEntryStore {
+
+    private static final Log logger = LogFactory.getLog(JdbcLockoutStateStore.class);
+
+    protected static final String SELECT_QUERY = "SELECT failure_count, first_failure, last_failure FROM login_lockout_state WHERE principal_id=?";
+
+    //columns are assigned in order, MySQL evaluates later assignments with the new
+    //values, so failure_count must be assigned before first_failure
+    protected static final String RECORD_FAILURE_QUERY = "UPDATE login_lockout_state SET " +
+        "failure_count=CASE WHEN first_failure < ? THEN 1 ELSE failure_count+1 END, " +
+        "first_failure=CASE WHEN first_failure < ? THEN ? ELSE first_failure END, " +
+        "last_failure=?, identity_zone_id=? WHERE principal_id=?";
+
+    protected static final String INSERT_QUERY = "INSERT INTO login_lockout_state (principal_id, identity_zone_id, failure_count, first_failure, last_failure) VALUES (?,?,1,?,?)";
+
+    protected static final String DELETE_QUERY = "DELETE FROM login_lockout_state WHERE principal_id=?";
+
+    protected static final String SELECT_EXPIRED_QUERY = "SELECT principal_id FROM login_lockout_state WHERE last_failure < ?";
+
+    protected static final String DELETE_BY_PRINCIPAL_QUERY = "DELETE FROM login_lockout_state WHERE principal_id IN ";
+
+    private static final RowMapper<LockoutState> STATE_MAPPER = (rs, rowNum) -> new LockoutState(rs.getInt(1), rs.getLong(2), rs.getLong(3));
+
+    private final JdbcTemplate jdbcTemplate;
+    private LimitSqlAdapter limitSqlAdapter = new DefaultLimitSqlAdapter();
+
+    private boolean cacheEnabled = true;
+    private int cacheExpiryInSeconds = 5;
+    private int maxCacheEntries = 10000;
+    private int retentionPeriodInSeconds = 24 * 3600;
+
+    private volatile Cache<String, LockoutState> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public JdbcLockoutStateStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        buildCache();
+    }
+
+    @Override
+    public LockoutState getState(String principalId) {
+        if (cacheEnabled) {
+            LockoutState cached = cache.getIfPresent(principalId);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            misses.incrementAndGet();
+        }
+        List<LockoutState> states = jdbcTemplate.query(SELECT_QUERY, STATE_MAPPER, principalId);
+        LockoutState state = states.isEmpty() ? LockoutState.NONE : states.get(0);
+        if (cacheEnabled) {
+            cache.put(principalId, state);
+        }
+        return state;
+    }
+
+    @Override
+    public void recordFailure(String principalId, String zoneId, long time, long countFailuresAfter) {
+        try {
+            if (updateFailure(principalId, zoneId, time, countFailuresAfter) > 0) {
+                return;
+            }
+            try {
+                jdbcTemplate.update(INSERT_QUERY, principalId, zoneId, time, time);
+            } catch (DataIntegrityViolationException inserted) {
+                updateFailure(principalId, zoneId, time, countFailuresAfter);
+            }
+        } finally {
+            cache.invalidate(principalId);
+        }
+    }
+
+    private int updateFailure(String principalId, String zoneId, long time, long countFailuresAfter) {
+        return jdbcTemplate.update(RECORD_FAILURE_QUERY, countFailuresAfter, countFailuresAfter, time, time, zoneId, principalId);
+    }
+
+    @Override
+    public void reset(String principalId) {
+        jdbcTemplate.update(DELETE_QUERY, principalId);
+        cache.put(principalId, LockoutState.NONE);
+    }
+
+    @Override
+    public int deleteExpiredEntries(int maxEntries) {
+        long retainAfter = System.currentTimeMillis() - retentionPeriodInSeconds * 1000L;
+        int count = ExpiringEntryStore.deleteInChunk(jdbcTemplate, limitSqlAdapter, SELECT_EXPIRED_QUERY, DELETE_BY_PRINCIPAL_QUERY, maxEntries, retainAfter);
+        logger.debug("Lockout state sweeper deleted " + count + " entries.");
+        return count;
+    }
+
+    @ManagedOperation(description = "Remove all cached lockout states")
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Lockout State Cache Hits")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Lockout State Cache Misses")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Lockout State Cache Size")
+    public long getSize() {
+        return cache.size();
+    }
+
+    public void setLimitSqlAdapter(LimitSqlAdapter limitSqlAdapter) {
+        this.limitSqlAdapter = limitSqlAdapter;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+        cache.invalidateAll();
+    }
+
+    public int getCacheExpiryInSeconds() {
+        return cacheExpiryInSeconds;
+    }
+
+    public void setCacheExpiryInSeconds(int cacheExpiryInSeconds) {
+        this.cacheExpiryInSeconds = cacheExpiryInSeconds;
+        buildCache();
+    }
+
+    public int getMaxCacheEntries() {
+        return maxCacheEntries;
+    }
+
+    public void setMaxCacheEntries(int maxCacheEntries) {
+        this.maxCacheEntries = maxCacheEntries;
+        buildCache();
+    }
+
+    public int getRetentionPeriodInSeconds() {
+        return retentionPeriodInSeconds;
+    }
+
+    public void setRetentionPeriodInSeconds(int retentionPeriodInSeconds) {
+        this.retentionPeriodInSeconds = retentionPeriodInSeconds;
+    }
+
+    protected void buildCache() {
+        cache = CacheBuilder.newBuilder()
+            .maximumSize(maxCacheEntries)
+            .expireAfterWrite(cacheExpiryInSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+}
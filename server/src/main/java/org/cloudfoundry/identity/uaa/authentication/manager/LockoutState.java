@@ -0,0 +1,50 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.authentication.manager;
+
+/**
+ * The failed authentications of a user or client since its last successful
+ * authentication, as kept by a {@link LockoutStateStore}.
+ */
+public class LockoutState {
+
+    public static final LockoutState NONE = new LockoutState(0, 0, 0);
+
+    private final int failureCount;
+    private final long firstFailure;
+    private final long lastFailure;
+
+    public LockoutState(int failureCount, long firstFailure, long lastFailure) {
+        this.failureCount = failureCount;
+        this.firstFailure = firstFailure;
+        this.lastFailure = lastFailure;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return the time in milliseconds of the first failure counted, 0 if there is none
+     */
+    public long getFirstFailure() {
+        return firstFailure;
+    }
+
+    /**
+     * @return the time in milliseconds of the most recent failure, 0 if there is none
+     */
+    public long getLastFailure() {
+        return lastFailure;
+    }
+}
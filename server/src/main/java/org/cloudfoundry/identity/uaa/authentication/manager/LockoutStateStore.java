@@ -0,0 +1,41 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.authentication.manager;
+
+/**
+ * Keeps a failure counter per user or client, so that lockout checks do not have
+ * to read the audit trail.
+ */
+public interface LockoutStateStore {
+
+    /**
+     * @return the failures recorded for the principal, {@link LockoutState#NONE} if there are none
+     */
+    LockoutState getState(String principalId);
+
+    /**
+     * Counts a failed authentication of the principal. When the first failure
+     * counted happened before <code>countFailuresAfter</code>, counting starts again
+     * at this failure.
+     *
+     * @param time the time of the failure in milliseconds
+     * @param countFailuresAfter the start of the period failures are counted in, in milliseconds
+     */
+    void recordFailure(String principalId, String zoneId, long time, long countFailuresAfter);
+
+    /**
+     * Clears the failures of the principal, after it authenticated successfully or
+     * its credentials were changed.
+     */
+    void reset(String principalId);
+}
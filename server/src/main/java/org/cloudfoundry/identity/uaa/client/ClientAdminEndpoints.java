@@ -22,6 +22,7 @@ import org.cloudfoundry.identity.uaa.oauth.client.ClientDetailsModification;
 import org.cloudfoundry.identity.uaa.oauth.client.SecretChangeRequest;
 import org.cloudfoundry.identity.uaa.resources.ActionResult;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.QueryableResourceManager;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
@@ -452,6 +453,11 @@ public class ClientAdminEndpoints implements InitializingBean {
     }
 
 
+    public SearchResults<?> listClientDetails(String attributesCommaSeparated, String filter, String sortBy,
+                                              String sortOrder, int startIndex, int count) throws Exception {
+        return listClientDetails(attributesCommaSeparated, filter, sortBy, sortOrder, startIndex, count, null, true);
+    }
+
     @RequestMapping(value = "/oauth/clients", method = RequestMethod.GET)
     @ResponseBody
     public SearchResults<?> listClientDetails(
@@ -460,11 +466,24 @@ public class ClientAdminEndpoints implements InitializingBean {
                     @RequestParam(required = false, defaultValue = "client_id") String sortBy,
                     @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
                     @RequestParam(required = false, defaultValue = "1") int startIndex,
-                    @RequestParam(required = false, defaultValue = "100") int count) throws Exception {
+                    @RequestParam(required = false, defaultValue = "100") int count,
+                    @RequestParam(required = false) String cursor,
+                    @RequestParam(required = false, defaultValue = "true") boolean includeTotal) throws Exception {
         List<ClientDetails> result = new ArrayList<ClientDetails>();
         List<ClientDetails> clients;
+        int totalResults;
+        String nextCursor = null;
         try {
-            clients = clientDetailsService.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder));
+            if (cursor != null) {
+                KeysetPage<ClientDetails> page = clientDetailsService.queryPage(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), cursor, count, includeTotal);
+                startIndex = 1;
+                clients = page.getResources();
+                totalResults = page.getTotalResults();
+                nextCursor = page.getNextCursor();
+            } else {
+                clients = clientDetailsService.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder));
+                totalResults = clients.size();
+            }
             if (count > clients.size()) {
                 count = clients.size();
             }
@@ -473,28 +492,34 @@ public class ClientAdminEndpoints implements InitializingBean {
             if (StringUtils.hasText(sortBy)) {
                 msg += " [" +sortBy+"]";
             }
+            if (StringUtils.hasText(cursor)) {
+                msg += " [" + cursor + "]";
+            }
             throw new UaaException(msg, HttpStatus.BAD_REQUEST.value());
         }
         for (ClientDetails client : UaaPagingUtils.subList(clients, startIndex, count)) {
             result.add(removeSecret(client));
         }
 
+        SearchResults<?> results;
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
-            return new SearchResults<ClientDetails>(Arrays.asList(SCIM_CLIENTS_SCHEMA_URI), result, startIndex, count,
-                            clients.size());
-        }
-
-        String[] attributes = attributesCommaSeparated.split(",");
-        try {
-            return SearchResultsFactory.buildSearchResultFrom(result, startIndex, count, clients.size(), attributes,
-                            attributeNameMapper, Arrays.asList(SCIM_CLIENTS_SCHEMA_URI));
-        } catch (SpelParseException e) {
-            throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
-                            HttpStatus.BAD_REQUEST.value());
-        } catch (SpelEvaluationException e) {
-            throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
-                            HttpStatus.BAD_REQUEST.value());
+            results = new SearchResults<ClientDetails>(Arrays.asList(SCIM_CLIENTS_SCHEMA_URI), result, startIndex, count,
+                            totalResults);
+        } else {
+            String[] attributes = attributesCommaSeparated.split(",");
+            try {
+                results = SearchResultsFactory.buildSearchResultFrom(result, startIndex, count, totalResults, attributes,
+                                attributeNameMapper, Arrays.asList(SCIM_CLIENTS_SCHEMA_URI));
+            } catch (SpelParseException e) {
+                throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
+                                HttpStatus.BAD_REQUEST.value());
+            } catch (SpelEvaluationException e) {
+                throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
+                                HttpStatus.BAD_REQUEST.value());
+            }
         }
+        results.setNextCursor(nextCursor);
+        return results;
     }
 
     @RequestMapping(value = "/oauth/clients/{client_id}/secret", method = RequestMethod.PUT)
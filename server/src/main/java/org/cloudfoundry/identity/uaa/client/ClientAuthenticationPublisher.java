@@ -12,6 +12,7 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.client;
 
+import org.cloudfoundry.identity.uaa.authentication.PasswordCheckRejectedException;
 import org.cloudfoundry.identity.uaa.authentication.event.ClientAuthenticationFailureEvent;
 import org.cloudfoundry.identity.uaa.authentication.event.ClientAuthenticationSuccessEvent;
 import org.springframework.context.ApplicationEvent;
@@ -34,6 +35,10 @@ public class ClientAuthenticationPublisher implements ApplicationEventPublisherA
     }
 
     public void clientAuthenticationFailure(Authentication authentication, AuthenticationException ex) {
+        if (ex instanceof PasswordCheckRejectedException) {
+            //the secret was never checked
+            return;
+        }
         publish(new ClientAuthenticationFailureEvent(authentication, ex));
     }
 
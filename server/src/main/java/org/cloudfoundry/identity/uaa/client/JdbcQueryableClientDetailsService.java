@@ -19,12 +19,13 @@ import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.QueryableResourceManager;
 import org.cloudfoundry.identity.uaa.resources.jdbc.AbstractQueryable;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.zone.ClientServicesExtension;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
-import org.cloudfoundry.identity.uaa.zone.MultitenantJdbcClientDetailsService;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.oauth2.provider.ClientDetails;
@@ -37,7 +38,7 @@ public class JdbcQueryableClientDetailsService extends AbstractQueryable<ClientD
 
     private static final Log logger = LogFactory.getLog(JdbcQueryableClientDetailsService.class);
 
-    private MultitenantJdbcClientDetailsService delegate;
+    private ClientServicesExtension delegate;
 
     private static final String CLIENT_FIELDS = "client_id, client_secret, resource_ids, scope, "
                     + "authorized_grant_types, web_server_redirect_uri, authorities, access_token_validity, "
@@ -47,7 +48,7 @@ public class JdbcQueryableClientDetailsService extends AbstractQueryable<ClientD
     private static final String BASE_FIND_STATEMENT = "select " + CLIENT_FIELDS
         + " from " + CLIENT_DETAILS_TABLE;
 
-    public JdbcQueryableClientDetailsService(MultitenantJdbcClientDetailsService delegate, JdbcTemplate jdbcTemplate,
+    public JdbcQueryableClientDetailsService(ClientServicesExtension delegate, JdbcTemplate jdbcTemplate,
                     JdbcPagingListFactory pagingListFactory) {
         super(jdbcTemplate, pagingListFactory, new ClientDetailsRowMapper());
         this.delegate = delegate;
@@ -73,6 +74,22 @@ public class JdbcQueryableClientDetailsService extends AbstractQueryable<ClientD
         return super.query(filter, sortBy, ascending);
     }
 
+    @Override
+    public KeysetPage<ClientDetails> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean includeTotal) {
+        //validate syntax
+        getQueryConverter().convert(filter, sortBy, ascending);
+        if (StringUtils.hasText(filter)) {
+            filter = "(" + filter + ") and ";
+        }
+        filter += " identity_zone_id eq \""+IdentityZoneHolder.get().getId()+"\"";
+        return super.queryPage(filter, sortBy, ascending, cursor, count, includeTotal);
+    }
+
+    @Override
+    protected String getIdColumn() {
+        return "client_id";
+    }
+
     @Override
     public List<ClientDetails> retrieveAll() {
         return delegate.listClientDetails();
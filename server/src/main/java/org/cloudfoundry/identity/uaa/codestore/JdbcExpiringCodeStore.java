@@ -21,6 +21,9 @@ import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.resources.jdbc.DefaultLimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiringEntryStore;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -28,7 +31,7 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 import org.springframework.util.Assert;
 
-public class JdbcExpiringCodeStore implements ExpiringCodeStore {
+public class JdbcExpiringCodeStore implements ExpiringCodeStore, ExpiringEntryStore {
 
     public static final String tableName = "expiring_code_store";
     public static final String fields = "code, expiresat, data, intent";
@@ -37,6 +40,8 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
     public static final String delete = "delete from " + tableName + " where code = ?";
     public static final String deleteIntent = "delete from " + tableName + " where intent = ?";
     public static final String deleteExpired = "delete from " + tableName + " where expiresat < ?";
+    public static final String selectExpired = "select code from " + tableName + " where expiresat < ?";
+    public static final String deleteExpiredByCode = "delete from " + tableName + " where code in ";
     public static final String select = "select " + fields + " from " + tableName + " where code = ?";
     public static final String SELECT_BY_EMAIL_AND_CLIENT_ID = "select " + fields + " from " + tableName +
             " where data like '%%\"email\":\"%s\"%%' and data like '%%\"client_id\":\"%s\"%%' ORDER BY expiresat DESC LIMIT 1";
@@ -49,6 +54,8 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
 
     private AtomicLong lastExpired = new AtomicLong();
     private long expirationInterval = 60 * 1000; // once a minute
+    private boolean inlineCleanupEnabled = true;
+    private LimitSqlAdapter limitSqlAdapter = new DefaultLimitSqlAdapter();
 
     public long getExpirationInterval() {
         return expirationInterval;
@@ -58,6 +65,21 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
         this.expirationInterval = expirationInterval;
     }
 
+    public boolean isInlineCleanupEnabled() {
+        return inlineCleanupEnabled;
+    }
+
+    /**
+     * Disable when expired codes are removed by the {@link org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredEntrySweeper}
+     */
+    public void setInlineCleanupEnabled(boolean inlineCleanupEnabled) {
+        this.inlineCleanupEnabled = inlineCleanupEnabled;
+    }
+
+    public void setLimitSqlAdapter(LimitSqlAdapter limitSqlAdapter) {
+        this.limitSqlAdapter = limitSqlAdapter;
+    }
+
     protected JdbcExpiringCodeStore() {
         // package protected for unit tests only
     }
@@ -72,7 +94,9 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
 
     @Override
     public ExpiringCode generateCode(String data, Timestamp expiresAt, String intent) {
-        cleanExpiredEntries();
+        if (inlineCleanupEnabled) {
+            cleanExpiredEntries();
+        }
 
         if (data == null || expiresAt == null) {
             throw new NullPointerException();
@@ -106,7 +130,9 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
 
     @Override
     public ExpiringCode retrieveCode(String code) {
-        cleanExpiredEntries();
+        if (inlineCleanupEnabled) {
+            cleanExpiredEntries();
+        }
 
         if (code == null) {
             throw new NullPointerException();
@@ -154,6 +180,13 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
         return 0;
     }
 
+    @Override
+    public int deleteExpiredEntries(int maxEntries) {
+        int count = ExpiringEntryStore.deleteInChunk(jdbcTemplate, limitSqlAdapter, selectExpired, deleteExpiredByCode, maxEntries, System.currentTimeMillis());
+        logger.debug("Expiring code sweeper deleted " + count + " entries.");
+        return count;
+    }
+
     protected static class JdbcExpiringCodeMapper implements RowMapper<ExpiringCode> {
 
         @Override
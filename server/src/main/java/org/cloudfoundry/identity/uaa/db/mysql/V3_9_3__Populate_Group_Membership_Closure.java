@@ -0,0 +1,21 @@
+/*
+ * ******************************************************************************
+ *  *     Cloud Foundry
+ *  *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *  *
+ *  *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *  *     You may not use this product except in compliance with the License.
+ *  *
+ *  *     This product includes a number of subcomponents with
+ *  *     separate copyright notices and license terms. Your use of these
+ *  *     subcomponents is subject to the terms and conditions of the
+ *  *     subcomponent's license, as noted in the LICENSE file.
+ *  ******************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.db.mysql;
+
+import org.cloudfoundry.identity.uaa.db.PopulateGroupMembershipClosure_V3_9_3;
+
+public class V3_9_3__Populate_Group_Membership_Closure extends PopulateGroupMembershipClosure_V3_9_3 {
+}
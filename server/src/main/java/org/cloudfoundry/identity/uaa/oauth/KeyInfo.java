@@ -4,6 +4,7 @@ import org.bouncycastle.asn1.ASN1Sequence;
 import org.cloudfoundry.identity.uaa.impl.config.LegacyTokenKey;
 import org.cloudfoundry.identity.uaa.oauth.jwt.IdentifiedSigner;
 import org.cloudfoundry.identity.uaa.oauth.jwt.Signer;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneConfiguration;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.springframework.security.jwt.crypto.sign.MacSigner;
@@ -25,8 +26,11 @@ import java.security.spec.RSAPrivateCrtKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,29 +48,49 @@ public class KeyInfo {
     private String type = "MAC";
     private RSAPublicKey rsaPublicKey;
 
+    /**
+     * Parsed keys per zone id. PEM decoding and signer/verifier construction are
+     * expensive, so they are only redone when the zone's key definitions change.
+     */
+    private static final ConcurrentMap<String, ZoneKeys> ZONE_KEYS = new ConcurrentHashMap<>();
+
     public static KeyInfo getKey(String keyId) {
         return getKeys().get(keyId);
     }
 
     public static Map<String, KeyInfo> getKeys() {
-        IdentityZoneConfiguration config = IdentityZoneHolder.get().getConfig();
+        IdentityZone zone = IdentityZoneHolder.get();
+        IdentityZoneConfiguration config = zone.getConfig();
         if (config == null || config.getTokenPolicy().getKeys() == null || config.getTokenPolicy().getKeys().isEmpty()) {
-            config = IdentityZoneHolder.getUaaZone().getConfig();
+            zone = IdentityZoneHolder.getUaaZone();
+            config = zone.getConfig();
         }
 
-        Map<String, KeyInfo> keys = new HashMap<>();
-        for (Map.Entry<String, String> entry : config.getTokenPolicy().getKeys().entrySet()) {
-            KeyInfo keyInfo = new KeyInfo();
-            keyInfo.setKeyId(entry.getKey());
-            keyInfo.setSigningKey(entry.getValue());
-            keys.put(entry.getKey(), keyInfo);
+        Map<String, String> keyDefinitions = config.getTokenPolicy().getKeys();
+        if (keyDefinitions.isEmpty()) {
+            return Collections.singletonMap(LegacyTokenKey.LEGACY_TOKEN_KEY_ID, LegacyTokenKey.getLegacyTokenKeyInfo());
         }
 
-        if(keys.isEmpty()) {
-            keys.put(LegacyTokenKey.LEGACY_TOKEN_KEY_ID, LegacyTokenKey.getLegacyTokenKeyInfo());
+        ZoneKeys zoneKeys = ZONE_KEYS.get(zone.getId());
+        if (zoneKeys == null || !zoneKeys.isFor(keyDefinitions)) {
+            zoneKeys = new ZoneKeys(keyDefinitions);
+            ZONE_KEYS.put(zone.getId(), zoneKeys);
+        }
+        return zoneKeys.getKeys();
+    }
+
+    /**
+     * Discards the parsed keys of the given zone, they will be rebuilt from the
+     * zone's token policy on the next lookup.
+     */
+    public static void evictKeys(String zoneId) {
+        if (zoneId != null) {
+            ZONE_KEYS.remove(zoneId);
         }
+    }
 
-        return keys;
+    public static void evictAllKeys() {
+        ZONE_KEYS.clear();
     }
 
     public static KeyInfo getActiveKey() {
@@ -238,4 +262,29 @@ public class KeyInfo {
 
         return begin + base64encoded + end;
     }
+
+    private static class ZoneKeys {
+        private final Map<String, String> keyDefinitions;
+        private final Map<String, KeyInfo> keys;
+
+        ZoneKeys(Map<String, String> keyDefinitions) {
+            this.keyDefinitions = new HashMap<>(keyDefinitions);
+            Map<String, KeyInfo> keys = new HashMap<>();
+            for (Map.Entry<String, String> entry : keyDefinitions.entrySet()) {
+                KeyInfo keyInfo = new KeyInfo();
+                keyInfo.setKeyId(entry.getKey());
+                keyInfo.setSigningKey(entry.getValue());
+                keys.put(entry.getKey(), keyInfo);
+            }
+            this.keys = Collections.unmodifiableMap(keys);
+        }
+
+        boolean isFor(Map<String, String> keyDefinitions) {
+            return this.keyDefinitions.equals(keyDefinitions);
+        }
+
+        Map<String, KeyInfo> getKeys() {
+            return keys;
+        }
+    }
 }
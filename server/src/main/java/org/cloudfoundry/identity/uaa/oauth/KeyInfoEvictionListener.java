@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Cloud Foundry
+ * Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ * <p>
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ * <p>
+ * This product includes a number of subcomponents with
+ * separate copyright notices and license terms. Your use of these
+ * subcomponents is subject to the terms and conditions of the
+ * subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Drops the parsed signing keys of a zone whenever the zone is created or modified.
+ */
+public class KeyInfoEvictionListener implements ApplicationListener<IdentityZoneModifiedEvent> {
+
+    @Override
+    public void onApplicationEvent(IdentityZoneModifiedEvent event) {
+        KeyInfo.evictKeys(((IdentityZone) event.getSource()).getId());
+    }
+}
@@ -23,7 +23,7 @@ import org.cloudfoundry.identity.uaa.oauth.token.RevocableTokenProvisioning;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
-import org.cloudfoundry.identity.uaa.zone.MultitenantJdbcClientDetailsService;
+import org.cloudfoundry.identity.uaa.zone.ClientServicesExtension;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
@@ -52,22 +52,30 @@ public class TokenRevocationEndpoint {
     protected final Log logger = LogFactory.getLog(getClass());
     private WebResponseExceptionTranslator exceptionTranslator = new DefaultWebResponseExceptionTranslator();
     private final ScimUserProvisioning userProvisioning;
-    private final MultitenantJdbcClientDetailsService clientDetailsService;
+    private final ClientServicesExtension clientDetailsService;
     private final RandomValueStringGenerator generator = new RandomValueStringGenerator(8);
     private final RevocableTokenProvisioning tokenProvisioning;
+    private VerifiedTokenCache verifiedTokenCache = null;
 
-    public TokenRevocationEndpoint(MultitenantJdbcClientDetailsService clientDetailsService, ScimUserProvisioning userProvisioning, RevocableTokenProvisioning tokenProvisioning) {
+    public TokenRevocationEndpoint(ClientServicesExtension clientDetailsService, ScimUserProvisioning userProvisioning, RevocableTokenProvisioning tokenProvisioning) {
         this.clientDetailsService = clientDetailsService;
         this.userProvisioning = userProvisioning;
         this.tokenProvisioning = tokenProvisioning;
     }
 
+    public void setVerifiedTokenCache(VerifiedTokenCache verifiedTokenCache) {
+        this.verifiedTokenCache = verifiedTokenCache;
+    }
+
     @RequestMapping("/oauth/token/revoke/user/{userId}")
     public ResponseEntity<Void> revokeTokensForUser(@PathVariable String userId) {
         logger.debug("Revoking tokens for user: " + userId);
         ScimUser user = userProvisioning.retrieve(userId);
         user.setSalt(generator.generate());
         userProvisioning.update(userId, user);
+        if (verifiedTokenCache != null) {
+            verifiedTokenCache.evictByUserId(userId);
+        }
         logger.debug("Tokens revoked for user: " + userId);
         return new ResponseEntity<>(OK);
     }
@@ -78,6 +86,9 @@ public class TokenRevocationEndpoint {
         BaseClientDetails client = (BaseClientDetails)clientDetailsService.loadClientByClientId(clientId);
         client.addAdditionalInformation(ClientConstants.TOKEN_SALT,generator.generate());
         clientDetailsService.updateClientDetails(client);
+        if (verifiedTokenCache != null) {
+            verifiedTokenCache.evictByClientId(clientId);
+        }
         logger.debug("Tokens revoked for client: " + clientId);
         return new ResponseEntity<>(OK);
     }
@@ -86,6 +97,9 @@ public class TokenRevocationEndpoint {
     public ResponseEntity<Void> revokeTokenById(@PathVariable String tokenId) {
         logger.debug("Revoking token with ID:"+tokenId);
         tokenProvisioning.delete(tokenId, -1);
+        if (verifiedTokenCache != null) {
+            verifiedTokenCache.evictByTokenId(tokenId);
+        }
         logger.debug("Revoked token with ID: " + tokenId);
         return new ResponseEntity<>(OK);
     }
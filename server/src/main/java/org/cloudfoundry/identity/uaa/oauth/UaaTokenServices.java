@@ -166,6 +166,8 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
 
     private UaaTokenEnhancer uaaTokenEnhancer = null;
 
+    private VerifiedTokenCache verifiedTokenCache = null;
+
     public Set<String> getExcludedClaims() {
         return excludedClaims;
     }
@@ -186,6 +188,10 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         this.tokenProvisioning = tokenProvisioning;
     }
 
+    public void setVerifiedTokenCache(VerifiedTokenCache verifiedTokenCache) {
+        this.verifiedTokenCache = verifiedTokenCache;
+    }
+
     public void setUaaTokenEnhancer(UaaTokenEnhancer uaaTokenEnhancer) {
         this.uaaTokenEnhancer = uaaTokenEnhancer;
     }
@@ -243,8 +249,8 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
 
         // TODO: Need to add a lookup by id so that the refresh token does not
         // need to contain a name
-        UaaUser user = userDatabase.retrieveUserById(userid);
-        ClientDetails client = clientDetailsService.loadClientByClientId(clientId);
+        UaaUser user = tokenValidation.getUser() != null ? tokenValidation.getUser() : userDatabase.retrieveUserById(userid);
+        ClientDetails client = tokenValidation.getClientDetails();
 
         Integer refreshTokenIssuedAt = (Integer) claims.get(IAT);
         long refreshTokenIssueDate = refreshTokenIssuedAt.longValue() * 1000l;
@@ -429,7 +435,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         }
         accessToken.setAdditionalInformation(info);
 
-        String content;
+        String token;
         Map<String, ?> jwtAccessToken = createJWTAccessToken(
             accessToken,
             userId,
@@ -445,11 +451,10 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
             revocable
         );
         try {
-            content = JsonUtils.writeValueAsString(jwtAccessToken);
+            token = JwtHelper.encode(jwtAccessToken, KeyInfo.getActiveKey().getSigner()).getEncoded();
         } catch (JsonUtils.JsonUtilException e) {
             throw new IllegalStateException("Cannot convert access token to JSON", e);
         }
-        String token = JwtHelper.encode(content, KeyInfo.getActiveKey().getSigner()).getEncoded();
         // This setter copies the value and returns. Don't change.
         accessToken.setValue(token);
         populateIdToken(accessToken,
@@ -463,7 +468,8 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
                         userAttributesForIdToken,
                         authenticationMethods,
                         authNContextClassRef);
-        publish(new TokenIssuedEvent(accessToken, SecurityContextHolder.getContext().getAuthentication()));
+        String principalId = user != null && userId != null ? userId : clientId;
+        publish(new TokenIssuedEvent(accessToken, SecurityContextHolder.getContext().getAuthentication(), principalId));
 
         return accessToken;
     }
@@ -519,8 +525,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
                     if(phoneNumber != null) clone.put(PHONE_NUMBER, phoneNumber);
                 }
 
-                String content = JsonUtils.writeValueAsString(clone);
-                String encoded = JwtHelper.encode(content, KeyInfo.getActiveKey().getSigner()).getEncoded();
+                String encoded = JwtHelper.encode(clone, KeyInfo.getActiveKey().getSigner()).getEncoded();
                 token.setIdTokenValue(encoded);
             } catch (JsonUtils.JsonUtilException e) {
                 throw new IllegalStateException("Cannot convert ID token to JSON", e);
@@ -851,9 +856,9 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
             externalAttributes = uaaTokenEnhancer.getExternalAttributes(authentication);
         }
 
-        String content;
+        String jwtToken;
         try {
-            content = JsonUtils.writeValueAsString(
+            jwtToken = JwtHelper.encode(
                 createJWTRefreshToken(
                     token,
                     tokenId,
@@ -865,12 +870,12 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
                     revocableHashSignature,
                     revocable,
                     externalAttributes
-                )
-            );
+                ),
+                KeyInfo.getActiveKey().getSigner()
+            ).getEncoded();
         } catch (JsonUtils.JsonUtilException e) {
             throw new IllegalStateException("Cannot convert access token to JSON", e);
         }
-        String jwtToken = JwtHelper.encode(content, KeyInfo.getActiveKey().getSigner()).getEncoded();
 
         ExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(jwtToken, token.getExpiration());
 
@@ -1004,7 +1009,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
             throw new InvalidTokenException("Invalid access token value, must be at least 30 characters:"+accessToken);
         }
 
-        TokenValidation tokenValidation = validateToken(accessToken);
+        TokenValidation tokenValidation = validateAccessToken(accessToken);
         Map<String, Object> claims = tokenValidation.getClaims();
         accessToken = tokenValidation.getJwt().getEncoded();
 
@@ -1045,7 +1050,10 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         Authentication userAuthentication = null;
         // Is this a user token - minimum info is user_id
         if (claims.containsKey(USER_ID)) {
-            UaaUser user = userDatabase.retrieveUserById((String)claims.get(USER_ID));
+            UaaUser user = tokenValidation.getUser();
+            if (user == null) {
+                user = userDatabase.retrieveUserById((String)claims.get(USER_ID));
+            }
             UaaPrincipal principal = new UaaPrincipal(user);
             userAuthentication = new UaaAuthentication(principal, UaaAuthority.USER_AUTHORITIES, null);
         } else {
@@ -1066,7 +1074,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
      */
     @Override
     public OAuth2AccessToken readAccessToken(String accessToken) {
-        TokenValidation tokenValidation = validateToken(accessToken);
+        TokenValidation tokenValidation = validateAccessToken(accessToken);
         Map<String, Object> claims = tokenValidation.getClaims();
         accessToken = tokenValidation.getJwt().getEncoded();
 
@@ -1084,7 +1092,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
             token.setScope(new HashSet<>(scopes));
         }
         String clientId = (String) claims.get(CID);
-        ClientDetails client = clientDetailsService.loadClientByClientId(clientId);
+        ClientDetails client = tokenValidation.getClientDetails();
         String userId = (String)claims.get(USER_ID);
         // Only check user access tokens
         if (null != userId) {
@@ -1107,13 +1115,27 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         return UaaTokenUtils.retainAutoApprovedScopes(tokenScopes, clientDetails.getAutoApproveScopes());
     }
 
+    /**
+     * Validates an access token presented to a resource, consulting the
+     * verified token cache first if one is configured.
+     */
+    private TokenValidation validateAccessToken(String token) {
+        TokenValidation tokenValidation = verifiedTokenCache == null ? null : verifiedTokenCache.get(token);
+        if (tokenValidation == null) {
+            tokenValidation = validateToken(token);
+            if (verifiedTokenCache != null) {
+                verifiedTokenCache.put(token, tokenValidation);
+            }
+        }
+        return tokenValidation;
+    }
+
     protected TokenValidation validateToken(String token) {
         TokenValidation tokenValidation;
+        boolean revocationChecked;
 
         if (UaaTokenUtils.isJwtToken(token)) {
-            tokenValidation = validate(token)
-                .checkRevocableTokenStore(tokenProvisioning)
-                .throwIfInvalid();
+            tokenValidation = validate(token).throwIfInvalid();
             Jwt tokenJwt = tokenValidation.getJwt();
 
             String keyId = tokenJwt.getHeader().getKid();
@@ -1132,6 +1154,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
                 .checkSignature(verifier)
                 .throwIfInvalid()
             ;
+            revocationChecked = false;
         } else {
             RevocableToken revocableToken;
             try {
@@ -1141,6 +1164,8 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
             }
             token = revocableToken.getValue();
             tokenValidation = validate(token).throwIfInvalid();
+            // the token was just read from the revocable token store
+            revocationChecked = true;
         }
 
         Map<String, Object> claims = tokenValidation.getClaims();
@@ -1150,6 +1175,10 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
             .throwIfInvalid()
             ;
 
+        if (!revocationChecked) {
+            tokenValidation.checkRevocableTokenStore(tokenProvisioning).throwIfInvalid();
+        }
+
         String clientId = (String) claims.get(CID);
         String userId = (String) claims.get(USER_ID);
         UaaUser user = null;
@@ -1170,20 +1199,26 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
             }
         }
 
-        tokenValidation.checkRevocableTokenStore(tokenProvisioning).throwIfInvalid();
+        Object tokenRevocationSignature = claims.get(REVOCATION_SIGNATURE);
+        if (tokenRevocationSignature == null) {
+            // tokens issued before revocation signatures were implemented are still valid
+            return tokenValidation.throwIfInvalid();
+        }
 
-        List<String> clientSecrets = new ArrayList<>();
         List<String> revocationSignatureList = new ArrayList<>();
         if (client.getClientSecret() != null) {
-            clientSecrets.addAll(Arrays.asList(client.getClientSecret().split(" ")));
+            // stop hashing as soon as one of the client secrets produces the signature in the token
+            for (String clientSecret : client.getClientSecret().split(" ")) {
+                String revocationSignature = UaaTokenUtils.getRevocableTokenSignature(client, clientSecret, user);
+                revocationSignatureList.add(revocationSignature);
+                if (revocationSignature.equals(tokenRevocationSignature)) {
+                    break;
+                }
+            }
         } else {
             revocationSignatureList.add(UaaTokenUtils.getRevocableTokenSignature(client, null, user));
         }
 
-        for (String clientSecret : clientSecrets) {
-            revocationSignatureList.add(UaaTokenUtils.getRevocableTokenSignature(client, clientSecret, user));
-        }
-
         tokenValidation = tokenValidation.checkRevocationSignature(revocationSignatureList);
 
         tokenValidation.throwIfInvalid();
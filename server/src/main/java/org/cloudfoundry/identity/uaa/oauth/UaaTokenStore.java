@@ -21,6 +21,9 @@ import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.authentication.UaaAuthentication;
 import org.cloudfoundry.identity.uaa.authentication.UaaAuthenticationDetails;
 import org.cloudfoundry.identity.uaa.authentication.UaaPrincipal;
+import org.cloudfoundry.identity.uaa.resources.jdbc.DefaultLimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiringEntryStore;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.UaaStringUtils;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -50,7 +53,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class UaaTokenStore implements AuthorizationCodeServices {
+public class UaaTokenStore implements AuthorizationCodeServices, ExpiringEntryStore {
     public static final long EXPIRATION_TIME = 5*60*1000;
     public static final long LEGACY_CODE_EXPIRATION_TIME = 3*24*60*60*1000;
     public static final String USER_AUTHENTICATION_UAA_AUTHENTICATION = "userAuthentication.uaaAuthentication";
@@ -72,6 +75,9 @@ public class UaaTokenStore implements AuthorizationCodeServices {
     private static final String SQL_DELETE_STATEMENT = "delete from oauth_code where code = ?";
     private static final String SQL_EXPIRE_STATEMENT = "delete from oauth_code where expiresat > 0 AND expiresat < ?";
     private static final String SQL_CLEAN_STATEMENT = "delete from oauth_code where created < ? and expiresat = 0";
+    private static final String SQL_SELECT_EXPIRED_STATEMENT = "select code from oauth_code where expiresat > 0 AND expiresat < ?";
+    private static final String SQL_SELECT_LEGACY_STATEMENT = "select code from oauth_code where created < ? and expiresat = 0";
+    private static final String SQL_DELETE_CODES_STATEMENT = "delete from oauth_code where code in ";
 
     private final DataSource dataSource;
     private final long expirationTime;
@@ -79,6 +85,8 @@ public class UaaTokenStore implements AuthorizationCodeServices {
     private final RowMapper rowMapper = new TokenCodeRowMapper();
 
     private final AtomicLong lastClean = new AtomicLong(0);
+    private boolean inlineCleanupEnabled = true;
+    private LimitSqlAdapter limitSqlAdapter = new DefaultLimitSqlAdapter();
 
     public UaaTokenStore(DataSource dataSource) {
         this(dataSource, EXPIRATION_TIME);
@@ -209,7 +217,23 @@ public class UaaTokenStore implements AuthorizationCodeServices {
         return new OAuth2Authentication(request, userAuthentication);
     }
 
+    @Override
+    public int deleteExpiredEntries(int maxEntries) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        int expired = ExpiringEntryStore.deleteInChunk(template, limitSqlAdapter, SQL_SELECT_EXPIRED_STATEMENT, SQL_DELETE_CODES_STATEMENT, maxEntries, System.currentTimeMillis());
+        logger.debug("[oauth_code] Removed "+expired+" expired entries.");
+        if (expired >= maxEntries) {
+            return expired;
+        }
+        int old = ExpiringEntryStore.deleteInChunk(template, limitSqlAdapter, SQL_SELECT_LEGACY_STATEMENT, SQL_DELETE_CODES_STATEMENT, maxEntries - expired, new Timestamp(System.currentTimeMillis()-LEGACY_CODE_EXPIRATION_TIME));
+        logger.debug("[oauth_code] Removed "+old+" old entries.");
+        return expired + old;
+    }
+
     protected void performExpirationClean() {
+        if (!inlineCleanupEnabled) {
+            return;
+        }
         long last = lastClean.get();
         //check if we should expire again
         if ((System.currentTimeMillis()-last) > getExpirationTime()) {
@@ -230,6 +254,21 @@ public class UaaTokenStore implements AuthorizationCodeServices {
         return expirationTime;
     }
 
+    public boolean isInlineCleanupEnabled() {
+        return inlineCleanupEnabled;
+    }
+
+    /**
+     * Disable when expired codes are removed by the {@link org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredEntrySweeper}
+     */
+    public void setInlineCleanupEnabled(boolean inlineCleanupEnabled) {
+        this.inlineCleanupEnabled = inlineCleanupEnabled;
+    }
+
+    public void setLimitSqlAdapter(LimitSqlAdapter limitSqlAdapter) {
+        this.limitSqlAdapter = limitSqlAdapter;
+    }
+
     protected class TokenCodeRowMapper implements RowMapper<TokenCode> {
 
         @Override
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Cloud Foundry
+ * Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ * <p>
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ * <p>
+ * This product includes a number of subcomponents with
+ * separate copyright notices and license terms. Your use of these
+ * subcomponents is subject to the terms and conditions of the
+ * subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.util.TokenValidation;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.crypto.codec.Utf8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.CID;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.EXP;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.JTI;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.USER_ID;
+
+/**
+ * Short lived cache of access tokens that passed validation, so resource servers
+ * calling /check_token repeatedly for the same token do not cause the signature,
+ * client, user and revocation checks to be repeated on every call.
+ * <p>
+ * Entries are scoped to the current identity zone and live for at most
+ * {@link #getExpiryInSeconds()}, and never beyond the expiry of the token itself.
+ * Tokens, users and clients revoked through the token revocation endpoint are
+ * evicted immediately; other changes (scope removal, password change, revocation
+ * on another node) become visible once the entry expires. The cache is disabled
+ * by default.
+ */
+@ManagedResource
+public class VerifiedTokenCache {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final ThreadLocal<MessageDigest> messageDigest = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private boolean enabled = false;
+    private int maxEntries = 10000;
+    private int expiryInSeconds = 30;
+
+    private volatile Cache<String, TokenValidation> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public VerifiedTokenCache() {
+        buildCache();
+    }
+
+    /**
+     * @return the cached validation result for the token, or null if there is none
+     * or the token has expired
+     */
+    public TokenValidation get(String token) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = getKey(token);
+        TokenValidation validation = cache.getIfPresent(key);
+        if (validation != null && isExpired(validation.getClaims())) {
+            cache.invalidate(key);
+            validation = null;
+        }
+        if (validation == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return validation;
+    }
+
+    public void put(String token, TokenValidation validation) {
+        if (!isEnabled() || validation == null || !validation.isValid() || isExpired(validation.getClaims())) {
+            return;
+        }
+        cache.put(getKey(token), validation);
+    }
+
+    public void evictByTokenId(String tokenId) {
+        evict(claims -> tokenId.equals(claims.get(JTI)));
+    }
+
+    public void evictByUserId(String userId) {
+        evict(claims -> userId.equals(claims.get(USER_ID)));
+    }
+
+    public void evictByClientId(String clientId) {
+        evict(claims -> clientId.equals(claims.get(CID)));
+    }
+
+    @ManagedOperation(description = "Remove all verified tokens from the cache")
+    public void evictAll() {
+        evictions.addAndGet(cache.size());
+        cache.invalidateAll();
+    }
+
+    private void evict(Predicate<Map<String, Object>> matcher) {
+        if (!isEnabled()) {
+            return;
+        }
+        cache.asMap().values().removeIf(validation -> {
+            boolean matches = matcher.test(validation.getClaims());
+            if (matches) {
+                evictions.incrementAndGet();
+            }
+            return matches;
+        });
+    }
+
+    private boolean isExpired(Map<String, Object> claims) {
+        Object exp = claims.get(EXP);
+        if (!(exp instanceof Number)) {
+            return true;
+        }
+        return ((Number) exp).longValue() * 1000l <= System.currentTimeMillis();
+    }
+
+    /**
+     * @return the zone and a SHA-256 digest of the token, so the cache holds a
+     * fixed size key instead of a copy of every bearer token
+     */
+    String getKey(String token) {
+        byte[] digest = messageDigest.get().digest(Utf8.encode(token));
+        return IdentityZoneHolder.get().getId() + ":" + new String(Hex.encode(digest));
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Verified Token Cache Hits")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Verified Token Cache Misses")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Verified Token Cache Revocation Evictions")
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Verified Token Cache Size")
+    public long getSize() {
+        return cache.size();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        buildCache();
+    }
+
+    public int getExpiryInSeconds() {
+        return expiryInSeconds;
+    }
+
+    public void setExpiryInSeconds(int expiryInSeconds) {
+        this.expiryInSeconds = expiryInSeconds;
+        buildCache();
+    }
+
+    protected void buildCache() {
+        cache = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(expiryInSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+}
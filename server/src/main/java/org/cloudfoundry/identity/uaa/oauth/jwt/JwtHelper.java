@@ -19,10 +19,16 @@ import static org.springframework.security.jwt.codec.Codecs.concat;
 import static org.springframework.security.jwt.codec.Codecs.utf8Decode;
 import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.springframework.security.jwt.BinaryFormat;
 import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 
@@ -67,7 +73,7 @@ public class JwtHelper {
             buffer.limit(token.length()).position(lastPeriod + 1);
             crypto = b64UrlDecode(buffer);
         }
-        return new JwtImpl(header, claims, crypto);
+        return new JwtImpl(header, claims, crypto, token, lastPeriod);
     }
 
     public static Jwt decodeAndVerify(String token, SignatureVerifier verifier) {
@@ -80,9 +86,128 @@ public class JwtHelper {
     public static Jwt encode(CharSequence content, Signer signer) {
         JwtHeader header = JwtHeaderHelper.create(signer);
         byte[] claims = utf8Encode(content);
-        byte[] crypto = signer
-                .sign(concat(b64UrlEncode(header.bytes()), PERIOD, b64UrlEncode(claims)));
-        return new JwtImpl(header, claims, crypto);
+        TokenBuffer buffer = TokenBuffer.get();
+        try {
+            buffer.writeSegment(header.bytes());
+            buffer.write('.');
+            buffer.writeSegment(claims);
+            byte[] crypto = buffer.sign(signer);
+            return new JwtImpl(header, claims, crypto, buffer.toAsciiString(), buffer.signingInputLength());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Creates a signed token, serializing the claims directly into the encoded token.
+     *
+     * @param claims the claims, serialized as JSON
+     * @param signer the signer, also providing the <code>alg</code> and <code>kid</code> header values
+     */
+    public static Jwt encode(Map<String, ?> claims, Signer signer) {
+        JwtHeader header = JwtHeaderHelper.create(signer);
+        TokenBuffer buffer = TokenBuffer.get();
+        try {
+            buffer.writeSegment(header.bytes());
+            buffer.write('.');
+            buffer.writeJsonSegment(claims);
+            byte[] crypto = buffer.sign(signer);
+            return new JwtImpl(header, null, crypto, buffer.toAsciiString(), buffer.signingInputLength());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Creates a signed token with an arbitrary header.
+     *
+     * @return the encoded token
+     */
+    public static String encode(Map<String, ?> header, Map<String, ?> claims, org.springframework.security.jwt.crypto.sign.Signer signer) {
+        TokenBuffer buffer = TokenBuffer.get();
+        try {
+            buffer.writeJsonSegment(header);
+            buffer.write('.');
+            buffer.writeJsonSegment(claims);
+            buffer.sign(signer);
+            return buffer.toAsciiString();
+        } finally {
+            buffer.release();
+        }
+    }
+}
+
+/**
+ * Per thread buffer the segments of a token are Base64 URL encoded into,
+ * so that encoding a token does not create intermediate copies of each segment.
+ */
+class TokenBuffer extends ByteArrayOutputStream {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final int INITIAL_SIZE = 2048;
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+    private static final ThreadLocal<TokenBuffer> BUFFERS = ThreadLocal.withInitial(TokenBuffer::new);
+
+    private int signingInputLength = -1;
+
+    private TokenBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    static TokenBuffer get() {
+        return BUFFERS.get();
+    }
+
+    void writeSegment(byte[] bytes) {
+        OutputStream segment = ENCODER.wrap(this);
+        try {
+            segment.write(bytes);
+            segment.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void writeJsonSegment(Object value) {
+        if (value == null) {
+            return;
+        }
+        OutputStream segment = ENCODER.wrap(this);
+        JsonUtils.writeValue(segment, value);
+        try {
+            segment.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Signs the header and claims segments written so far and appends the signature segment.
+     *
+     * @return the signature
+     */
+    byte[] sign(org.springframework.security.jwt.crypto.sign.Signer signer) {
+        signingInputLength = count;
+        byte[] crypto = signer.sign(toByteArray());
+        write('.');
+        writeSegment(crypto);
+        return crypto;
+    }
+
+    int signingInputLength() {
+        return signingInputLength;
+    }
+
+    String toAsciiString() {
+        return new String(buf, 0, count, StandardCharsets.US_ASCII);
+    }
+
+    void release() {
+        reset();
+        signingInputLength = -1;
+        if (buf.length > MAX_RETAINED_SIZE) {
+            BUFFERS.remove();
+        }
     }
 }
 
@@ -276,10 +401,14 @@ class HeaderParametersImpl implements HeaderParameters {
 class JwtImpl implements Jwt {
     private final JwtHeader header;
 
-    private final byte[] content;
+    private byte[] content;
 
     private final byte[] crypto;
 
+    private final String encoded;
+
+    private final int signingInputLength;
+
     private String claims;
 
     /**
@@ -289,10 +418,19 @@ class JwtImpl implements Jwt {
      * @param crypto the base64-decoded "crypto" segment.
      */
     JwtImpl(JwtHeader header, byte[] content, byte[] crypto) {
+        this(header, content, crypto, null, -1);
+    }
+
+    /**
+     * @param encoded the encoded token the segments were decoded from or encoded into
+     * @param signingInputLength the length of the encoded header and claims segments
+     */
+    JwtImpl(JwtHeader header, byte[] content, byte[] crypto, String encoded, int signingInputLength) {
         this.header = header;
         this.content = content;
         this.crypto = crypto;
-        claims = utf8Decode(content);
+        this.encoded = encoded;
+        this.signingInputLength = signingInputLength;
     }
 
     /**
@@ -306,8 +444,19 @@ class JwtImpl implements Jwt {
     }
 
     private byte[] signingInput() {
+        if (encoded != null) {
+            return encoded.substring(0, signingInputLength).getBytes(StandardCharsets.US_ASCII);
+        }
         return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD,
-                b64UrlEncode(content));
+                b64UrlEncode(content()));
+    }
+
+    private byte[] content() {
+        if (content == null) {
+            CharBuffer buffer = CharBuffer.wrap(encoded, encoded.indexOf('.') + 1, signingInputLength);
+            content = b64UrlDecode(buffer);
+        }
+        return content;
     }
 
     /**
@@ -318,23 +467,32 @@ class JwtImpl implements Jwt {
      */
     @Override
     public byte[] bytes() {
+        if (encoded != null) {
+            return encoded.getBytes(StandardCharsets.US_ASCII);
+        }
         return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD,
                 b64UrlEncode(content), JwtHelper.PERIOD, b64UrlEncode(crypto));
     }
 
     @Override
     public String getClaims() {
-        return utf8Decode(content);
+        if (claims == null) {
+            claims = utf8Decode(content());
+        }
+        return claims;
     }
 
     @Override
     public String getEncoded() {
+        if (encoded != null) {
+            return encoded;
+        }
         return utf8Decode(bytes());
     }
 
     @Override
     public String toString() {
-        return header + " " + claims + " [" + crypto.length + " crypto bytes]";
+        return header + " " + getClaims() + " [" + crypto.length + " crypto bytes]";
     }
 
     @Override
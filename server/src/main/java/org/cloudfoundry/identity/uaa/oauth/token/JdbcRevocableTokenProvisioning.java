@@ -15,7 +15,11 @@ package org.cloudfoundry.identity.uaa.oauth.token;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
+import org.cloudfoundry.identity.uaa.resources.jdbc.DefaultLimitSqlAdapter;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiringEntryStore;
+import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -29,7 +33,7 @@ import java.util.stream.Collectors;
 
 import static org.springframework.util.StringUtils.isEmpty;
 
-public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisioning, SystemDeletable {
+public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisioning, SystemDeletable, ExpiringEntryStore {
 
     protected JdbcTemplate jdbcTemplate;
 
@@ -43,6 +47,8 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
     protected final static String INSERT_QUERY = "INSERT INTO " + TABLE + " ("+FIELDS+") VALUES (?,?,?,?,?,?,?,?,?,?)";
     protected final static String DELETE_QUERY = "DELETE FROM " + TABLE + " WHERE token_id=? and identity_zone_id=?";
     protected final static String DELETE_EXPIRED_QUERY = "DELETE FROM " + TABLE + " WHERE expires_at < ?";
+    protected final static String SELECT_EXPIRED_QUERY = "SELECT token_id FROM " + TABLE + " WHERE expires_at < ?";
+    protected final static String DELETE_EXPIRED_BY_ID_QUERY = "DELETE FROM " + TABLE + " WHERE token_id IN ";
     protected final static String DELETE_BY_ZONE_QUERY = "DELETE FROM " + TABLE + " WHERE identity_zone_id=?";
 
 
@@ -52,8 +58,10 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
 
     protected AtomicLong lastExpiredCheck = new AtomicLong(0);
     protected long expirationCheckInterval = 30000; //30 seconds
+    protected boolean inlineCleanupEnabled = true;
+    protected LimitSqlAdapter limitSqlAdapter = new DefaultLimitSqlAdapter();
 
-    protected JdbcRevocableTokenProvisioning(JdbcTemplate jdbcTemplate) {
+    public JdbcRevocableTokenProvisioning(JdbcTemplate jdbcTemplate) {
         this.rowMapper =  new RevocableTokenRowMapper();
         this.template = jdbcTemplate;
     }
@@ -84,7 +92,48 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
     @Override
     public RevocableToken create(RevocableToken t) {
         checkExpired();
-        String zoneId = IdentityZoneHolder.get().getId();
+        insert(t, IdentityZoneHolder.get().getId());
+        return retrieve(t.getTokenId(), false);
+    }
+
+    /**
+     * Inserts the tokens in a single JDBC batch, each in the zone recorded on the token.
+     * If any of the tokens already exists the tokens are written one by one instead,
+     * updating existing access tokens and leaving existing refresh tokens untouched.
+     */
+    public void createAll(List<RevocableToken> tokens) {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        try {
+            template.batchUpdate(INSERT_QUERY, tokens, tokens.size(), (ps, t) -> {
+                int pos = 1;
+                ps.setString(pos++, t.getTokenId());
+                ps.setString(pos++, t.getClientId());
+                ps.setString(pos++, t.getUserId());
+                ps.setString(pos++, t.getFormat());
+                ps.setString(pos++, t.getResponseType().toString());
+                ps.setLong(pos++, t.getIssuedAt());
+                ps.setLong(pos++, t.getExpiresAt());
+                ps.setString(pos++, t.getScope());
+                ps.setString(pos++, t.getValue());
+                ps.setString(pos++, t.getZoneId());
+            });
+        } catch (DuplicateKeyException x) {
+            logger.debug("Duplicate token in batch, inserting tokens individually.");
+            for (RevocableToken t : tokens) {
+                try {
+                    insert(t, t.getZoneId());
+                } catch (DuplicateKeyException duplicate) {
+                    if (t.getResponseType() == RevocableToken.TokenType.ACCESS_TOKEN) {
+                        update(t.getTokenId(), t, t.getZoneId());
+                    }
+                }
+            }
+        }
+    }
+
+    protected void insert(RevocableToken t, String zoneId) {
         template.update(INSERT_QUERY,
                         t.getTokenId(),
                         t.getClientId(),
@@ -96,12 +145,15 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
                         t.getScope(),
                         t.getValue(),
                         zoneId);
-        return retrieve(t.getTokenId(), false);
     }
 
     @Override
     public RevocableToken update(String id, RevocableToken t) {
-        String zoneId = IdentityZoneHolder.get().getId();
+        update(id, t, IdentityZoneHolder.get().getId());
+        return retrieve(id, false);
+    }
+
+    protected void update(String id, RevocableToken t, String zoneId) {
         template.update(UPDATE_QUERY,
                         t.getClientId(),
                         t.getUserId(),
@@ -113,7 +165,6 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
                         t.getValue(),
                         id,
                         zoneId);
-        return retrieve(id, false);
     }
 
     @Override
@@ -164,7 +215,32 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
         this.expirationCheckInterval = expirationCheckInterval;
     }
 
+    public boolean isInlineCleanupEnabled() {
+        return inlineCleanupEnabled;
+    }
+
+    /**
+     * Disable when expired tokens are removed by the {@link org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredEntrySweeper}
+     */
+    public void setInlineCleanupEnabled(boolean inlineCleanupEnabled) {
+        this.inlineCleanupEnabled = inlineCleanupEnabled;
+    }
+
+    public void setLimitSqlAdapter(LimitSqlAdapter limitSqlAdapter) {
+        this.limitSqlAdapter = limitSqlAdapter;
+    }
+
+    @Override
+    public int deleteExpiredEntries(int maxEntries) {
+        int removed = ExpiringEntryStore.deleteInChunk(template, limitSqlAdapter, SELECT_EXPIRED_QUERY, DELETE_EXPIRED_BY_ID_QUERY, maxEntries, System.currentTimeMillis());
+        logger.debug("Removed "+removed+" expired revocable tokens.");
+        return removed;
+    }
+
     public void checkExpired() {
+        if (!inlineCleanupEnabled) {
+            return;
+        }
         long now = System.currentTimeMillis();
         if ((now-lastExpiredCheck.getAndSet(now)) > getExpirationCheckInterval()) {
             int removed = template.update(DELETE_EXPIRED_QUERY, now);
@@ -0,0 +1,298 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth.token;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Revocable token store that, when enabled, queues newly issued tokens and
+ * inserts them in JDBC batches from a background timer instead of inserting
+ * each token on the request thread.
+ * <p>
+ * Queued tokens are kept in an in-memory overlay until they are written, so a
+ * token can be retrieved or revoked on this node immediately after it was issued.
+ * Listing tokens flushes the queue first. When the queue is full, tokens are
+ * written synchronously. When a batch fails its tokens are written one by one,
+ * and tokens that still fail are kept queued until they are written or expire. When disabled, all calls go straight to the database.
+ */
+@ManagedResource
+public class WriteBehindRevocableTokenProvisioning implements RevocableTokenProvisioning, InitializingBean, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(WriteBehindRevocableTokenProvisioning.class);
+
+    private final JdbcRevocableTokenProvisioning delegate;
+
+    private boolean enabled = false;
+    private int batchSize = 100;
+    private int maxPending = 10000;
+    private long flushInterval = 100;
+
+    private final Map<String, RevocableToken> pending = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<RevocableToken> queue = new ConcurrentLinkedQueue<>();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile Timer timer;
+
+    private final AtomicLong batchedWrites = new AtomicLong();
+    private final AtomicLong synchronousWrites = new AtomicLong();
+    private final AtomicLong retriedWrites = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+
+    public WriteBehindRevocableTokenProvisioning(JdbcRevocableTokenProvisioning delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            timer = new Timer("WriteBehindRevocableTokenProvisioning.Flush", true);
+            timer.schedule(new FlushTask(), flushInterval, flushInterval);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        flush();
+    }
+
+    @Override
+    public RevocableToken create(RevocableToken token) {
+        if (!enabled || pending.size() >= maxPending) {
+            synchronousWrites.incrementAndGet();
+            return delegate.create(token);
+        }
+        if (token.getZoneId() == null) {
+            token.setZoneId(IdentityZoneHolder.get().getId());
+        }
+        String key = getKey(token.getZoneId(), token.getTokenId());
+        if (pending.putIfAbsent(key, token) != null) {
+            throw new DuplicateKeyException("Token is already queued: " + token.getTokenId());
+        }
+        queue.add(token);
+        Timer current = timer;
+        if (current != null && queue.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            current.schedule(new FlushTask(), 0);
+        }
+        return token;
+    }
+
+    @Override
+    public RevocableToken retrieve(String id) {
+        RevocableToken queued = pending.get(getKey(IdentityZoneHolder.get().getId(), id));
+        if (queued != null) {
+            if (queued.getExpiresAt() < System.currentTimeMillis()) {
+                throw new EmptyResultDataAccessException("Token expired.", 1);
+            }
+            return queued;
+        }
+        return delegate.retrieve(id);
+    }
+
+    @Override
+    public RevocableToken update(String id, RevocableToken resource) {
+        flush();
+        return delegate.update(id, resource);
+    }
+
+    @Override
+    public RevocableToken delete(String id, int version) {
+        synchronized (flushLock) {
+            RevocableToken queued = pending.remove(getKey(IdentityZoneHolder.get().getId(), id));
+            if (queued != null) {
+                queue.remove(queued);
+                return queued;
+            }
+            return delegate.delete(id, version);
+        }
+    }
+
+    @Override
+    public List<RevocableToken> retrieveAll() {
+        return delegate.retrieveAll();
+    }
+
+    @Override
+    public List<RevocableToken> getUserTokens(String userId) {
+        flush();
+        return delegate.getUserTokens(userId);
+    }
+
+    @Override
+    public List<RevocableToken> getUserTokens(String userId, String clientId) {
+        flush();
+        return delegate.getUserTokens(userId, clientId);
+    }
+
+    @Override
+    public List<RevocableToken> getClientTokens(String clientId) {
+        flush();
+        return delegate.getClientTokens(clientId);
+    }
+
+    /**
+     * Writes all queued tokens to the database. Tokens that could not be written
+     * stay queued and visible on this node, and are retried on the next flush.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<RevocableToken> failed = new ArrayList<>();
+            List<RevocableToken> batch = new ArrayList<>(batchSize);
+            RevocableToken token;
+            while ((token = queue.poll()) != null) {
+                batch.add(token);
+                if (batch.size() >= batchSize) {
+                    write(batch, failed);
+                    batch.clear();
+                }
+            }
+            write(batch, failed);
+            queue.addAll(failed);
+        }
+    }
+
+    private void write(List<RevocableToken> batch, List<RevocableToken> failed) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            delegate.createAll(batch);
+            batchedWrites.addAndGet(batch.size());
+            for (RevocableToken t : batch) {
+                written(t);
+            }
+        } catch (Exception x) {
+            logger.warn("Unable to persist a batch of " + batch.size() + " revocable tokens, writing them one by one.", x);
+            for (RevocableToken t : batch) {
+                write(t, failed);
+            }
+        }
+    }
+
+    private void write(RevocableToken token, List<RevocableToken> failed) {
+        try {
+            delegate.createAll(Collections.singletonList(token));
+            retriedWrites.incrementAndGet();
+            written(token);
+        } catch (Exception x) {
+            failedWrites.incrementAndGet();
+            if (token.getExpiresAt() < System.currentTimeMillis()) {
+                logger.error("Unable to persist revocable token " + token.getTokenId() + ", dropping it as it has expired.", x);
+                written(token);
+            } else {
+                logger.error("Unable to persist revocable token " + token.getTokenId() + ", it will be retried.", x);
+                failed.add(token);
+            }
+        }
+    }
+
+    private void written(RevocableToken token) {
+        pending.remove(getKey(token.getZoneId(), token.getTokenId()), token);
+    }
+
+    private static String getKey(String zoneId, String tokenId) {
+        return zoneId + ":" + tokenId;
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Revocable Tokens Written In Batches")
+    public long getBatchedWriteCount() {
+        return batchedWrites.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Revocable Tokens Written Synchronously")
+    public long getSynchronousWriteCount() {
+        return synchronousWrites.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Revocable Tokens Written One By One After A Failed Batch")
+    public long getRetriedWriteCount() {
+        return retriedWrites.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Revocable Tokens Failed To Write")
+    public long getFailedWriteCount() {
+        return failedWrites.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Revocable Tokens Pending")
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    private class FlushTask extends TimerTask {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+            try {
+                flush();
+            } catch (Exception x) {
+                logger.error("Unable to flush revocable tokens:", x);
+            }
+        }
+    }
+}
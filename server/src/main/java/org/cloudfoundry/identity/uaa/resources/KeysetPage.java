@@ -0,0 +1,49 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources;
+
+import java.util.List;
+
+/**
+ * One page of a query paged by the sort key instead of an offset. The next page is
+ * requested with {@link #getNextCursor()}, which is <code>null</code> on the last
+ * page.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> resources;
+    private final String nextCursor;
+    private final int totalResults;
+
+    public KeysetPage(List<T> resources, String nextCursor, int totalResults) {
+        this.resources = resources;
+        this.nextCursor = nextCursor;
+        this.totalResults = totalResults;
+    }
+
+    public List<T> getResources() {
+        return resources;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return the number of results when the first page was read, or -1 if they
+     * were not counted; rows added or removed while paging are not reflected
+     */
+    public int getTotalResults() {
+        return totalResults;
+    }
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources;
+
+/**
+ * A {@link Queryable} that can also page through its results with a cursor.
+ */
+public interface KeysetQueryable<T> extends Queryable<T> {
+
+    /**
+     * Returns at most <code>count</code> results that sort after the position in
+     * <code>cursor</code>, seeking on the sort key instead of skipping an offset.
+     *
+     * @param cursor the next cursor of the previous page, or empty for the first page
+     * @throws IllegalArgumentException if the cursor is invalid or was issued for a
+     * different sort order
+     */
+    default KeysetPage<T> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count) {
+        return queryPage(filter, sortBy, ascending, cursor, count, true);
+    }
+
+    /**
+     * As {@link #queryPage(String, String, boolean, String, int)}, optionally
+     * skipping the count of all results on the first page. Without the count the
+     * total results of every page, including the following ones, are -1.
+     */
+    KeysetPage<T> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean includeTotal);
+}
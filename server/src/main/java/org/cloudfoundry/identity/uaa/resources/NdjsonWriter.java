@@ -0,0 +1,66 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources;
+
+import com.jayway.jsonpath.JsonPath;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Writes resources to a stream as newline delimited JSON, one resource per line,
+ * optionally reduced to the requested attributes like {@link SearchResultsFactory}
+ * does for search results.
+ */
+public class NdjsonWriter<T> implements Consumer<T> {
+
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private static final byte NEWLINE = '\n';
+
+    private final OutputStream out;
+    private final Map<String, JsonPath> attributes;
+    private long count = 0;
+
+    public NdjsonWriter(OutputStream out) {
+        this(out, null, null);
+    }
+
+    /**
+     * @param attributes the attributes to write, or <code>null</code> for the whole resource
+     */
+    public NdjsonWriter(OutputStream out, String[] attributes, AttributeNameMapper mapper) {
+        this.out = out;
+        this.attributes = attributes == null ? null : SearchResultsFactory.compileAttributes(attributes, mapper);
+    }
+
+    @Override
+    public void accept(T resource) {
+        Object value = attributes == null ? resource : SearchResultsFactory.project(resource, attributes);
+        try {
+            out.write(JsonUtils.writeValueAsBytes(value));
+            out.write(NEWLINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -12,5 +12,5 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.resources;
 
-public interface QueryableResourceManager<T> extends Queryable<T>, ResourceManager<T> {
+public interface QueryableResourceManager<T> extends KeysetQueryable<T>, ResourceManager<T> {
 }
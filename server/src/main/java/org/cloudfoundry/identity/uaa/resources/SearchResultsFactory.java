@@ -94,28 +94,36 @@ public class SearchResultsFactory {
         Assert.state(input.size() <= count,
                         "Cannot build search results from parent list. Use subList before you call this method.");
 
-        Map<String, JsonPath> jsonPaths = asList(attributes).stream()
+        Map<String, JsonPath> jsonPaths = compileAttributes(attributes, mapper);
+
+        Collection<Map<String, Object>> results = new ArrayList<>();
+        for (T object : input) {
+            results.add(project(object, jsonPaths));
+        }
+
+        return new SearchResults<>(schemas, results, startIndex, count, total);
+    }
+
+    public static Map<String, JsonPath> compileAttributes(String[] attributes, AttributeNameMapper mapper) {
+        return asList(attributes).stream()
             .collect(new MapCollector<>(attribute -> attribute, attribute -> {
                 String jsonPath = "$." + mapper.mapToInternal(attribute);
                 return JsonPath.compile(jsonPath);
             }));
+    }
 
-        Collection<Map<String, Object>> results = new ArrayList<>();
-        for (T object : input) {
-            Map<String, Object> map = new LinkedHashMap<>();
-            String serializedObject = JsonUtils.writeValueAsString(object);
-            for (Map.Entry<String, JsonPath> attribute : jsonPaths.entrySet()) {
-                try {
-                    Object value = attribute.getValue().read(serializedObject);
-                    map.put(attribute.getKey(), value);
-                } catch (PathNotFoundException e) {
-                    map.put(attribute.getKey(), null);
-                }
+    public static Map<String, Object> project(Object object, Map<String, JsonPath> jsonPaths) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        String serializedObject = JsonUtils.writeValueAsString(object);
+        for (Map.Entry<String, JsonPath> attribute : jsonPaths.entrySet()) {
+            try {
+                Object value = attribute.getValue().read(serializedObject);
+                map.put(attribute.getKey(), value);
+            } catch (PathNotFoundException e) {
+                map.put(attribute.getKey(), null);
             }
-            results.add(map);
         }
-
-        return new SearchResults<>(schemas, results, startIndex, count, total);
+        return map;
     }
 
 }
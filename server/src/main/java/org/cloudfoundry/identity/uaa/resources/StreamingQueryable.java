@@ -0,0 +1,29 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources;
+
+import java.util.function.Consumer;
+
+/**
+ * A {@link Queryable} that can also pass its results on as they are read.
+ */
+public interface StreamingQueryable<T> extends Queryable<T> {
+
+    /**
+     * Passes every result to <code>callback</code> as it is read, without holding
+     * the results in memory.
+     *
+     * @throws IllegalArgumentException if the filter or sort field is invalid
+     */
+    void stream(String filter, String sortBy, boolean ascending, Consumer<T> callback);
+}
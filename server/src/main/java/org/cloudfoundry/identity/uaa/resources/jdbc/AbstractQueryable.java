@@ -12,23 +12,34 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.resources.jdbc;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.cloudfoundry.identity.uaa.resources.Queryable;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
+import org.cloudfoundry.identity.uaa.resources.KeysetQueryable;
+import org.cloudfoundry.identity.uaa.resources.StreamingQueryable;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.util.StringUtils;
 
-public abstract class AbstractQueryable<T> implements Queryable<T> {
+public abstract class AbstractQueryable<T> implements KeysetQueryable<T>, StreamingQueryable<T> {
 
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    private DataSource dataSource;
+
     private JdbcPagingListFactory pagingListFactory;
 
     protected RowMapper<T> rowMapper;
@@ -39,9 +50,12 @@ public abstract class AbstractQueryable<T> implements Queryable<T> {
 
     private int pageSize = 200;
 
+    private int exportFetchSize = 500;
+
     protected AbstractQueryable(JdbcTemplate jdbcTemplate, JdbcPagingListFactory pagingListFactory,
                     RowMapper<T> rowMapper) {
         this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.dataSource = jdbcTemplate.getDataSource();
         this.pagingListFactory = pagingListFactory;
         this.rowMapper = rowMapper;
     }
@@ -65,6 +79,21 @@ public abstract class AbstractQueryable<T> implements Queryable<T> {
         return pageSize;
     }
 
+    /**
+     * The number of rows the driver fetches at a time when streaming. MySQL only
+     * streams with {@link Integer#MIN_VALUE}, and PostgreSQL only inside a
+     * transaction; otherwise the driver reads the whole result first.
+     *
+     * @param exportFetchSize the fetch size for {@link #stream} (default 500)
+     */
+    public void setExportFetchSize(int exportFetchSize) {
+        this.exportFetchSize = exportFetchSize;
+    }
+
+    public int getExportFetchSize() {
+        return exportFetchSize;
+    }
+
     public int delete(String filter) {
         SearchQueryConverter.ProcessedFilter where = queryConverter.convert(filter, null, false);
         logger.debug("Filtering groups with SQL: " + where);
@@ -105,6 +134,104 @@ public abstract class AbstractQueryable<T> implements Queryable<T> {
         }
     }
 
+    @Override
+    public KeysetPage<T> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean includeTotal) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Invalid count: " + count);
+        }
+        String idColumn = getIdColumn();
+        String sortColumn = StringUtils.hasText(sortBy) ? queryConverter.map(sortBy) : idColumn;
+        if (sortColumn.contains(",")) {
+            throw new IllegalArgumentException("Cursor paging supports a single sort field: " + sortBy);
+        }
+        validateOrderBy(sortColumn);
+        KeysetCursor position = StringUtils.hasText(cursor) ? KeysetCursor.decode(cursor) : null;
+        if (position != null && (!sortColumn.equalsIgnoreCase(position.getSortColumn()) || ascending != position.isAscending())) {
+            throw new IllegalArgumentException("Cursor was issued for a different sort order: " + cursor);
+        }
+
+        SearchQueryConverter.ProcessedFilter where = queryConverter.convert(filter, null, ascending);
+        Map<String, Object> params = new HashMap<>(where.getParams());
+        String completeSql = getQuerySQL(filter, where);
+        try {
+            int totalResults;
+            if (position != null) {
+                totalResults = position.getTotalResults();
+            } else if (includeTotal) {
+                totalResults = jdbcTemplate.queryForObject(JdbcPagingList.getCountSql(completeSql), params, Integer.class);
+            } else {
+                totalResults = -1;
+            }
+            if (position != null) {
+                String operator = ascending ? " > " : " < ";
+                String seek = idColumn + operator + ":__keyset_id";
+                if (!sortColumn.equalsIgnoreCase(idColumn)) {
+                    seek = "(" + sortColumn + operator + ":__keyset_value or (" + sortColumn + " = :__keyset_value and " + seek + "))";
+                    params.put("__keyset_value", position.getValue());
+                }
+                params.put("__keyset_id", position.getId());
+                completeSql += (completeSql.toLowerCase().contains(" where ") ? " and " : " where ") + seek;
+            }
+            String direction = ascending ? " ASC" : " DESC";
+            completeSql += SearchQueryConverter.ProcessedFilter.ORDER_BY + sortColumn + direction;
+            if (!sortColumn.equalsIgnoreCase(idColumn)) {
+                completeSql += ", " + idColumn + direction;
+            }
+            //read one more row than requested to tell whether there is a next page
+            completeSql = pagingListFactory.getLimitSqlAdapter().getLimitSql(completeSql, 0, count + 1);
+            logger.debug("keyset sql: " + completeSql + ", params: " + params);
+
+            List<Object[]> keys = new ArrayList<>();
+            List<T> resources = jdbcTemplate.query(completeSql, params, (rs, rowNum) -> {
+                keys.add(new Object[] {rs.getObject(sortColumn), rs.getString(idColumn)});
+                return rowMapper.mapRow(rs, rowNum);
+            });
+            String nextCursor = null;
+            if (resources.size() > count) {
+                resources = resources.subList(0, count);
+                Object[] last = keys.get(count - 1);
+                if (last[0] == null) {
+                    throw new IllegalArgumentException("Cursor paging requires a value for every row: " + sortBy);
+                }
+                nextCursor = new KeysetCursor(sortColumn, ascending, last[0], (String) last[1], totalResults).encode();
+            }
+            return new KeysetPage<>(resources, nextCursor, totalResults);
+        } catch (DataAccessException e) {
+            logger.debug("Filter '" + filter + "' generated invalid SQL", e);
+            throw new IllegalArgumentException("Invalid filter: " + filter);
+        }
+    }
+
+    @Override
+    public void stream(String filter, String sortBy, boolean ascending, Consumer<T> callback) {
+        validateOrderBy(queryConverter.map(sortBy));
+        SearchQueryConverter.ProcessedFilter where = queryConverter.convert(filter, sortBy, ascending);
+        String completeSql = getQuerySQL(filter, where);
+        logger.debug("streaming sql: " + completeSql + ", params: " + where.getParams());
+        JdbcTemplate streamingTemplate = new JdbcTemplate(dataSource);
+        streamingTemplate.setFetchSize(exportFetchSize);
+        int[] rowNum = {0};
+        try {
+            new NamedParameterJdbcTemplate(streamingTemplate).query(completeSql, where.getParams(),
+                (RowCallbackHandler) rs -> callback.accept(rowMapper.mapRow(rs, rowNum[0]++)));
+        } catch (DataAccessException e) {
+            if (rowNum[0] > 0) {
+                //the callback has already passed on results, so the filter was valid
+                throw e;
+            }
+            logger.debug("Filter '" + filter + "' generated invalid SQL", e);
+            throw new IllegalArgumentException("Invalid filter: " + filter);
+        }
+    }
+
+    /**
+     * @return the unique column used to break ties between rows with the same sort
+     * value when paging with a cursor
+     */
+    protected String getIdColumn() {
+        return "id";
+    }
+
     protected String getQuerySQL(String filter, SearchQueryConverter.ProcessedFilter where) {
         if (filter == null || filter.trim().length()==0) {
             return getBaseSqlQuery();
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The versions of one cache in the {@link JdbcCacheVersions}, read back at most
+ * once every {@link #getRefreshCheckInSeconds()} per identity zone. Caches tag
+ * their entries with the version they were loaded at and discard entries with an
+ * older version.
+ */
+public class CachedZoneVersions {
+
+    private static final Log logger = LogFactory.getLog(CachedZoneVersions.class);
+
+    private final JdbcCacheVersions cacheVersions;
+    private final String cacheName;
+
+    private int refreshCheckInSeconds = 5;
+
+    private final Map<String, ZoneVersion> zoneVersions = new ConcurrentHashMap<>();
+    private final AtomicLong versionChecks = new AtomicLong();
+
+    public CachedZoneVersions(JdbcCacheVersions cacheVersions, String cacheName) {
+        this.cacheVersions = cacheVersions;
+        this.cacheName = cacheName;
+    }
+
+    public long getVersion(String zoneId) {
+        long now = System.currentTimeMillis();
+        ZoneVersion known = zoneVersions.get(zoneId);
+        if (known != null && now - known.getCheckedAt() < TimeUnit.SECONDS.toMillis(refreshCheckInSeconds)) {
+            return known.getVersion();
+        }
+        versionChecks.incrementAndGet();
+        long version = cacheVersions.getVersion(cacheName, zoneId);
+        if (known != null && known.getVersion() != version) {
+            logger.debug("Cache '" + cacheName + "' of identity zone '" + zoneId + "' changed on another node, reloading.");
+        }
+        zoneVersions.put(zoneId, new ZoneVersion(version, now));
+        return version;
+    }
+
+    /**
+     * Marks the entries of the zone as changed, on all nodes. The new version is
+     * used on this node right away, so entries loaded while the change was being
+     * made are not served until the next refresh check.
+     */
+    public void increment(String zoneId) {
+        cacheVersions.increment(cacheName, zoneId);
+        zoneVersions.put(zoneId, new ZoneVersion(cacheVersions.getVersion(cacheName, zoneId), System.currentTimeMillis()));
+    }
+
+    public long getVersionCheckCount() {
+        return versionChecks.get();
+    }
+
+    public int getRefreshCheckInSeconds() {
+        return refreshCheckInSeconds;
+    }
+
+    public void setRefreshCheckInSeconds(int refreshCheckInSeconds) {
+        this.refreshCheckInSeconds = refreshCheckInSeconds;
+    }
+
+    private static class ZoneVersion {
+        private final long version;
+        private final long checkedAt;
+
+        ZoneVersion(long version, long checkedAt) {
+            this.version = version;
+            this.checkedAt = checkedAt;
+        }
+
+        long getVersion() {
+            return version;
+        }
+
+        long getCheckedAt() {
+            return checkedAt;
+        }
+    }
+}
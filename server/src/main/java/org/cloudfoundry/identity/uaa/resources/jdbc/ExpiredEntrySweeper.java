@@ -0,0 +1,180 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes expired entries from the {@link ExpiringEntryStore}s on a background
+ * timer, so that request threads never run unbounded deletes.
+ * <p>
+ * Only the node holding the {@link JdbcJobLock} sweeps. Entries are deleted in
+ * chunks of at most {@link #getChunkSize()} rows, pausing between chunks to keep
+ * lock times and replication lag short.
+ */
+@ManagedResource
+public class ExpiredEntrySweeper implements InitializingBean, DisposableBean {
+
+    public static final String LOCK_NAME = "expired-entry-sweeper";
+
+    private static final Log logger = LogFactory.getLog(ExpiredEntrySweeper.class);
+
+    private final JdbcJobLock lock;
+    private final List<ExpiringEntryStore> stores;
+
+    private boolean enabled = true;
+    private long sweepInterval = 60000;
+    private int chunkSize = 500;
+    private long pauseBetweenChunks = 100;
+
+    private volatile Timer timer;
+    private volatile boolean stopped = false;
+
+    private final AtomicLong sweeps = new AtomicLong();
+    private final AtomicLong deletedEntries = new AtomicLong();
+    private volatile long lastSweepDuration = 0;
+
+    public ExpiredEntrySweeper(JdbcJobLock lock, List<ExpiringEntryStore> stores) {
+        this.lock = lock;
+        this.stores = stores;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            timer = new Timer("ExpiredEntrySweeper", true);
+            timer.schedule(new SweepTask(), sweepInterval, sweepInterval);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        stopped = true;
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+            lock.release(LOCK_NAME);
+        }
+    }
+
+    /**
+     * Deletes all expired entries, if this node holds the sweeper lock.
+     * @return the number of entries deleted
+     */
+    @ManagedOperation(description = "Delete expired entries now")
+    public int sweep() {
+        if (!lock.tryLock(LOCK_NAME, 2 * sweepInterval)) {
+            logger.debug("Expired entry sweeper is running on another node.");
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        int total = 0;
+        for (ExpiringEntryStore store : stores) {
+            int deleted;
+            do {
+                deleted = store.deleteExpiredEntries(chunkSize);
+                total += deleted;
+                deletedEntries.addAndGet(deleted);
+            } while (deleted >= chunkSize && pause());
+        }
+        sweeps.incrementAndGet();
+        lastSweepDuration = System.currentTimeMillis() - start;
+        logger.debug("Expired entry sweeper deleted " + total + " entries in " + lastSweepDuration + "ms.");
+        return total;
+    }
+
+    private boolean pause() {
+        if (stopped) {
+            return false;
+        }
+        if (pauseBetweenChunks > 0) {
+            try {
+                Thread.sleep(pauseBetweenChunks);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Expired Entry Sweeps")
+    public long getSweepCount() {
+        return sweeps.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Expired Entries Deleted")
+    public long getDeletedEntryCount() {
+        return deletedEntries.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Last Expired Entry Sweep Duration", unit = "ms")
+    public long getLastSweepDuration() {
+        return lastSweepDuration;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getSweepInterval() {
+        return sweepInterval;
+    }
+
+    public void setSweepInterval(long sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public long getPauseBetweenChunks() {
+        return pauseBetweenChunks;
+    }
+
+    public void setPauseBetweenChunks(long pauseBetweenChunks) {
+        this.pauseBetweenChunks = pauseBetweenChunks;
+    }
+
+    private class SweepTask extends TimerTask {
+        @Override
+        public void run() {
+            try {
+                sweep();
+            } catch (Exception x) {
+                logger.error("Unable to delete expired entries:", x);
+            }
+        }
+    }
+}
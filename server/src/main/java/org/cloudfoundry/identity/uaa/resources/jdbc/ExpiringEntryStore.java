@@ -0,0 +1,48 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A store whose expired entries are removed by the {@link ExpiredEntrySweeper}.
+ */
+public interface ExpiringEntryStore {
+
+    /**
+     * Deletes at most <code>maxEntries</code> expired entries.
+     * @return the number of entries deleted
+     */
+    int deleteExpiredEntries(int maxEntries);
+
+    /**
+     * Selects the keys of at most <code>maxEntries</code> rows matching <code>selectKeysSql</code>
+     * and deletes those rows by key, so that each delete touches a bounded number of rows.
+     *
+     * @param selectKeysSql a query returning the key column of the rows to delete
+     * @param deleteSql a delete statement ending in <code>key IN </code>, the key list is appended
+     * @param args the arguments of the select statement
+     * @return the number of rows deleted
+     */
+    static int deleteInChunk(JdbcTemplate template, LimitSqlAdapter limitSqlAdapter, String selectKeysSql, String deleteSql, int maxEntries, Object... args) {
+        List<String> keys = template.queryForList(limitSqlAdapter.getLimitSql(selectKeysSql, 0, maxEntries), String.class, args);
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        String placeholders = String.join(",", Collections.nCopies(keys.size(), "?"));
+        return template.update(deleteSql + "(" + placeholders + ")", keys.toArray());
+    }
+}
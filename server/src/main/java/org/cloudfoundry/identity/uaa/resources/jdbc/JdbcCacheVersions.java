@@ -0,0 +1,56 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * Per zone change counters stored in the <code>cache_invalidation_versions</code>
+ * table. A node that changes cached data increments the version of the cache in
+ * the zone; other nodes compare the version to the one they loaded their entries
+ * at and discard their entries for the zone when it has changed.
+ */
+public class JdbcCacheVersions {
+
+    protected static final String SELECT_QUERY = "SELECT version FROM cache_invalidation_versions WHERE cache_name=? AND identity_zone_id=?";
+    protected static final String INCREMENT_QUERY = "UPDATE cache_invalidation_versions SET version=version+1 WHERE cache_name=? AND identity_zone_id=?";
+    protected static final String INSERT_QUERY = "INSERT INTO cache_invalidation_versions (cache_name, identity_zone_id, version) VALUES (?,?,1)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcCacheVersions(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return the current version of the cache in the zone, 0 if it was never changed
+     */
+    public long getVersion(String cacheName, String zoneId) {
+        List<Long> versions = jdbcTemplate.queryForList(SELECT_QUERY, Long.class, cacheName, zoneId);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    public void increment(String cacheName, String zoneId) {
+        if (jdbcTemplate.update(INCREMENT_QUERY, cacheName, zoneId) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(INSERT_QUERY, cacheName, zoneId);
+        } catch (DataIntegrityViolationException inserted) {
+            jdbcTemplate.update(INCREMENT_QUERY, cacheName, zoneId);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.InetAddress;
+import java.util.UUID;
+
+/**
+ * Lease based lock stored in the <code>job_locks</code> table, used to elect a
+ * single node to run a background job. A lock is held by a node until it is
+ * released or the lease expires; the holder renews the lease by acquiring it again.
+ */
+public class JdbcJobLock {
+
+    protected static final String ACQUIRE_QUERY = "UPDATE job_locks SET owner=?, expires_at=? WHERE name=? AND (owner=? OR expires_at<?)";
+    protected static final String INSERT_QUERY = "INSERT INTO job_locks (name, owner, expires_at) VALUES (?,?,?)";
+    protected static final String RELEASE_QUERY = "DELETE FROM job_locks WHERE name=? AND owner=?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String owner;
+
+    public JdbcJobLock(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, getHostName() + ":" + UUID.randomUUID().toString());
+    }
+
+    public JdbcJobLock(JdbcTemplate jdbcTemplate, String owner) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.owner = owner;
+    }
+
+    /**
+     * @return true if this node holds the lock for <code>leaseMillis</code> from now
+     */
+    public boolean tryLock(String name, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        if (jdbcTemplate.update(ACQUIRE_QUERY, owner, now + leaseMillis, name, owner, now) == 1) {
+            return true;
+        }
+        try {
+            return jdbcTemplate.update(INSERT_QUERY, name, owner, now + leaseMillis) == 1;
+        } catch (DataIntegrityViolationException held) {
+            return false;
+        }
+    }
+
+    public void release(String name) {
+        jdbcTemplate.update(RELEASE_QUERY, name, owner);
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception x) {
+            return "unknown";
+        }
+    }
+}
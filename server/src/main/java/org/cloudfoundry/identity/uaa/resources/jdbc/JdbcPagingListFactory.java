@@ -38,4 +38,8 @@ public class JdbcPagingListFactory {
     public <T> List<T> createJdbcPagingList(String sql, Map<String, ?> args, RowMapper<T> mapper, int pageSize) {
         return new JdbcPagingList<T>(jdbcTemplate, limitSqlAdapter, sql, args, mapper, pageSize);
     }
+
+    public LimitSqlAdapter getLimitSqlAdapter() {
+        return limitSqlAdapter;
+    }
 }
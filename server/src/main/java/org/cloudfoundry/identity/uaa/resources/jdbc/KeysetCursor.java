@@ -0,0 +1,117 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The position after the last row of a page: the sort column and direction, the
+ * value of the sort column and the id of the row, and the total number of results
+ * counted for the first page. Encoded as an opaque, URL safe token.
+ */
+class KeysetCursor {
+
+    private static final String TIMESTAMP = "timestamp";
+    private static final String STRING = "string";
+    private static final String NUMBER = "number";
+    private static final String BOOLEAN = "boolean";
+
+    private final String sortColumn;
+    private final boolean ascending;
+    private final Object value;
+    private final String id;
+    private final int totalResults;
+
+    KeysetCursor(String sortColumn, boolean ascending, Object value, String id, int totalResults) {
+        this.sortColumn = sortColumn;
+        this.ascending = ascending;
+        this.value = value;
+        this.id = id;
+        this.totalResults = totalResults;
+    }
+
+    String getSortColumn() {
+        return sortColumn;
+    }
+
+    boolean isAscending() {
+        return ascending;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    int getTotalResults() {
+        return totalResults;
+    }
+
+    String encode() {
+        Map<String, Object> token = new HashMap<>();
+        token.put("c", sortColumn);
+        token.put("a", ascending);
+        token.put("i", id);
+        token.put("n", totalResults);
+        if (value instanceof Timestamp) {
+            token.put("t", TIMESTAMP);
+            token.put("v", ((Timestamp) value).getTime());
+            token.put("ns", ((Timestamp) value).getNanos());
+        } else if (value instanceof String) {
+            token.put("t", STRING);
+            token.put("v", value);
+        } else if (value instanceof Number) {
+            token.put("t", NUMBER);
+            token.put("v", ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            token.put("t", BOOLEAN);
+            token.put("v", value);
+        } else if (value != null) {
+            throw new IllegalArgumentException("Cannot page by a column of type " + value.getClass().getSimpleName() + ": " + sortColumn);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JsonUtils.writeValueAsBytes(token));
+    }
+
+    static KeysetCursor decode(String cursor) {
+        Map<String, Object> token;
+        try {
+            token = JsonUtils.readValue(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), new TypeReference<Map<String, Object>>() {});
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        if (token == null || !StringUtils.hasText((String) token.get("c")) || !StringUtils.hasText((String) token.get("i"))) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        Object value = token.get("v");
+        String type = (String) token.get("t");
+        if (TIMESTAMP.equals(type)) {
+            Timestamp timestamp = new Timestamp(((Number) value).longValue());
+            timestamp.setNanos(((Number) token.get("ns")).intValue());
+            value = timestamp;
+        } else if (NUMBER.equals(type)) {
+            value = ((Number) value).longValue();
+        }
+        return new KeysetCursor((String) token.get("c"), Boolean.TRUE.equals(token.get("a")), value, (String) token.get("i"), ((Number) token.get("n")).intValue());
+    }
+}
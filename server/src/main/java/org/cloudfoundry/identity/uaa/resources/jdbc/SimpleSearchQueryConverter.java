@@ -16,10 +16,16 @@ package org.cloudfoundry.identity.uaa.resources.jdbc;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMFilter;
 import org.apache.commons.logging.Log;
@@ -38,16 +44,47 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
 
     private boolean dbCaseInsensitive = false;
 
+    private static final String LITERAL_PLACEHOLDER = "__uaa_filter_literal_";
+    private static final String DATE_PLACEHOLDER = "1970-01-01T00:00:00.000Z";
+
+    private Cache<PlanKey, FilterPlan> plans = newPlanCache(1000);
+
     public boolean isDbCaseInsensitive() {
         return dbCaseInsensitive;
     }
 
     public void setDbCaseInsensitive(boolean caseInsensitive) {
         this.dbCaseInsensitive = caseInsensitive;
+        invalidatePlans();
     }
 
     public void setAttributeNameMapper(AttributeNameMapper mapper) {
         this.mapper = mapper;
+        invalidatePlans();
+    }
+
+    private void invalidatePlans() {
+        if (plans != null) {
+            plans.invalidateAll();
+        }
+    }
+
+    /**
+     * The maximum number of filter shapes whose SQL is kept. Zero or less disables
+     * the cache and converts every filter from scratch.
+     *
+     * @param planCacheSize the number of cached filter shapes (default 1000)
+     */
+    public void setPlanCacheSize(int planCacheSize) {
+        this.plans = planCacheSize > 0 ? newPlanCache(planCacheSize) : null;
+    }
+
+    public long getCachedPlanCount() {
+        return plans == null ? 0 : plans.size();
+    }
+
+    private static Cache<PlanKey, FilterPlan> newPlanCache(int size) {
+        return CacheBuilder.newBuilder().maximumSize(size).build();
     }
 
     @Override
@@ -57,6 +94,109 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
 
     @Override
     public ProcessedFilter convert(String filter, String sortBy, boolean ascending, AttributeNameMapper mapper) {
+        if (plans == null || !StringUtils.hasText(filter)) {
+            return convertFilter(filter, sortBy, ascending, mapper);
+        }
+        List<Object> literals = new ArrayList<>();
+        String shape = getFilterShape(filter, literals);
+        if (shape == null) {
+            return convertFilter(filter, sortBy, ascending, mapper);
+        }
+        PlanKey key = new PlanKey(shape, sortBy, ascending, mapper);
+        FilterPlan plan = plans.getIfPresent(key);
+        if (plan == null) {
+            plan = compile(shape, literals, sortBy, ascending, mapper);
+            if (plan == null) {
+                return convertFilter(filter, sortBy, ascending, mapper);
+            }
+            plans.put(key, plan);
+        }
+        return plan.bind(literals);
+    }
+
+    /**
+     * Replaces every quoted value of the filter with a placeholder, so that filters
+     * differing only in their values share a shape. Dates and strings compile to
+     * different SQL, so the placeholder records which of the two the value is.
+     *
+     * @param literals receives the converted values, in the order they appear
+     * @return the shape of the filter, or <code>null</code> when it uses escapes or
+     * legacy single quotes and has to be converted from scratch
+     */
+    protected String getFilterShape(String filter, List<Object> literals) {
+        if (filter.indexOf('\\') >= 0) {
+            return null;
+        }
+        StringBuilder shape = new StringBuilder(filter.length());
+        int start = 0;
+        int open;
+        while ((open = filter.indexOf('"', start)) >= 0) {
+            int close = filter.indexOf('"', open + 1);
+            if (close < 0 || filter.substring(start, open).indexOf('\'') >= 0) {
+                return null;
+            }
+            Object value = getStringOrDate(filter.substring(open + 1, close));
+            literals.add(value);
+            shape.append(filter, start, open).append(value instanceof String ? "\"?\"" : "\"?date\"");
+            start = close + 1;
+        }
+        if (filter.indexOf('\'', start) >= 0) {
+            return null;
+        }
+        return shape.append(filter, start, filter.length()).toString();
+    }
+
+    private FilterPlan compile(String shape, List<Object> literals, String sortBy, boolean ascending, AttributeNameMapper mapper) {
+        StringBuilder template = new StringBuilder(shape.length());
+        String[] parts = shape.split("\"\\?(date)?\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            template.append(parts[i]);
+            if (i < literals.size()) {
+                Object value = literals.get(i);
+                template.append('"').append(value instanceof String ? LITERAL_PLACEHOLDER + i + "__" : DATE_PLACEHOLDER).append('"');
+            }
+        }
+        ProcessedFilter compiled;
+        try {
+            compiled = convertFilter(template.toString(), sortBy, ascending, mapper);
+        } catch (IllegalArgumentException e) {
+            //let the original filter report the error
+            return null;
+        }
+
+        List<Integer> dates = new ArrayList<>();
+        for (int i = 0; i < literals.size(); i++) {
+            if (!(literals.get(i) instanceof String)) {
+                dates.add(i);
+            }
+        }
+        Map<String, Object> constants = new HashMap<>();
+        List<LiteralBinding> bindings = new ArrayList<>();
+        for (int p = 0; p < compiled.getParams().size(); p++) {
+            String name = compiled.getParamPrefix() + p;
+            Object value = compiled.getParams().get(name);
+            if (value instanceof String && ((String) value).contains(LITERAL_PLACEHOLDER)) {
+                String text = (String) value;
+                int start = text.indexOf(LITERAL_PLACEHOLDER);
+                int end = text.indexOf("__", start + LITERAL_PLACEHOLDER.length());
+                int index = Integer.parseInt(text.substring(start + LITERAL_PLACEHOLDER.length(), end));
+                bindings.add(new LiteralBinding(name, index, text.substring(0, start), text.substring(end + 2)));
+            } else if (value instanceof Date) {
+                if (dates.isEmpty()) {
+                    return null;
+                }
+                bindings.add(new LiteralBinding(name, dates.remove(0), null, null));
+            } else {
+                constants.put(name, value);
+            }
+        }
+        if (!dates.isEmpty() || constants.size() + bindings.size() != compiled.getParams().size()) {
+            return null;
+        }
+        return new FilterPlan(compiled, constants, bindings);
+    }
+
+    private ProcessedFilter convertFilter(String filter, String sortBy, boolean ascending, AttributeNameMapper mapper) {
         String paramPrefix = generateParameterPrefix(filter);
         Map<String, Object> values = new HashMap<>();
         String where = StringUtils.hasText(filter) ? getWhereClause(filter, sortBy, ascending, values, mapper, paramPrefix) : null;
@@ -201,4 +341,83 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
     public String map(String attribute) {
         return StringUtils.hasText(attribute) ? mapper.mapToInternal(attribute) : attribute;
     }
+
+    private static final class PlanKey {
+        private final String shape;
+        private final String sortBy;
+        private final boolean ascending;
+        private final AttributeNameMapper mapper;
+
+        private PlanKey(String shape, String sortBy, boolean ascending, AttributeNameMapper mapper) {
+            this.shape = shape;
+            this.sortBy = sortBy;
+            this.ascending = ascending;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) o;
+            return ascending == other.ascending &&
+                mapper == other.mapper &&
+                shape.equals(other.shape) &&
+                Objects.equals(sortBy, other.sortBy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(shape, sortBy, ascending, System.identityHashCode(mapper));
+        }
+    }
+
+    private static final class LiteralBinding {
+        private final String param;
+        private final int literal;
+        private final String prefix;
+        private final String suffix;
+
+        private LiteralBinding(String param, int literal, String prefix, String suffix) {
+            this.param = param;
+            this.literal = literal;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+    }
+
+    /**
+     * The SQL for one filter shape, with the parameters that are fixed by the
+     * shape and the ones bound from the quoted values of each filter.
+     */
+    private static final class FilterPlan {
+        private final String sql;
+        private final String paramPrefix;
+        private final boolean hasOrderBy;
+        private final Map<String, Object> constants;
+        private final List<LiteralBinding> bindings;
+
+        private FilterPlan(ProcessedFilter compiled, Map<String, Object> constants, List<LiteralBinding> bindings) {
+            this.sql = compiled.getSql();
+            this.paramPrefix = compiled.getParamPrefix();
+            this.hasOrderBy = compiled.hasOrderBy();
+            this.constants = constants;
+            this.bindings = bindings;
+        }
+
+        private ProcessedFilter bind(List<Object> literals) {
+            Map<String, Object> values = new HashMap<>(constants);
+            for (LiteralBinding binding : bindings) {
+                Object value = literals.get(binding.literal);
+                values.put(binding.param, binding.prefix == null ? value : binding.prefix + value + binding.suffix);
+            }
+            ProcessedFilter pf = new ProcessedFilter(sql, values, hasOrderBy);
+            pf.setParamPrefix(paramPrefix);
+            return pf;
+        }
+    }
 }
@@ -12,7 +12,9 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.scim;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.cloudfoundry.identity.uaa.resources.Queryable;
@@ -67,6 +69,17 @@ public interface ScimGroupMembershipManager extends Queryable<ScimGroupMember> {
      */
     Set<ScimGroup> getGroupsWithMember(String memberId, boolean transitive) throws ScimResourceNotFoundException;
 
+    /**
+     * Retrieve all groups that each of the given users belongs to, including the
+     * default user groups, with a few queries for all users together
+     *
+     * @param userIds
+     * @param transitive true means indirect/transitive membership is also
+     *            processed (nested groups)
+     * @return the groups by user id, with an empty set for users without groups
+     */
+    Map<String, Set<ScimGroup>> getGroupsWithUsers(Collection<String> userIds, boolean transitive);
+
     /**
      * Retrieve a particular member's membership details
      *
@@ -12,8 +12,13 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.scim;
 
-import org.cloudfoundry.identity.uaa.resources.Queryable;
+import org.cloudfoundry.identity.uaa.resources.KeysetQueryable;
 import org.cloudfoundry.identity.uaa.resources.ResourceManager;
+import org.cloudfoundry.identity.uaa.resources.StreamingQueryable;
 
-public interface ScimGroupProvisioning extends ResourceManager<ScimGroup>, Queryable<ScimGroup> {
+import java.util.List;
+
+public interface ScimGroupProvisioning extends ResourceManager<ScimGroup>, KeysetQueryable<ScimGroup>, StreamingQueryable<ScimGroup> {
+
+    List<ScimGroup> getByName(String displayName, String zoneId);
 }
@@ -12,14 +12,15 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.scim;
 
-import org.cloudfoundry.identity.uaa.resources.Queryable;
+import org.cloudfoundry.identity.uaa.resources.KeysetQueryable;
 import org.cloudfoundry.identity.uaa.resources.ResourceManager;
+import org.cloudfoundry.identity.uaa.resources.StreamingQueryable;
 import org.cloudfoundry.identity.uaa.scim.exception.InvalidPasswordException;
 import org.cloudfoundry.identity.uaa.scim.exception.InvalidScimResourceException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
 
 
-public interface ScimUserProvisioning extends ResourceManager<ScimUser>, Queryable<ScimUser> {
+public interface ScimUserProvisioning extends ResourceManager<ScimUser>, KeysetQueryable<ScimUser>, StreamingQueryable<ScimUser> {
 
     ScimUser createUser(ScimUser user, String password) throws InvalidPasswordException, InvalidScimResourceException;
 
@@ -16,6 +16,8 @@ import com.jayway.jsonpath.JsonPathException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
+import org.cloudfoundry.identity.uaa.resources.NdjsonWriter;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.SearchResultsFactory;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
@@ -41,6 +43,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -56,6 +59,8 @@ import org.springframework.web.servlet.View;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -143,6 +148,11 @@ public class ScimGroupEndpoints {
         return response;
     }
 
+    public SearchResults<?> listGroups(String attributesCommaSeparated, String filter, String sortBy, String sortOrder,
+                                       int startIndex, int count) {
+        return listGroups(attributesCommaSeparated, filter, sortBy, sortOrder, startIndex, count, null, true);
+    }
+
     @RequestMapping(value = { "/Groups" }, method = RequestMethod.GET)
     @ResponseBody
     public SearchResults<?> listGroups(
@@ -151,31 +161,88 @@ public class ScimGroupEndpoints {
         @RequestParam(required = false, defaultValue = "created") String sortBy,
         @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
         @RequestParam(required = false, defaultValue = "1") int startIndex,
-        @RequestParam(required = false, defaultValue = "100") int count) {
+        @RequestParam(required = false, defaultValue = "100") int count,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false, defaultValue = "true") boolean includeTotal) {
 
-        List<ScimGroup> result;
+        List<ScimGroup> input;
+        int totalResults;
+        String nextCursor = null;
         try {
-            result = dao.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder));
+            if (cursor != null) {
+                KeysetPage<ScimGroup> page = dao.queryPage(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), cursor, count, includeTotal);
+                startIndex = 1;
+                input = filterForCurrentUser(page.getResources(), startIndex, count);
+                totalResults = page.getTotalResults();
+                nextCursor = page.getNextCursor();
+            } else {
+                List<ScimGroup> result = dao.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder));
+                input = filterForCurrentUser(result, startIndex, count);
+                totalResults = result.size();
+            }
         } catch (IllegalArgumentException e) {
-            throw new ScimException("Invalid filter expression: [" + filter + "]", HttpStatus.BAD_REQUEST);
+            String msg = "Invalid filter expression: [" + filter + "]";
+            if (StringUtils.hasText(cursor)) {
+                msg += " [" + cursor + "]";
+            }
+            throw new ScimException(msg, HttpStatus.BAD_REQUEST);
         }
 
-        List<ScimGroup> input = filterForCurrentUser(result, startIndex, count);
-
+        SearchResults<?> results;
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
-            return new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count,
-                                       result.size());
+            results = new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count,
+                                          totalResults);
+        } else {
+            AttributeNameMapper mapper = new SimpleAttributeNameMapper(Collections.emptyMap());
+
+            String[] attributes = attributesCommaSeparated.split(",");
+            try {
+                results = SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, totalResults, attributes,
+                                                                     mapper,Arrays.asList(ScimCore.SCHEMAS));
+            } catch (JsonPathException e) {
+                throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
+            }
         }
-
-        AttributeNameMapper mapper = new SimpleAttributeNameMapper(Collections.emptyMap());
-
-        String[] attributes = attributesCommaSeparated.split(",");
+        results.setNextCursor(nextCursor);
+        return results;
+    }
+
+    /**
+     * Writes every group matching the filter as one JSON object per line, reading
+     * them from a database cursor instead of in pages. Members are not included;
+     * they would need a query per group while the cursor is open.
+     */
+    @RequestMapping(value = { "/Groups/export" }, method = RequestMethod.GET)
+    @Transactional(readOnly = true)
+    public void exportGroups(
+        @RequestParam(value = "attributes", required = false) String attributesCommaSeparated,
+        @RequestParam(required = false, defaultValue = "id pr") String filter,
+        @RequestParam(required = false, defaultValue = "created") String sortBy,
+        @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
+        HttpServletResponse response) throws IOException {
+        NdjsonWriter<ScimGroup> writer;
         try {
-            return SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, result.size(), attributes,
-                                                              mapper,Arrays.asList(ScimCore.SCHEMAS));
+            writer = StringUtils.hasLength(attributesCommaSeparated) ?
+                new NdjsonWriter<>(response.getOutputStream(), attributesCommaSeparated.split(","), new SimpleAttributeNameMapper(Collections.emptyMap())) :
+                new NdjsonWriter<>(response.getOutputStream());
         } catch (JsonPathException e) {
             throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
         }
+        response.setContentType(NdjsonWriter.CONTENT_TYPE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try {
+            dao.stream(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), writer);
+        } catch (IllegalArgumentException e) {
+            throw new ScimException("Invalid filter expression: [" + filter + "]", HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            logger.error("Export of groups failed after " + writer.getCount() + " groups", e);
+            //an error report can still replace buffered groups, but not groups already sent
+            if (!response.isCommitted()) {
+                response.resetBuffer();
+            }
+            throw e;
+        }
+        logger.debug("Exported " + writer.getCount() + " groups");
     }
 
     @RequestMapping(value = { "/Groups/External/list" }, method = RequestMethod.GET)
@@ -529,6 +596,14 @@ public class ScimGroupEndpoints {
     }
 
     @ExceptionHandler
+    public View handleException(Exception t, HttpServletRequest request, HttpServletResponse response) throws ScimException {
+        if (response.isCommitted()) {
+            //part of an export was sent, only an aborted response tells the client it is incomplete
+            throw t instanceof RuntimeException ? (RuntimeException) t : new IllegalStateException(t);
+        }
+        return handleException(t, request);
+    }
+
     public View handleException(Exception t, HttpServletRequest request) throws ScimException {
         ScimException e = new ScimException("Unexpected error", t, HttpStatus.INTERNAL_SERVER_ERROR);
         if (t instanceof ScimException) {
@@ -23,6 +23,8 @@ import org.cloudfoundry.identity.uaa.codestore.ExpiringCode;
 import org.cloudfoundry.identity.uaa.codestore.ExpiringCodeStore;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
+import org.cloudfoundry.identity.uaa.resources.NdjsonWriter;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.SearchResultsFactory;
@@ -61,6 +63,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -77,9 +80,12 @@ import org.springframework.web.servlet.View;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -349,6 +355,11 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
         }
     }
 
+    public SearchResults<?> findUsers(String attributesCommaSeparated, String filter, String sortBy, String sortOrder,
+                                      int startIndex, int count) {
+        return findUsers(attributesCommaSeparated, filter, sortBy, sortOrder, startIndex, count, null, true);
+    }
+
     @RequestMapping(value = "/Users", method = RequestMethod.GET)
     @ResponseBody
     public SearchResults<?> findUsers(
@@ -357,51 +368,110 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
                     @RequestParam(required = false, defaultValue = "created") String sortBy,
                     @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
                     @RequestParam(required = false, defaultValue = "1") int startIndex,
-                    @RequestParam(required = false, defaultValue = "100") int count) {
+                    @RequestParam(required = false, defaultValue = "100") int count,
+                    @RequestParam(required = false) String cursor,
+                    @RequestParam(required = false, defaultValue = "true") boolean includeTotal) {
 
-        if (startIndex < 1) {
+        if (startIndex < 1 || cursor != null) {
             startIndex = 1;
         }
 
         List<ScimUser> input = new ArrayList<ScimUser>();
-        List<ScimUser> result;
+        int totalResults;
+        String nextCursor = null;
         try {
-            result = dao.query(filter, sortBy, sortOrder.equals("ascending"));
-            for (ScimUser user : UaaPagingUtils.subList(result, startIndex, count)) {
-                if(attributesCommaSeparated == null || attributesCommaSeparated.matches("(?i)groups") || attributesCommaSeparated.isEmpty()) {
-                    syncGroups(user);
-                }
-                if(attributesCommaSeparated == null || attributesCommaSeparated.matches("(?i)approvals") || attributesCommaSeparated.isEmpty()) {
-                    syncApprovals(user);
-                }
-                input.add(user);
+            if (cursor != null) {
+                KeysetPage<ScimUser> page = dao.queryPage(filter, sortBy, sortOrder.equals("ascending"), cursor, count, includeTotal);
+                input.addAll(page.getResources());
+                totalResults = page.getTotalResults();
+                nextCursor = page.getNextCursor();
+            } else {
+                List<ScimUser> result = dao.query(filter, sortBy, sortOrder.equals("ascending"));
+                input.addAll(UaaPagingUtils.subList(result, startIndex, count));
+                totalResults = result.size();
+            }
+            if (isAttributeRequested(attributesCommaSeparated, "groups")) {
+                syncGroups(input);
+            }
+            if (isAttributeRequested(attributesCommaSeparated, "approvals")) {
+                syncApprovals(input);
             }
         } catch (IllegalArgumentException e) {
             String msg = "Invalid filter expression: [" + filter + "]";
             if (StringUtils.hasText(sortBy)) {
                 msg += " [" +sortBy+"]";
             }
+            if (StringUtils.hasText(cursor)) {
+                msg += " [" + cursor + "]";
+            }
             throw new ScimException(msg, HttpStatus.BAD_REQUEST);
         }
 
+        SearchResults<?> results;
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
             // Return all user data
-            return new SearchResults<ScimUser>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count, result.size());
+            results = new SearchResults<ScimUser>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count, totalResults);
+        } else {
+            String[] attributes = attributesCommaSeparated.split(",");
+            try {
+                results = SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, totalResults, attributes,
+                                                                     getAttributeNameMapper(), Arrays.asList(ScimCore.SCHEMAS));
+            } catch (JsonPathException e) {
+                throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
+            }
         }
+        results.setNextCursor(nextCursor);
+        return results;
+    }
 
-        Map<String, String> attributeMap = new HashMap<>();
-        attributeMap.put("^emails\\.", "emails[*].");
-        attributeMap.put("familyName", "name.familyName");
-        attributeMap.put("givenName", "name.givenName");
-        AttributeNameMapper mapper = new SimpleAttributeNameMapper(attributeMap);
-
-        String[] attributes = attributesCommaSeparated.split(",");
+    /**
+     * Writes every user matching the filter as one JSON object per line, reading
+     * them from a database cursor instead of in pages. Groups and approvals are not
+     * included; they would need a query per user while the cursor is open.
+     */
+    @RequestMapping(value = "/Users/export", method = RequestMethod.GET)
+    @Transactional(readOnly = true)
+    public void exportUsers(
+                    @RequestParam(value = "attributes", required = false) String attributesCommaSeparated,
+                    @RequestParam(required = false, defaultValue = "id pr") String filter,
+                    @RequestParam(required = false, defaultValue = "created") String sortBy,
+                    @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
+                    HttpServletResponse response) throws IOException {
+        NdjsonWriter<ScimUser> writer;
         try {
-            return SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, result.size(), attributes,
-                                                              mapper, Arrays.asList(ScimCore.SCHEMAS));
+            writer = StringUtils.hasLength(attributesCommaSeparated) ?
+                new NdjsonWriter<>(response.getOutputStream(), attributesCommaSeparated.split(","), getAttributeNameMapper()) :
+                new NdjsonWriter<>(response.getOutputStream());
         } catch (JsonPathException e) {
             throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
         }
+        response.setContentType(NdjsonWriter.CONTENT_TYPE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try {
+            dao.stream(filter, sortBy, sortOrder.equals("ascending"), writer);
+        } catch (IllegalArgumentException e) {
+            String msg = "Invalid filter expression: [" + filter + "]";
+            if (StringUtils.hasText(sortBy)) {
+                msg += " [" +sortBy+"]";
+            }
+            throw new ScimException(msg, HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            logger.error("Export of users failed after " + writer.getCount() + " users", e);
+            //an error report can still replace buffered users, but not users already sent
+            if (!response.isCommitted()) {
+                response.resetBuffer();
+            }
+            throw e;
+        }
+        logger.debug("Exported " + writer.getCount() + " users");
+    }
+
+    private static AttributeNameMapper getAttributeNameMapper() {
+        Map<String, String> attributeMap = new HashMap<>();
+        attributeMap.put("^emails\\.", "emails[*].");
+        attributeMap.put("familyName", "name.familyName");
+        attributeMap.put("givenName", "name.givenName");
+        return new SimpleAttributeNameMapper(attributeMap);
     }
 
     @RequestMapping(value = "/Users/{userId}/status", method = RequestMethod.PATCH)
@@ -418,13 +488,45 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
         return status;
     }
 
+    private static boolean isAttributeRequested(String attributesCommaSeparated, String attribute) {
+        if (!StringUtils.hasLength(attributesCommaSeparated)) {
+            return true;
+        }
+        for (String requested : attributesCommaSeparated.split(",")) {
+            requested = requested.trim();
+            if (requested.equalsIgnoreCase(attribute) || requested.toLowerCase().startsWith(attribute + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private ScimUser syncGroups(ScimUser user) {
         if (user == null) {
             return user;
         }
 
-        Set<ScimGroup> directGroups = membershipManager.getGroupsWithMember(user.getId(), false);
-        Set<ScimGroup> indirectGroups = membershipManager.getGroupsWithMember(user.getId(), true);
+        return setGroups(user,
+                         membershipManager.getGroupsWithMember(user.getId(), false),
+                         membershipManager.getGroupsWithMember(user.getId(), true));
+    }
+
+    private void syncGroups(List<ScimUser> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        List<String> userIds = getIds(users);
+        Map<String, Set<ScimGroup>> directGroups = membershipManager.getGroupsWithUsers(userIds, false);
+        Map<String, Set<ScimGroup>> indirectGroups = membershipManager.getGroupsWithUsers(userIds, true);
+        for (ScimUser user : users) {
+            setGroups(user,
+                      directGroups.getOrDefault(user.getId(), Collections.emptySet()),
+                      indirectGroups.getOrDefault(user.getId(), Collections.emptySet()));
+        }
+    }
+
+    private static ScimUser setGroups(ScimUser user, Set<ScimGroup> directGroups, Set<ScimGroup> allGroups) {
+        Set<ScimGroup> indirectGroups = new HashSet<>(allGroups);
         indirectGroups.removeAll(directGroups);
         Set<ScimUser.Group> groups = new HashSet<ScimUser.Group>();
         for (ScimGroup group : directGroups) {
@@ -442,8 +544,21 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
         if (user == null || approvalStore == null) {
             return user;
         }
-        Set<Approval> approvals = new HashSet<Approval>(
-            approvalStore.getApprovals(String.format(USER_APPROVALS_FILTER_TEMPLATE, user.getId())));
+        return setApprovals(user, approvalStore.getApprovals(String.format(USER_APPROVALS_FILTER_TEMPLATE, user.getId())));
+    }
+
+    private void syncApprovals(List<ScimUser> users) {
+        if (users.isEmpty() || approvalStore == null) {
+            return;
+        }
+        Map<String, List<Approval>> approvals = approvalStore.getApprovalsForUsers(getIds(users));
+        for (ScimUser user : users) {
+            setApprovals(user, approvals.getOrDefault(user.getId(), Collections.emptyList()));
+        }
+    }
+
+    private static ScimUser setApprovals(ScimUser user, List<Approval> userApprovals) {
+        Set<Approval> approvals = new HashSet<Approval>(userApprovals);
         Set<Approval> active = new HashSet<Approval>(approvals);
         for (Approval approval : approvals) {
             if (!approval.isCurrentlyActive()) {
@@ -454,7 +569,23 @@ public class ScimUserEndpoints implements InitializingBean, ApplicationEventPubl
         return user;
     }
 
+    private static List<String> getIds(List<ScimUser> users) {
+        List<String> result = new ArrayList<>(users.size());
+        for (ScimUser user : users) {
+            result.add(user.getId());
+        }
+        return result;
+    }
+
     @ExceptionHandler
+    public View handleException(Exception t, HttpServletRequest request, HttpServletResponse response) throws ScimException, InternalUserManagementDisabledException {
+        if (response.isCommitted()) {
+            //part of an export was sent, only an aborted response tells the client it is incomplete
+            throw t instanceof RuntimeException ? (RuntimeException) t : new IllegalStateException(t);
+        }
+        return handleException(t, request);
+    }
+
     public View handleException(Exception t, HttpServletRequest request) throws ScimException, InternalUserManagementDisabledException {
         if (t instanceof InternalUserManagementDisabledException) {
             throw (InternalUserManagementDisabledException)t;
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.scim.jdbc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts a closure row only if the table holds no row for the same member and
+ * group. Two concurrent inserts can still both find the row missing; the loser
+ * fails with a duplicate key, which these databases roll back per statement, so
+ * the rows are retried one by one.
+ */
+public class DefaultGroupMembershipClosureSqlAdapter implements GroupMembershipClosureSqlAdapter {
+
+    private static final Log logger = LogFactory.getLog(DefaultGroupMembershipClosureSqlAdapter.class);
+
+    public static final String INSERT_SQL = String.format(
+        "insert into %1$s (member_id, group_id, identity_zone_id) select ?, ?, ? from %1$s where member_id = ? and group_id = ? having count(*) = 0",
+        JdbcGroupMembershipClosure.CLOSURE_TABLE
+    );
+
+    @Override
+    public void insert(JdbcTemplate jdbcTemplate, List<Object[]> rows) {
+        List<Object[]> args = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            args.add(new Object[] {row[0], row[1], row[2], row[0], row[1]});
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, args);
+        } catch (DuplicateKeyException x) {
+            logger.debug("Closure rows added concurrently, inserting rows individually.");
+            for (Object[] arg : args) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, arg);
+                } catch (DuplicateKeyException exists) {
+                    logger.debug("Closure row already exists, member:" + arg[0] + " group:" + arg[1]);
+                }
+            }
+        }
+    }
+}
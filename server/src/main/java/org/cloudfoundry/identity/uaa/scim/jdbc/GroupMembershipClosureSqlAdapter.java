@@ -0,0 +1,31 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.scim.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * Inserts rows into the <code>group_membership_closure</code> table in the way
+ * the database supports best. Rows that already exist are skipped without an
+ * error, so that the surrounding transaction is not aborted when two membership
+ * changes add the same row concurrently.
+ */
+public interface GroupMembershipClosureSqlAdapter {
+
+    /**
+     * @param rows the member id, group id and identity zone id of each row
+     */
+    void insert(JdbcTemplate jdbcTemplate, List<Object[]> rows);
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.scim.jdbc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains the <code>group_membership_closure</code> table, which holds a row for
+ * every group a member belongs to directly or through nested groups.
+ * <p>
+ * The closure is kept up to date on every membership change, so that it can be
+ * switched on for reads at any time with {@link #setEnabled(boolean)}. Added
+ * memberships are merged in incrementally. Removed memberships recompute the
+ * closure of the affected members only, since another path may still lead to
+ * the same group. Rows that already exist, e.g. because another membership change
+ * added them concurrently, are skipped by the {@link GroupMembershipClosureSqlAdapter}
+ * of the database without failing the surrounding transaction.
+ */
+@ManagedResource
+public class JdbcGroupMembershipClosure {
+
+    private static final Log logger = LogFactory.getLog(JdbcGroupMembershipClosure.class);
+
+    public static final String CLOSURE_TABLE = "group_membership_closure";
+
+    public static final String GET_GROUP_IDS_SQL = String.format("select c.group_id from %s c, groups g where c.group_id = g.id and c.member_id = ? and g.identity_zone_id = ?", CLOSURE_TABLE);
+
+    public static final String GET_MEMBER_IDS_SQL = String.format("select member_id from %s where group_id = ?", CLOSURE_TABLE);
+
+    public static final String GET_DIRECT_GROUP_IDS_SQL = "select m.group_id from group_membership m, groups g where m.group_id = g.id and m.member_id = ? and g.identity_zone_id = ?";
+
+    public static final String GET_NESTED_GROUPS_SQL = "select m.member_id, m.group_id from group_membership m, groups g where m.group_id = g.id and m.member_type = 'GROUP' and g.identity_zone_id = ?";
+
+    public static final String GET_ZONE_MEMBER_IDS_SQL = "select distinct m.member_id from group_membership m, groups g where m.group_id = g.id and g.identity_zone_id = ?";
+
+    public static final String DELETE_BY_MEMBER_SQL = String.format("delete from %s where member_id = ?", CLOSURE_TABLE);
+
+    public static final String DELETE_BY_ZONE_SQL = String.format("delete from %s where identity_zone_id = ?", CLOSURE_TABLE);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private GroupMembershipClosureSqlAdapter sqlAdapter = new DefaultGroupMembershipClosureSqlAdapter();
+
+    private boolean enabled = false;
+
+    public JdbcGroupMembershipClosure(JdbcTemplate jdbcTemplate) {
+        Assert.notNull(jdbcTemplate);
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void setSqlAdapter(GroupMembershipClosureSqlAdapter sqlAdapter) {
+        this.sqlAdapter = sqlAdapter;
+    }
+
+    /**
+     * @return the ids of all groups the member belongs to, directly or through nested groups
+     */
+    public Set<String> getGroupIds(String memberId, String zoneId) {
+        return new HashSet<>(jdbcTemplate.queryForList(GET_GROUP_IDS_SQL, String.class, memberId, zoneId));
+    }
+
+    /**
+     * @return the member itself and everything nested inside it, i.e. the members whose
+     * closure changes when the memberships of the given member change
+     */
+    public Set<String> getAffectedMembers(String memberId) {
+        Set<String> result = new LinkedHashSet<>();
+        result.add(memberId);
+        result.addAll(jdbcTemplate.queryForList(GET_MEMBER_IDS_SQL, String.class, memberId));
+        return result;
+    }
+
+    /**
+     * Adds the groups reachable through a new membership of <code>memberId</code> in
+     * <code>groupId</code> to the closure of the member and of everything nested in it.
+     */
+    public void memberAdded(String groupId, String memberId, String zoneId) {
+        Set<String> ancestors = new LinkedHashSet<>();
+        ancestors.add(groupId);
+        ancestors.addAll(jdbcTemplate.queryForList(GET_GROUP_IDS_SQL, String.class, groupId, zoneId));
+        for (String descendant : getAffectedMembers(memberId)) {
+            Set<String> missing = new LinkedHashSet<>(ancestors);
+            missing.removeAll(jdbcTemplate.queryForList(GET_GROUP_IDS_SQL, String.class, descendant, zoneId));
+            insert(descendant, missing, zoneId);
+        }
+    }
+
+    /**
+     * Recomputes the closure of the given members from the <code>group_membership</code> table.
+     */
+    public void recompute(Collection<String> memberIds, String zoneId) {
+        if (memberIds.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> nestedGroups = getNestedGroups(zoneId);
+        for (String memberId : memberIds) {
+            Set<String> groupIds = new LinkedHashSet<>();
+            Deque<String> pending = new ArrayDeque<>(jdbcTemplate.queryForList(GET_DIRECT_GROUP_IDS_SQL, String.class, memberId, zoneId));
+            while (!pending.isEmpty()) {
+                String groupId = pending.poll();
+                if (groupIds.add(groupId)) {
+                    pending.addAll(nestedGroups.getOrDefault(groupId, Collections.emptyList()));
+                }
+            }
+            jdbcTemplate.update(DELETE_BY_MEMBER_SQL, memberId);
+            insert(memberId, groupIds, zoneId);
+        }
+    }
+
+    @ManagedOperation(description = "Recompute the nested group memberships of all members of an identity zone")
+    public void rebuild(String zoneId) {
+        logger.debug("Rebuilding group membership closure for zone:" + zoneId);
+        jdbcTemplate.update(DELETE_BY_ZONE_SQL, zoneId);
+        recompute(jdbcTemplate.queryForList(GET_ZONE_MEMBER_IDS_SQL, String.class, zoneId), zoneId);
+    }
+
+    public void rebuildAll() {
+        for (String zoneId : jdbcTemplate.queryForList("select id from identity_zone", String.class)) {
+            rebuild(zoneId);
+        }
+    }
+
+    public void deleteByIdentityZone(String zoneId) {
+        jdbcTemplate.update(DELETE_BY_ZONE_SQL, zoneId);
+    }
+
+    private Map<String, List<String>> getNestedGroups(String zoneId) {
+        Map<String, List<String>> result = new HashMap<>();
+        jdbcTemplate.query(GET_NESTED_GROUPS_SQL, rs -> {
+            result.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(rs.getString(2));
+        }, zoneId);
+        return result;
+    }
+
+    void insert(String memberId, Set<String> groupIds, String zoneId) {
+        if (groupIds.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(groupIds.size());
+        for (String groupId : groupIds) {
+            rows.add(new Object[] {memberId, groupId, zoneId});
+        }
+        sqlAdapter.insert(jdbcTemplate, rows);
+    }
+
+    /**
+     * @return true if nested group lookups should read the closure table instead of
+     * walking <code>group_membership</code>
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
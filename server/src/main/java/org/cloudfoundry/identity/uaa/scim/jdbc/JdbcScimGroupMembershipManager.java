@@ -16,15 +16,21 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.google.common.collect.Iterables;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.resources.jdbc.AbstractQueryable;
@@ -52,6 +58,7 @@ import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -73,6 +80,14 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
 
     public static final String GET_GROUPS_BY_MEMBER_SQL = String.format("select distinct(group_id) from %s where member_id=? and group_id in (select id from groups where identity_zone_id=?)", MEMBERSHIP_TABLE);
 
+    private static final String PREFIXED_GROUP_FIELDS = "g." + JdbcScimGroupProvisioning.GROUP_FIELDS.replace(",", ",g.");
+
+    public static final String GET_GROUPS_BY_MEMBERS_SQL = String.format("select %s,m.member_id from %s m, %s g where m.group_id = g.id and g.identity_zone_id = :zoneId and m.member_id in (:memberIds)", PREFIXED_GROUP_FIELDS, MEMBERSHIP_TABLE, JdbcScimGroupProvisioning.GROUP_TABLE);
+
+    public static final String GET_CLOSURE_GROUPS_BY_MEMBERS_SQL = String.format("select %s,c.member_id from %s c, %s g where c.group_id = g.id and g.identity_zone_id = :zoneId and c.member_id in (:memberIds)", PREFIXED_GROUP_FIELDS, JdbcGroupMembershipClosure.CLOSURE_TABLE, JdbcScimGroupProvisioning.GROUP_TABLE);
+
+    private static final int MAX_MEMBERS_PER_QUERY = 500;
+
     public static final String GET_MEMBERS_WITH_AUTHORITY_SQL = String.format("select %s from %s where group_id=? and lower(authorities) like ?", MEMBERSHIP_FIELDS,MEMBERSHIP_TABLE);
 
     public static final String GET_MEMBER_SQL = String.format("select %s from %s where member_id=? and group_id in (select id from groups where id=? and identity_zone_id=?)",MEMBERSHIP_FIELDS, MEMBERSHIP_TABLE);
@@ -89,6 +104,8 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
 
     private ScimGroupProvisioning groupProvisioning;
 
+    private JdbcGroupMembershipClosure membershipClosure;
+
     private Map<IdentityZone,Set<ScimGroup>> defaultUserGroups = new ConcurrentHashMap<>();
 
     //we do not yet support default user groups for other zones
@@ -122,6 +139,18 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         this.groupProvisioning = groupProvisioning;
     }
 
+    public JdbcGroupMembershipClosure getMembershipClosure() {
+        return membershipClosure;
+    }
+
+    /**
+     * @param membershipClosure the closure table to keep up to date on membership changes,
+     * and to read nested memberships from when it is enabled
+     */
+    public void setMembershipClosure(JdbcGroupMembershipClosure membershipClosure) {
+        this.membershipClosure = membershipClosure;
+    }
+
     public JdbcScimGroupMembershipManager(JdbcTemplate jdbcTemplate, JdbcPagingListFactory pagingListFactory) {
         super(jdbcTemplate,pagingListFactory,new ScimGroupMemberRowMapper());
         Assert.notNull(jdbcTemplate);
@@ -139,13 +168,18 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
     }
 
     @Override
+    @Transactional
     public int delete(String filter) {
         SearchQueryConverter.ProcessedFilter where = getQueryConverter().convert(filter, null, false);
         logger.debug("Filtering groups with SQL: " + where);
         try {
             String completeSql = "DELETE FROM "+getTableName() + " WHERE group_id IN (SELECT id FROM groups WHERE identity_zone_id='"+IdentityZoneHolder.get().getId()+"') AND  " + where.getSql();
             logger.debug("delete sql: " + completeSql + ", params: " + where.getParams());
-            return new NamedParameterJdbcTemplate(jdbcTemplate).update(completeSql, where.getParams());
+            int deleted = new NamedParameterJdbcTemplate(jdbcTemplate).update(completeSql, where.getParams());
+            if (membershipClosure != null && deleted > 0) {
+                membershipClosure.rebuild(IdentityZoneHolder.get().getId());
+            }
+            return deleted;
         } catch (DataAccessException e) {
             logger.debug("Filter '" + filter + "' generated invalid SQL", e);
             throw new IllegalArgumentException("Invalid delete filter: " + filter);
@@ -170,6 +204,7 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
     }
 
     @Override
+    @Transactional
     public ScimGroupMember addMember(final String groupId, final ScimGroupMember member)
                     throws ScimResourceNotFoundException, MemberAlreadyExistsException {
 
@@ -196,6 +231,9 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         } catch (DuplicateKeyException e) {
             throw new MemberAlreadyExistsException(member.getMemberId() + " is already part of the group: " + groupId);
         }
+        if (membershipClosure != null) {
+            membershipClosure.memberAdded(groupId, member.getMemberId(), IdentityZoneHolder.get().getId());
+        }
         return getMemberById(groupId, member.getMemberId());
     }
 
@@ -231,13 +269,98 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
     public Set<ScimGroup> getGroupsWithMember(final String memberId, boolean transitive)
                     throws ScimResourceNotFoundException {
         List<ScimGroup> results = new ArrayList<>();
-        getGroupsWithMember(results, memberId, transitive);
+        if (transitive && membershipClosure != null && membershipClosure.isEnabled()) {
+            getGroupsWithMemberFromClosure(results, memberId);
+        } else {
+            getGroupsWithMember(results, memberId, transitive);
+        }
         if (isUser(memberId)) {
             results.addAll(getDefaultUserGroups(IdentityZoneHolder.get()));
         }
         return new HashSet<>(results);
     }
 
+    @Override
+    public Map<String, Set<ScimGroup>> getGroupsWithUsers(Collection<String> userIds, boolean transitive) {
+        String zoneId = IdentityZoneHolder.get().getId();
+        Map<String, Set<ScimGroup>> result;
+        if (transitive && membershipClosure != null && membershipClosure.isEnabled()) {
+            result = getGroupsWithMembers(GET_CLOSURE_GROUPS_BY_MEMBERS_SQL, userIds, zoneId);
+        } else {
+            result = getGroupsWithMembers(GET_GROUPS_BY_MEMBERS_SQL, userIds, zoneId);
+            if (transitive) {
+                addNestedGroups(result, zoneId);
+            }
+        }
+        Set<ScimGroup> defaultGroups = getDefaultUserGroups(IdentityZoneHolder.get());
+        for (Set<ScimGroup> groups : result.values()) {
+            groups.addAll(defaultGroups);
+        }
+        return result;
+    }
+
+    /**
+     * Walks up the nested groups one level per query, for all members together.
+     */
+    private void addNestedGroups(Map<String, Set<ScimGroup>> groupsByMember, String zoneId) {
+        Map<String, Set<ScimGroup>> parents = new HashMap<>();
+        Set<String> pending = getGroupIds(groupsByMember.values());
+        while (!pending.isEmpty()) {
+            Map<String, Set<ScimGroup>> found = getGroupsWithMembers(GET_GROUPS_BY_MEMBERS_SQL, pending, zoneId);
+            parents.putAll(found);
+            pending = getGroupIds(found.values());
+            pending.removeAll(parents.keySet());
+        }
+        for (Set<ScimGroup> groups : groupsByMember.values()) {
+            Deque<ScimGroup> unvisited = new ArrayDeque<>(groups);
+            while (!unvisited.isEmpty()) {
+                for (ScimGroup parent : parents.get(unvisited.pop().getId())) {
+                    // the set guards against nested group cycles
+                    if (groups.add(parent)) {
+                        unvisited.push(parent);
+                    }
+                }
+            }
+        }
+    }
+
+    private Map<String, Set<ScimGroup>> getGroupsWithMembers(String sql, Collection<String> memberIds, String zoneId) {
+        Map<String, Set<ScimGroup>> result = new HashMap<>();
+        for (String memberId : memberIds) {
+            result.put(memberId, new HashSet<>());
+        }
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(jdbcTemplate);
+        RowMapper<ScimGroup> groupMapper = new JdbcScimGroupProvisioning.ScimGroupRowMapper();
+        for (List<String> ids : Iterables.partition(result.keySet(), MAX_MEMBERS_PER_QUERY)) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("zoneId", zoneId);
+            params.put("memberIds", ids);
+            template.query(sql, params, rs -> {
+                result.get(rs.getString(8)).add(groupMapper.mapRow(rs, 0));
+            });
+        }
+        return result;
+    }
+
+    private static Set<String> getGroupIds(Collection<Set<ScimGroup>> groups) {
+        Set<String> result = new HashSet<>();
+        for (Set<ScimGroup> memberGroups : groups) {
+            for (ScimGroup group : memberGroups) {
+                result.add(group.getId());
+            }
+        }
+        return result;
+    }
+
+    private void getGroupsWithMemberFromClosure(List<ScimGroup> results, final String memberId) {
+        for (String groupId : membershipClosure.getGroupIds(memberId, IdentityZoneHolder.get().getId())) {
+            try {
+                results.add(groupProvisioning.retrieve(groupId));
+            } catch (ScimResourceNotFoundException ex) {
+            }
+        }
+    }
+
     private void getGroupsWithMember(List<ScimGroup> results, final String memberId, boolean transitive) {
         if (results == null) {
             return;
@@ -327,6 +450,7 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
     }
 
     @Override
+    @Transactional
     public List<ScimGroupMember> updateOrAddMembers(String groupId, List<ScimGroupMember> members)
                     throws ScimResourceNotFoundException {
         List<ScimGroupMember> currentMembers = getMembers(groupId, null, false);
@@ -357,9 +481,11 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
     }
 
     @Override
+    @Transactional
     public ScimGroupMember removeMemberById(final String groupId, final String memberId)
                     throws ScimResourceNotFoundException, MemberNotFoundException {
         ScimGroupMember member = getMemberById(groupId, memberId);
+        Set<String> affectedMembers = getAffectedMembers(memberId);
         int deleted = jdbcTemplate.update(DELETE_MEMBER_SQL, new PreparedStatementSetter() {
             @Override
             public void setValues(PreparedStatement ps) throws SQLException {
@@ -372,13 +498,16 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         if (deleted != 1) {
             throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", 1, deleted);
         }
+        recomputeClosure(affectedMembers);
         return member;
     }
 
     @Override
+    @Transactional
     public List<ScimGroupMember> removeMembersByGroupId(final String groupId) throws ScimResourceNotFoundException {
         List<ScimGroupMember> members = getMembers(groupId, null, false);
         logger.debug("removing " + members + " members from group: " + groupId);
+        Set<String> affectedMembers = getAffectedMembers(groupId);
 
         int deleted = jdbcTemplate.update(DELETE_MEMBERS_IN_GROUP_SQL, new PreparedStatementSetter() {
             @Override
@@ -391,14 +520,17 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
             throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", members.size(),
                             deleted);
         }
+        recomputeClosure(affectedMembers);
 
         return members;
     }
 
     @Override
+    @Transactional
     public Set<ScimGroup> removeMembersByMemberId(final String memberId) throws ScimResourceNotFoundException {
         Set<ScimGroup> groups = getGroupsWithMember(memberId, false);
         logger.debug("removing " + memberId + " from groups: " + groups);
+        Set<String> affectedMembers = getAffectedMembers(memberId);
         int deleted = 0;
         String sql = DELETE_MEMBER_IN_GROUPS_SQL_GROUP;
         if (isUser(memberId)) {
@@ -417,6 +549,7 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
             throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", expectedDelete,
                             deleted);
         }
+        recomputeClosure(affectedMembers);
 
         return groups;
     }
@@ -426,6 +559,16 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         super.validateOrderBy(orderBy, MEMBERSHIP_FIELDS);
     }
 
+    private Set<String> getAffectedMembers(String memberId) {
+        return membershipClosure == null ? Collections.emptySet() : membershipClosure.getAffectedMembers(memberId);
+    }
+
+    private void recomputeClosure(Set<String> memberIds) {
+        if (membershipClosure != null) {
+            membershipClosure.recompute(memberIds, IdentityZoneHolder.get().getId());
+        }
+    }
+
     private boolean isUser(String uuid) {
         try {
             userProvisioning.retrieve(uuid);
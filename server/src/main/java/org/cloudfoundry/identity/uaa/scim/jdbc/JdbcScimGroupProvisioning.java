@@ -17,6 +17,7 @@ import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.AuditEventType;
 import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.jdbc.AbstractQueryable;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.scim.ScimGroup;
@@ -36,6 +37,7 @@ import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -45,8 +47,11 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static org.cloudfoundry.identity.uaa.zone.ZoneManagementScopes.getSystemScopes;
 
@@ -56,6 +61,7 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
     private JdbcScimGroupExternalMembershipManager externalGroupMappingManager;
     private JdbcTemplate jdbcTemplate;
     private JdbcScimGroupMembershipManager membershipManager;
+    private JdbcGroupMembershipClosure membershipClosure;
 
     private final Log logger = LogFactory.getLog(getClass());
 
@@ -81,6 +87,8 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
 
     public static final String ALL_GROUPS = String.format("select %s from %s", GROUP_FIELDS, GROUP_TABLE);
 
+    public static final String GET_GROUPS_BY_NAME_SQL = String.format("select %s from %s where LOWER(displayName)=LOWER(?) and identity_zone_id=?", GROUP_FIELDS, GROUP_TABLE);
+
     public static final String DELETE_GROUP_SQL = String.format("delete from %s where id=? and identity_zone_id=?", GROUP_TABLE);
 
     public static final String DELETE_GROUP_BY_ZONE = String.format("delete from %s where identity_zone_id=?", GROUP_TABLE);
@@ -88,6 +96,7 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
     public static final String DELETE_EXTERNAL_GROUP_BY_ZONE = String.format("delete from %s where group_id in (select id from %s where identity_zone_id = ?)", EXTERNAL_GROUP_TABLE, GROUP_TABLE);
 
     public static final String DELETE_ZONE_ADMIN_MEMBERSHIP_BY_ZONE = String.format("delete from %s where group_id in (select id from %s where identity_zone_id=? and displayName like ?)", GROUP_MEMBERSHIP_TABLE, GROUP_TABLE);
+    public static final String GET_ZONE_ADMIN_CLOSURE_MEMBERS_BY_ZONE = String.format("select member_id from %s where group_id in (select id from %s where identity_zone_id=? and displayName like ?)", JdbcGroupMembershipClosure.CLOSURE_TABLE, GROUP_TABLE);
     public static final String DELETE_ZONE_ADMIN_GROUPS_BY_ZONE = String.format("delete from %s where identity_zone_id=? and displayName like ?", GROUP_TABLE);
 
     public static final String DELETE_GROUP_MEMBERSHIP_BY_PROVIDER = String.format("delete from %s where group_id in (select id from %s where identity_zone_id = ?) and origin = ?", GROUP_MEMBERSHIP_TABLE, GROUP_TABLE);
@@ -108,6 +117,11 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
         setQueryConverter(new ScimSearchQueryConverter());
     }
 
+    public void setMembershipClosure(JdbcGroupMembershipClosure membershipClosure) {
+        this.membershipClosure = membershipClosure;
+        this.membershipManager.setMembershipClosure(membershipClosure);
+    }
+
     private void createAndIgnoreDuplicate(final String name, final String zoneId) {
         try {
             create(new ScimGroup(null, name, zoneId), zoneId);
@@ -151,12 +165,41 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
         return super.query(filter, sortBy, ascending);
     }
 
+    @Override
+    public KeysetPage<ScimGroup> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean includeTotal) {
+        //validate syntax
+        getQueryConverter().convert(filter, sortBy, ascending);
+
+        if (StringUtils.hasText(filter)) {
+            filter = "("+ filter+ ") and";
+        }
+        filter += " identity_zone_id eq \""+IdentityZoneHolder.get().getId()+"\"";
+        return super.queryPage(filter, sortBy, ascending, cursor, count, includeTotal);
+    }
+
+    @Override
+    public void stream(String filter, String sortBy, boolean ascending, Consumer<ScimGroup> callback) {
+        //validate syntax
+        getQueryConverter().convert(filter, sortBy, ascending);
+
+        if (StringUtils.hasText(filter)) {
+            filter = "("+ filter+ ") and";
+        }
+        filter += " identity_zone_id eq \""+IdentityZoneHolder.get().getId()+"\"";
+        super.stream(filter, sortBy, ascending, callback);
+    }
+
     @Override
     protected String getTableName() {
         return GROUP_TABLE;
     }
 
 
+    @Override
+    public List<ScimGroup> getByName(String displayName, String zoneId) {
+        return jdbcTemplate.query(GET_GROUPS_BY_NAME_SQL, rowMapper, displayName, zoneId);
+    }
+
     @Override
     public List<ScimGroup> retrieveAll() {
         return query("id pr", "created", true);
@@ -246,6 +289,7 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
     }
 
     @Override
+    @Transactional
     public ScimGroup delete(String id, int version) throws ScimResourceNotFoundException {
         ScimGroup group = retrieve(id);
         membershipManager.removeMembersByGroupId(id);
@@ -263,16 +307,28 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
     }
 
     public int deleteByIdentityZone(String zoneId) {
+        Set<String> affectedMembers = new HashSet<>();
+        if (membershipClosure != null) {
+            affectedMembers.addAll(jdbcTemplate.queryForList(GET_ZONE_ADMIN_CLOSURE_MEMBERS_BY_ZONE, String.class, IdentityZone.getUaa().getId(), "zones." + zoneId + ".%"));
+        }
         jdbcTemplate.update(DELETE_ZONE_ADMIN_MEMBERSHIP_BY_ZONE, IdentityZone.getUaa().getId(), "zones." + zoneId + ".%");
         jdbcTemplate.update(DELETE_ZONE_ADMIN_GROUPS_BY_ZONE, IdentityZone.getUaa().getId(), "zones." + zoneId + ".%");
         jdbcTemplate.update(DELETE_EXTERNAL_GROUP_BY_ZONE, zoneId);
         jdbcTemplate.update(DELETE_GROUP_MEMBERSHIP_BY_ZONE, zoneId);
+        if (membershipClosure != null) {
+            membershipClosure.recompute(affectedMembers, IdentityZone.getUaa().getId());
+            membershipClosure.deleteByIdentityZone(zoneId);
+        }
         return jdbcTemplate.update(DELETE_GROUP_BY_ZONE, zoneId);
     }
 
     public int deleteByOrigin(String origin, String zoneId) {
         jdbcTemplate.update(DELETE_EXTERNAL_GROUP_BY_PROVIDER, zoneId, origin);
-        return jdbcTemplate.update(DELETE_GROUP_MEMBERSHIP_BY_PROVIDER, zoneId, origin);
+        int deleted = jdbcTemplate.update(DELETE_GROUP_MEMBERSHIP_BY_PROVIDER, zoneId, origin);
+        if (membershipClosure != null && deleted > 0) {
+            membershipClosure.rebuild(zoneId);
+        }
+        return deleted;
     }
 
     protected void validateGroup(ScimGroup group) throws ScimResourceConstraintFailedException {
@@ -286,7 +342,7 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
         super.validateOrderBy(orderBy, GROUP_FIELDS);
     }
 
-    private static final class ScimGroupRowMapper implements RowMapper<ScimGroup> {
+    static final class ScimGroupRowMapper implements RowMapper<ScimGroup> {
 
         @Override
         public ScimGroup mapRow(ResultSet rs, int rowNum) throws SQLException {
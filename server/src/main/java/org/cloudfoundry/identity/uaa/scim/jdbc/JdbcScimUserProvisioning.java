@@ -16,6 +16,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.jdbc.AbstractQueryable;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
@@ -52,6 +53,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import static java.sql.Types.VARCHAR;
@@ -158,6 +160,30 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
         return super.query(filter, sortBy, ascending);
     }
 
+    @Override
+    public KeysetPage<ScimUser> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean includeTotal) {
+        //validate syntax
+        getQueryConverter().convert(filter, sortBy, ascending);
+
+        if (hasText(filter)) {
+            filter = "("+ filter+ ") and";
+        }
+        filter += " identity_zone_id eq \""+IdentityZoneHolder.get().getId()+"\"";
+        return super.queryPage(filter, sortBy, ascending, cursor, count, includeTotal);
+    }
+
+    @Override
+    public void stream(String filter, String sortBy, boolean ascending, Consumer<ScimUser> callback) {
+        //validate syntax
+        getQueryConverter().convert(filter, sortBy, ascending);
+
+        if (hasText(filter)) {
+            filter = "("+ filter+ ") and";
+        }
+        filter += " identity_zone_id eq \""+IdentityZoneHolder.get().getId()+"\"";
+        super.stream(filter, sortBy, ascending, callback);
+    }
+
     @Override
     public ScimUser create(final ScimUser user) {
         if (!hasText(user.getOrigin())) {
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.scim.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * Skips existing closure rows with <code>on conflict do nothing</code>. PostgreSQL
+ * aborts the whole transaction on a duplicate key, so the conflict must never
+ * reach the client.
+ */
+public class PostgresGroupMembershipClosureSqlAdapter implements GroupMembershipClosureSqlAdapter {
+
+    public static final String INSERT_SQL = String.format(
+        "insert into %s (member_id, group_id, identity_zone_id) values (?,?,?) on conflict do nothing",
+        JdbcGroupMembershipClosure.CLOSURE_TABLE
+    );
+
+    @Override
+    public void insert(JdbcTemplate jdbcTemplate, List<Object[]> rows) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+}
@@ -14,6 +14,7 @@
 package org.cloudfoundry.identity.uaa.scim.remote;
 
 import org.cloudfoundry.identity.uaa.account.PasswordChangeRequest;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.scim.exception.InvalidPasswordException;
@@ -26,6 +27,7 @@ import org.springframework.web.client.RestOperations;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Remote implementation of
@@ -81,6 +83,16 @@ public class RemoteScimUserProvisioning implements ScimUserProvisioning {
                         filter, sortBy);
     }
 
+    @Override
+    public KeysetPage<ScimUser> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean includeTotal) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void stream(String filter, String sortBy, boolean ascending, Consumer<ScimUser> callback) {
+        query(filter, sortBy, ascending).forEach(callback);
+    }
+
     @Override
     public ScimUser create(ScimUser user) {
         return restTemplate.postForObject(baseUrl + "/User", user, ScimUser.class);
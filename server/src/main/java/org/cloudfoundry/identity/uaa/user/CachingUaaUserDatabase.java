@@ -0,0 +1,349 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.user;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.account.event.PasswordChangeEvent;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.authentication.event.UserAuthenticationSuccessEvent;
+import org.cloudfoundry.identity.uaa.authentication.manager.AuthEvent;
+import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
+import org.cloudfoundry.identity.uaa.resources.jdbc.CachedZoneVersions;
+import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcCacheVersions;
+import org.cloudfoundry.identity.uaa.scim.event.GroupModifiedEvent;
+import org.cloudfoundry.identity.uaa.scim.event.UserModifiedEvent;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches users loaded by id, together with their authorities, so that token
+ * issuance, token validation and the session reset filter do not query the user
+ * and walk its group memberships on every request.
+ * <p>
+ * Entries are scoped to the identity zone. A changed user or password, and a
+ * login that updates the user or its external group memberships, evicts that
+ * user locally. A group change evicts the whole zone locally, since members
+ * inherit groups through nesting. Every change also increments the version of
+ * the zone in the <code>cache_invalidation_versions</code> table. Once every
+ * {@link #getRefreshCheckInSeconds()} the version is read back and entries loaded
+ * at an older version are discarded, so changes made on other nodes become visible.
+ * Lookups by name and email are not cached.
+ * <p>
+ * The password modification time probed by the session reset filter on every
+ * browser request is kept in a separate, smaller cache under the same rules, so
+ * it does not need a full user to be loaded. The caches are disabled by default.
+ */
+@ManagedResource
+public class CachingUaaUserDatabase implements UaaUserDatabase, ApplicationListener<ApplicationEvent> {
+
+    public static final String CACHE_NAME = "users";
+
+    private final UaaUserDatabase delegate;
+    private final CachedZoneVersions zoneVersions;
+
+    private boolean enabled = false;
+    private int maxEntries = 10000;
+    private int expiryInSeconds = 60;
+    private int maxPasswordEntries = 1000;
+
+    private volatile Cache<String, CachedEntry<UaaUser>> cache;
+    private volatile Cache<String, CachedEntry<Date>> passwordCache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingUaaUserDatabase(UaaUserDatabase delegate, JdbcCacheVersions cacheVersions) {
+        this.delegate = delegate;
+        this.zoneVersions = new CachedZoneVersions(cacheVersions, CACHE_NAME);
+        buildCache();
+    }
+
+    @Override
+    public UaaUser retrieveUserByName(String username, String origin) throws UsernameNotFoundException {
+        return delegate.retrieveUserByName(username, origin);
+    }
+
+    @Override
+    public UaaUser retrieveUserByEmail(String email, String origin) throws UsernameNotFoundException {
+        return delegate.retrieveUserByEmail(email, origin);
+    }
+
+    @Override
+    public UaaUser retrieveUserById(String id) throws UsernameNotFoundException {
+        if (!isEnabled()) {
+            return delegate.retrieveUserById(id);
+        }
+        String zoneId = IdentityZoneHolder.get().getId();
+        long version = getVersion(zoneId);
+        String key = getKey(zoneId, id);
+        CachedEntry<UaaUser> cached = getCurrent(cache, key, version);
+        if (cached != null) {
+            return cached.getValue();
+        }
+        UaaUser user = delegate.retrieveUserById(id);
+        cache.put(key, new CachedEntry<>(user, version));
+        return user;
+    }
+
+    @Override
+    public Date retrievePasswordLastModified(String id) throws UsernameNotFoundException {
+        if (!isEnabled()) {
+            return delegate.retrievePasswordLastModified(id);
+        }
+        String zoneId = IdentityZoneHolder.get().getId();
+        long version = getVersion(zoneId);
+        String key = getKey(zoneId, id);
+        CachedEntry<UaaUser> user = cache.getIfPresent(key);
+        if (user != null && user.getVersion() == version) {
+            hits.incrementAndGet();
+            return user.getValue().getPasswordLastModified();
+        }
+        CachedEntry<Date> cached = getCurrent(passwordCache, key, version);
+        if (cached != null) {
+            return cached.getValue();
+        }
+        Date passwordLastModified = delegate.retrievePasswordLastModified(id);
+        passwordCache.put(key, new CachedEntry<>(passwordLastModified, version));
+        return passwordLastModified;
+    }
+
+    private <T> CachedEntry<T> getCurrent(Cache<String, CachedEntry<T>> entries, String key, long version) {
+        CachedEntry<T> cached = entries.getIfPresent(key);
+        if (cached != null) {
+            if (cached.getVersion() == version) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            if (entries.asMap().remove(key, cached)) {
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private long getVersion(String zoneId) {
+        return zoneVersions.getVersion(zoneId);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (event instanceof UserModifiedEvent) {
+            evictUser(getZoneId(event), ((UserModifiedEvent) event).getUserId());
+        } else if (event instanceof PasswordChangeEvent) {
+            evictUser(getZoneId(event), ((PasswordChangeEvent) event).getUser().getId());
+        } else if (event instanceof UserAuthenticationSuccessEvent) {
+            UaaUser user = ((UserAuthenticationSuccessEvent) event).getUser();
+            if (!user.isVerified()) {
+                evictUser(user.getZoneId(), user.getId());
+            }
+        } else if (event instanceof AuthEvent) {
+            UaaUser user = ((AuthEvent) event).getUser();
+            if (user != null && user.getId() != null) {
+                evictUser(user.getZoneId() != null ? user.getZoneId() : IdentityZoneHolder.get().getId(), user.getId());
+            }
+        } else if (event instanceof GroupModifiedEvent) {
+            evictZone(getZoneId(event));
+        } else if (event instanceof EntityDeletedEvent) {
+            Object deleted = ((EntityDeletedEvent) event).getDeleted();
+            if (deleted instanceof IdentityZone) {
+                evictZone(((IdentityZone) deleted).getId());
+            } else if (deleted instanceof IdentityProvider) {
+                IdentityProvider provider = (IdentityProvider) deleted;
+                evictOrigin(provider.getIdentityZoneId(), provider.getOriginKey());
+            }
+        }
+    }
+
+    /**
+     * Removes the user on this node and marks the zone as changed for the other
+     * nodes.
+     */
+    public void evictUser(String zoneId, String userId) {
+        String key = getKey(zoneId, userId);
+        if (cache.asMap().remove(key) != null) {
+            evictions.incrementAndGet();
+        }
+        if (passwordCache.asMap().remove(key) != null) {
+            evictions.incrementAndGet();
+        }
+        zoneVersions.increment(zoneId);
+    }
+
+    /**
+     * Removes the users of a deleted identity provider on this node and marks the
+     * zone as changed for the other nodes.
+     */
+    private void evictOrigin(String zoneId, String origin) {
+        String prefix = getKey(zoneId, "");
+        cache.asMap().entrySet().removeIf(entry -> {
+            boolean matches = entry.getKey().startsWith(prefix) && origin.equals(entry.getValue().getValue().getOrigin());
+            if (matches) {
+                evictions.incrementAndGet();
+            }
+            return matches;
+        });
+        zoneVersions.increment(zoneId);
+    }
+
+    public void evictZone(String zoneId) {
+        String prefix = getKey(zoneId, "");
+        evictMatching(cache, prefix);
+        evictMatching(passwordCache, prefix);
+        zoneVersions.increment(zoneId);
+    }
+
+    private void evictMatching(Cache<String, ?> entries, String prefix) {
+        entries.asMap().keySet().removeIf(key -> {
+            boolean matches = key.startsWith(prefix);
+            if (matches) {
+                evictions.incrementAndGet();
+            }
+            return matches;
+        });
+    }
+
+    @ManagedOperation(description = "Remove all cached users on this node")
+    public void evictAll() {
+        evictions.addAndGet(cache.size() + passwordCache.size());
+        cache.invalidateAll();
+        passwordCache.invalidateAll();
+    }
+
+    private static String getZoneId(ApplicationEvent event) {
+        return ((AbstractUaaEvent) event).getIdentityZone().getId();
+    }
+
+    private static String getKey(String zoneId, String userId) {
+        return zoneId + ":" + userId;
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "User Cache Hits")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "User Cache Misses")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "User Cache Evictions")
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "User Cache Version Checks")
+    public long getVersionCheckCount() {
+        return zoneVersions.getVersionCheckCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "User Cache Size")
+    public long getSize() {
+        return cache.size();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "User Cache Password Modification Entries")
+    public long getPasswordEntryCount() {
+        return passwordCache.size();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        buildCache();
+    }
+
+    public int getMaxPasswordEntries() {
+        return maxPasswordEntries;
+    }
+
+    public void setMaxPasswordEntries(int maxPasswordEntries) {
+        this.maxPasswordEntries = maxPasswordEntries;
+        buildCache();
+    }
+
+    public int getExpiryInSeconds() {
+        return expiryInSeconds;
+    }
+
+    public void setExpiryInSeconds(int expiryInSeconds) {
+        this.expiryInSeconds = expiryInSeconds;
+        buildCache();
+    }
+
+    public int getRefreshCheckInSeconds() {
+        return zoneVersions.getRefreshCheckInSeconds();
+    }
+
+    public void setRefreshCheckInSeconds(int refreshCheckInSeconds) {
+        zoneVersions.setRefreshCheckInSeconds(refreshCheckInSeconds);
+    }
+
+    protected void buildCache() {
+        cache = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(expiryInSeconds, TimeUnit.SECONDS)
+            .build();
+        passwordCache = CacheBuilder.newBuilder()
+            .maximumSize(maxPasswordEntries)
+            .expireAfterWrite(expiryInSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+
+    private static class CachedEntry<T> {
+        private final T value;
+        private final long version;
+
+        CachedEntry(T value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        T getValue() {
+            return value;
+        }
+
+        long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.user;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads nested group memberships from the <code>group_membership_closure</code>
+ * table in a single indexed query.
+ *
+ * @see org.cloudfoundry.identity.uaa.scim.jdbc.JdbcGroupMembershipClosure
+ */
+public class ClosureGroupMembershipSqlAdapter implements GroupMembershipSqlAdapter {
+
+    private static final String AUTHORITIES_QUERY = "select g.displayName from groups g, group_membership_closure c where g.id = c.group_id and c.member_id = ? and g.identity_zone_id = ?";
+
+    @Override
+    public Set<String> getGroupNames(JdbcTemplate jdbcTemplate, String memberId, String zoneId) {
+        return new HashSet<>(jdbcTemplate.queryForList(AUTHORITIES_QUERY, String.class, memberId, zoneId));
+    }
+}
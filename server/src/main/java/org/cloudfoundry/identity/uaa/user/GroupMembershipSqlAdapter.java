@@ -0,0 +1,26 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.user;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Set;
+
+/**
+ * Resolves the display names of all groups a member belongs to, directly or
+ * through nested groups, in the way the database supports best.
+ */
+public interface GroupMembershipSqlAdapter {
+
+    Set<String> getGroupNames(JdbcTemplate jdbcTemplate, String memberId, String zoneId);
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.user;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expands nested groups with one query per group, for databases without
+ * recursive common table expressions.
+ */
+public class IterativeGroupMembershipSqlAdapter implements GroupMembershipSqlAdapter {
+
+    private static final String AUTHORITIES_QUERY = "select g.id,g.displayName from groups g, group_membership m where g.id = m.group_id and m.member_id = ? and g.identity_zone_id=?";
+
+    @Override
+    public Set<String> getGroupNames(JdbcTemplate jdbcTemplate, String memberId, String zoneId) {
+        Set<String> groupNames = new HashSet<>();
+        getGroupNames(jdbcTemplate, groupNames, memberId, zoneId);
+        return groupNames;
+    }
+
+    protected void getGroupNames(JdbcTemplate jdbcTemplate, Set<String> groupNames, String memberId, String zoneId) {
+        List<Map<String, Object>> results;
+        try {
+            results = jdbcTemplate.queryForList(AUTHORITIES_QUERY, memberId, zoneId);
+            for (Map<String,Object> record : results) {
+                String displayName = (String)record.get("displayName");
+                String groupId = (String)record.get("id");
+                if (!groupNames.contains(displayName)) {
+                    groupNames.add(displayName);
+                    getGroupNames(jdbcTemplate, groupNames, groupId, zoneId);
+                }
+            }
+        } catch (EmptyResultDataAccessException ex) {
+        }
+    }
+}
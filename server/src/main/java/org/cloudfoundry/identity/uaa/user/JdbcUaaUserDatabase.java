@@ -26,11 +26,12 @@ import org.springframework.util.StringUtils;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -53,8 +54,8 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
 
     public static final String DEFAULT_USER_BY_ID_QUERY = "select " + USER_FIELDS + "from users where id = ? and active=? and identity_zone_id=?";
 
+    public static final String PASSWORD_LAST_MODIFIED_BY_ID_QUERY = "select passwd_lastmodified from users where id = ? and active=? and identity_zone_id=?";
 
-    private String AUTHORITIES_QUERY = "select g.id,g.displayName from groups g, group_membership m where g.id = m.group_id and m.member_id = ? and g.identity_zone_id=?";
 
     private JdbcTemplate jdbcTemplate;
 
@@ -64,6 +65,8 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
 
     private boolean caseInsensitive = false;
 
+    private GroupMembershipSqlAdapter groupMembershipSqlAdapter = new IterativeGroupMembershipSqlAdapter();
+
 
     public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
@@ -77,6 +80,14 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
         this.caseInsensitive = caseInsensitive;
     }
 
+    public GroupMembershipSqlAdapter getGroupMembershipSqlAdapter() {
+        return groupMembershipSqlAdapter;
+    }
+
+    public void setGroupMembershipSqlAdapter(GroupMembershipSqlAdapter groupMembershipSqlAdapter) {
+        this.groupMembershipSqlAdapter = groupMembershipSqlAdapter;
+    }
+
     public RowMapper<UaaUser> getMapper() {
         return mapper;
     }
@@ -109,6 +120,15 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
         }
     }
 
+    @Override
+    public Date retrievePasswordLastModified(String id) throws UsernameNotFoundException {
+        List<Timestamp> results = jdbcTemplate.queryForList(PASSWORD_LAST_MODIFIED_BY_ID_QUERY, Timestamp.class, id, true, IdentityZoneHolder.get().getId());
+        if (results.isEmpty()) {
+            throw new UsernameNotFoundException(id);
+        }
+        return results.get(0);
+    }
+
     @Override
     public UaaUser retrieveUserByEmail(String email, String origin) throws UsernameNotFoundException {
         String sql = isCaseInsensitive() ? DEFAULT_CASE_INSENSITIVE_USER_BY_EMAIL_AND_ORIGIN_QUERY : DEFAULT_CASE_SENSITIVE_USER_BY_EMAIL_AND_ORIGIN_QUERY;
@@ -161,26 +181,9 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
         }
 
         private String getAuthorities(final String userId) {
-            Set<String> authorities = new HashSet<>();
-            getAuthorities(authorities, userId);
+            Set<String> authorities = new HashSet<>(groupMembershipSqlAdapter.getGroupNames(jdbcTemplate, userId, IdentityZoneHolder.get().getId()));
             authorities.addAll(defaultAuthorities);
-            return StringUtils.collectionToCommaDelimitedString(new HashSet<>(authorities));
-        }
-
-        protected void getAuthorities(Set<String> authorities, final String memberId) {
-            List<Map<String, Object>> results;
-            try {
-                results = jdbcTemplate.queryForList(AUTHORITIES_QUERY, memberId, IdentityZoneHolder.get().getId());
-                for (Map<String,Object> record : results) {
-                    String displayName = (String)record.get("displayName");
-                    String groupId = (String)record.get("id");
-                    if (!authorities.contains(displayName)) {
-                        authorities.add(displayName);
-                        getAuthorities(authorities, groupId);
-                    }
-                }
-            } catch (EmptyResultDataAccessException ex) {
-            }
+            return StringUtils.collectionToCommaDelimitedString(authorities);
         }
     }
 }
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.user;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Expands nested groups in a single <code>WITH RECURSIVE</code> query, supported
+ * by HSQLDB, PostgreSQL and MySQL 8. <code>UNION</code> discards groups that were
+ * already reached, so circular memberships terminate.
+ */
+public class RecursiveGroupMembershipSqlAdapter implements GroupMembershipSqlAdapter {
+
+    private static final String AUTHORITIES_QUERY =
+        "with recursive member_groups(id, displayName) as (" +
+            "select g.id, g.displayName from groups g, group_membership m where g.id = m.group_id and m.member_id = ? and g.identity_zone_id = ? " +
+            "union " +
+            "select g.id, g.displayName from groups g, group_membership m, member_groups mg where g.id = m.group_id and m.member_id = mg.id and g.identity_zone_id = ?" +
+        ") select displayName from member_groups";
+
+    @Override
+    public Set<String> getGroupNames(JdbcTemplate jdbcTemplate, String memberId, String zoneId) {
+        return new HashSet<>(jdbcTemplate.queryForList(AUTHORITIES_QUERY, String.class, memberId, zoneId, zoneId));
+    }
+}
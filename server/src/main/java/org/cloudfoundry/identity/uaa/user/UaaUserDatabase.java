@@ -14,6 +14,8 @@ package org.cloudfoundry.identity.uaa.user;
 
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
+import java.util.Date;
+
 /**
  * Interface for loading user data for the UAA.
  */
@@ -23,4 +25,12 @@ public interface UaaUserDatabase {
     UaaUser retrieveUserById(String id) throws UsernameNotFoundException;
 
     UaaUser retrieveUserByEmail(String email, String origin) throws UsernameNotFoundException;
+
+    /**
+     * @return the time the password of the user was last changed, or null if it
+     * was never changed, without loading the user's authorities
+     */
+    default Date retrievePasswordLastModified(String id) throws UsernameNotFoundException {
+        return retrieveUserById(id).getPasswordLastModified();
+    }
 }
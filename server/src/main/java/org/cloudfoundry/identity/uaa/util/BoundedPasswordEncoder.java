@@ -0,0 +1,215 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.authentication.PasswordCheckRejectedException;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+/**
+ * Runs a slow password encoder on a dedicated, fixed size thread pool, so that a
+ * burst of password or client secret checks cannot occupy all request threads and
+ * starve cheap endpoints.
+ * <p>
+ * At most {@link #getPoolSize()} checks run at a time and at most
+ * {@link #getMaxQueued()} more wait for a thread. A check beyond that is rejected
+ * right away with a {@link PasswordCheckRejectedException} (503), without hashing
+ * the password. A single identity zone may not have more than
+ * {@link #getMaxPendingPerZone()} checks running or waiting; checks beyond that are
+ * rejected with 429, leaving room in the pool for other zones.
+ */
+@ManagedResource
+public class BoundedPasswordEncoder implements PasswordEncoder, InitializingBean, DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(BoundedPasswordEncoder.class);
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final PasswordEncoder delegate;
+
+    private boolean enabled = false;
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+    private int maxQueued = 100;
+    private int maxPendingPerZone = 50;
+
+    private volatile ThreadPoolExecutor executor;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Map<String, AtomicInteger> pendingByZone = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong zoneRejected = new AtomicLong();
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "BoundedPasswordEncoder.Worker-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    private <T> T execute(Callable<T> check) {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            return call(check);
+        }
+        String zoneId = IdentityZoneHolder.get().getId();
+        AtomicInteger zonePending = pendingByZone.computeIfAbsent(zoneId, id -> new AtomicInteger());
+        if (pending.incrementAndGet() > poolSize + maxQueued) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new PasswordCheckRejectedException("Too many concurrent password checks.", SC_SERVICE_UNAVAILABLE);
+        }
+        if (zonePending.incrementAndGet() > maxPendingPerZone) {
+            zonePending.decrementAndGet();
+            pending.decrementAndGet();
+            zoneRejected.incrementAndGet();
+            logger.debug("Rejected password check for identity zone '" + zoneId + "', zone limit reached.");
+            throw new PasswordCheckRejectedException("Too many concurrent password checks for identity zone.", SC_TOO_MANY_REQUESTS);
+        }
+        try {
+            return current.submit(check).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PasswordCheckRejectedException("Interrupted while waiting for a password check.", SC_SERVICE_UNAVAILABLE);
+        } finally {
+            zonePending.decrementAndGet();
+            pending.decrementAndGet();
+        }
+    }
+
+    private static <T> T call(Callable<T> check) {
+        try {
+            return check.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Password Checks Pending")
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Password Checks Running")
+    public int getActiveCount() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getActiveCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Password Checks Completed")
+    public long getCompletedCount() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getCompletedTaskCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Password Checks Rejected Pool Full")
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Password Checks Rejected Zone Limit")
+    public long getZoneRejectedCount() {
+        return zoneRejected.get();
+    }
+
+    public PasswordEncoder getDelegate() {
+        return delegate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        if (poolSize > 0) {
+            this.poolSize = poolSize;
+        }
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public int getMaxPendingPerZone() {
+        return maxPendingPerZone;
+    }
+
+    public void setMaxPendingPerZone(int maxPendingPerZone) {
+        this.maxPendingPerZone = maxPendingPerZone;
+    }
+}
@@ -14,8 +14,11 @@ package org.cloudfoundry.identity.uaa.util;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import org.springframework.security.crypto.bcrypt.BCrypt;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import com.google.common.cache.RemovalCause;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
 import org.springframework.security.crypto.codec.Hex;
 import org.springframework.security.crypto.codec.Utf8;
 import org.springframework.security.crypto.keygen.BytesKeyGenerator;
@@ -27,21 +30,33 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.springframework.security.crypto.util.EncodingUtils.concatenate;
 
 /**
- * Wrapper around a slow password encoder that does a fast translation in memory only
- * This uses a hash to as a key to store a list of
+ * Wrapper around a slow password encoder that does a fast translation in memory only.
+ * Only passwords that do not match a cached hash are checked with the slow encoder.
+ * A salted, iterated SHA-256 digest of the raw password is used as the key to store
+ * the BCrypt hashes the password was successfully matched against.
+ * <p>
+ * Lookups do not lock: every thread digests with its own {@link MessageDigest}, and
+ * the hashes of a key are kept in an immutable list that is replaced when a hash is
+ * added. The cache is bounded by the total number of hashes stored
+ * ({@link #getMaxKeys()} times {@link #getMaxEncodedPasswords()}) and evicts the
+ * least recently used keys first; the oldest hash of a key is dropped when it holds
+ * {@link #getMaxEncodedPasswords()} hashes.
  */
+@ManagedResource
 public class CachingPasswordEncoder implements PasswordEncoder {
 
-    private final MessageDigest messageDigest;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final ThreadLocal<MessageDigest> messageDigest;
     private final byte[] secret;
     private final byte[] salt;
     private final BytesKeyGenerator saltGenerator;
@@ -52,6 +67,12 @@ public class CachingPasswordEncoder implements PasswordEncoder {
     private boolean enabled = true;
     private int expiryInSeconds = 300;
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicInteger concurrentChecks = new AtomicInteger();
+    private final AtomicInteger maxConcurrentChecks = new AtomicInteger();
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -60,12 +81,19 @@ public class CachingPasswordEncoder implements PasswordEncoder {
         this.enabled = enabled;
     }
 
-    private volatile Cache<CharSequence, Set<String>> cache = null;
+    private volatile Cache<CharSequence, List<String>> cache = null;
 
-    private BCryptPasswordEncoder passwordEncoder;
+    private PasswordEncoder passwordEncoder;
 
     public CachingPasswordEncoder() throws NoSuchAlgorithmException {
-        messageDigest = MessageDigest.getInstance("SHA-256");
+        MessageDigest.getInstance(DIGEST_ALGORITHM);
+        messageDigest = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(DIGEST_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
         this.secret = Utf8.encode(new RandomValueStringGenerator().generate());
         this.saltGenerator = KeyGenerators.secureRandom();
         this.salt = saltGenerator.generateKey();
@@ -77,7 +105,7 @@ public class CachingPasswordEncoder implements PasswordEncoder {
         return passwordEncoder;
     }
 
-    public void setPasswordEncoder(BCryptPasswordEncoder passwordEncoder) {
+    public void setPasswordEncoder(PasswordEncoder passwordEncoder) {
         this.passwordEncoder = passwordEncoder;
     }
 
@@ -97,45 +125,51 @@ public class CachingPasswordEncoder implements PasswordEncoder {
         }
     }
 
-    protected Set<String> getOrCreateHashList(String cacheKey) {
-        Set<String> result = cache.getIfPresent(cacheKey);
-        if (result==null) {
-            if (cache.size()>=getMaxKeys()) {
-                cache.invalidateAll();
-            }
-            cache.put(cacheKey, Collections.synchronizedSet(new LinkedHashSet<>()));
-        }
-        return cache.getIfPresent(cacheKey);
+    /**
+     * @return the BCrypt hashes cached for the key, never null
+     */
+    protected List<String> getHashes(String cacheKey) {
+        List<String> result = cache.getIfPresent(cacheKey);
+        return result != null ? result : Collections.emptyList();
     }
 
     private boolean internalMatches(String cacheKey, CharSequence rawPassword, String encodedPassword) {
-        Set<String> cacheValue = cache.getIfPresent(cacheKey);
-        boolean result = false;
-        List<String> searchList = (cacheValue!=null ? new ArrayList(cacheValue) : Collections.<String>emptyList());
-        for (String encoded : searchList) {
+        for (String encoded : getHashes(cacheKey)) {
             if (hashesEquals(encoded, encodedPassword)) {
-                result = true;
-                break;
+                hits.incrementAndGet();
+                return true;
             }
         }
-        if (!result) {
-            String encoded = BCrypt.hashpw(rawPassword.toString(), encodedPassword);
-            if (hashesEquals(encoded, encodedPassword)) {
-                result = true;
-                cacheValue = getOrCreateHashList(cacheKey);
-                if (cacheValue!=null) {
-                    //this list should never grow very long.
-                    //Only if you store multiple versions of the same password more than once
-                    if (cacheValue.size() >= getMaxEncodedPasswords()) {
-                        cacheValue.clear();
-                    }
-                    cacheValue.add(encoded);
-                }
-            }
+        misses.incrementAndGet();
+        if (delegateMatches(rawPassword, encodedPassword)) {
+            cache.asMap().merge(cacheKey, Collections.singletonList(encodedPassword), this::addHash);
+            return true;
         }
-        return result;
+        return false;
     }
 
+    private boolean delegateMatches(CharSequence rawPassword, String encodedPassword) {
+        int concurrent = concurrentChecks.incrementAndGet();
+        maxConcurrentChecks.accumulateAndGet(concurrent, Math::max);
+        try {
+            return getPasswordEncoder().matches(rawPassword, encodedPassword);
+        } finally {
+            concurrentChecks.decrementAndGet();
+        }
+    }
+
+    private List<String> addHash(List<String> existing, List<String> added) {
+        String encoded = added.get(0);
+        if (existing.contains(encoded)) {
+            return existing;
+        }
+        //this list should never grow very long.
+        //Only if you store multiple versions of the same password more than once
+        int keep = Math.min(existing.size(), getMaxEncodedPasswords() - 1);
+        List<String> result = new ArrayList<>(existing.subList(existing.size() - keep, existing.size()));
+        result.add(encoded);
+        return Collections.unmodifiableList(result);
+    }
 
     protected String cacheEncode(CharSequence rawPassword) {
         byte[] digest = digest(rawPassword);
@@ -148,12 +182,11 @@ public class CachingPasswordEncoder implements PasswordEncoder {
     }
 
     private byte[] digest(byte[] value) {
-        synchronized (messageDigest) {
-            for (int i = 0; i < iterations; i++) {
-                value = messageDigest.digest(value);
-            }
-            return value;
+        MessageDigest digest = messageDigest.get();
+        for (int i = 0; i < iterations; i++) {
+            value = digest.digest(value);
         }
+        return value;
     }
 
     private boolean hashesEquals(String a, String b) {
@@ -171,6 +204,36 @@ public class CachingPasswordEncoder implements PasswordEncoder {
         return ret == 0;
     }
 
+    @ManagedOperation(description = "Remove all cached password hashes")
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Password Cache Hits")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Password Cache Misses")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Password Cache Size Evictions")
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Password Checks In Progress")
+    public int getConcurrentCheckCount() {
+        return concurrentChecks.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Password Checks In Progress Peak")
+    public int getMaxConcurrentCheckCount() {
+        return maxConcurrentChecks.get();
+    }
+
     public int getMaxKeys() {
         return maxKeys;
     }
@@ -189,11 +252,12 @@ public class CachingPasswordEncoder implements PasswordEncoder {
         buildCache();
     }
 
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Password Cache Keys")
     public long getNumberOfKeys() {
         return cache.size();
     }
 
-    public ConcurrentMap<CharSequence, Set<String>> asMap() {
+    public ConcurrentMap<CharSequence, List<String>> asMap() {
         return cache.asMap();
     }
 
@@ -207,7 +271,17 @@ public class CachingPasswordEncoder implements PasswordEncoder {
     }
 
     protected void buildCache() {
+        //reads never lock; a single segment keeps the eviction order least recently
+        //used across the whole cache, and writes only follow a BCrypt check
         cache = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight((long) maxKeys * maxEncodedPasswords)
+            .<CharSequence, List<String>>weigher((key, hashes) -> hashes.size())
+            .removalListener(notification -> {
+                if (notification.getCause() == RemovalCause.SIZE) {
+                    evictions.incrementAndGet();
+                }
+            })
             .expireAfterWrite(expiryInSeconds, TimeUnit.SECONDS)
             .build();
     }
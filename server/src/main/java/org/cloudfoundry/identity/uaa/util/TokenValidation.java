@@ -66,6 +66,8 @@ public class TokenValidation {
     private final String token;
     private final boolean decoded; // this is used to avoid checking claims on tokens that had errors when decoding
     private final List<RuntimeException> validationErrors = new ArrayList<>();
+    private ClientDetails clientDetails; // the client loaded while checking the token, reused by callers
+    private UaaUser user; // the user loaded while checking the token, reused by callers
 
     public static TokenValidation validate(String tokenJwtValue) {
         return new TokenValidation(tokenJwtValue);
@@ -122,6 +124,8 @@ public class TokenValidation {
         this.token = source.token;
         this.decoded = source.decoded;
         this.scopes = source.scopes;
+        this.clientDetails = source.clientDetails;
+        this.user = source.user;
     }
 
 
@@ -224,6 +228,7 @@ public class TokenValidation {
                 // Unlikely to occur, but since this is dependent on the implementation of an interface...
                 addError("Found no data for user ID: " + userId);
             } else {
+                this.user = user;
                 List<? extends GrantedAuthority> authorities = user.getAuthorities();
                 if (authorities == null) {
                     addError("Invalid token (all scopes have been revoked)");
@@ -293,6 +298,7 @@ public class TokenValidation {
 
         try {
             ClientDetails client = clientDetailsService.loadClientByClientId(clientId);
+            this.clientDetails = client;
 
             Collection<String> clientScopes;
             if (null == claims.get(USER_ID)) {
@@ -469,4 +475,18 @@ public class TokenValidation {
     public Map<String, Object> getClaims() {
         return claims;
     }
+
+    /**
+     * @return the client that was loaded by {@link #checkClient}, or null if the client has not been checked
+     */
+    public ClientDetails getClientDetails() {
+        return clientDetails;
+    }
+
+    /**
+     * @return the user that was loaded by {@link #checkUser}, or null if the user has not been checked
+     */
+    public UaaUser getUser() {
+        return user;
+    }
 }
@@ -14,8 +14,8 @@
 
 package org.cloudfoundry.identity.uaa.util;
 
-import org.apache.commons.codec.binary.Base64;
 import org.cloudfoundry.identity.uaa.oauth.client.ClientConstants;
+import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
 import org.cloudfoundry.identity.uaa.user.UaaUser;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.springframework.security.jwt.crypto.sign.Signer;
@@ -28,7 +28,6 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -137,37 +136,32 @@ public final class UaaTokenUtils {
     }
 
     public static String getRevocableTokenSignature(ClientDetails client, String clientSecret, UaaUser user) {
-        String[] salts = new String[] {
-            client.getClientId(),
-            clientSecret,
-            (String)client.getAdditionalInformation().get(ClientConstants.TOKEN_SALT),
-            user == null ? null : user.getId(),
-            user == null ? null : user.getPassword(),
-            user == null ? null : user.getSalt(),
-            user == null ? null : user.getEmail(),
-            user == null ? null : user.getUsername(),
-        };
-        List<String> saltlist = new LinkedList<>();
-        for (String s : salts) {
-            if (s!=null) {
-                saltlist.add(s);
-            }
+        String result = appendRevocationHash("", client.getClientId());
+        result = appendRevocationHash(result, clientSecret);
+        result = appendRevocationHash(result, (String)client.getAdditionalInformation().get(ClientConstants.TOKEN_SALT));
+        if (user != null) {
+            result = appendRevocationHash(result, user.getId());
+            result = appendRevocationHash(result, user.getPassword());
+            result = appendRevocationHash(result, user.getSalt());
+            result = appendRevocationHash(result, user.getEmail());
+            result = appendRevocationHash(result, user.getUsername());
         }
-        return getRevocationHash(saltlist);
+        return result;
     }
 
-    public static String constructToken(Map<String, Object> header, Map<String, Object> claims, Signer signer) {
-        byte[] headerJson = header == null ? new byte[0] : JsonUtils.writeValueAsBytes(header);
-        byte[] claimsJson = claims == null ? new byte[0] : JsonUtils.writeValueAsBytes(claims);
-
-        String headerBase64 = Base64.encodeBase64URLSafeString(headerJson);
-        String claimsBase64 = Base64.encodeBase64URLSafeString(claimsJson);
-        String headerAndClaims = headerBase64 + "." + claimsBase64;
-        byte[] signature = signer.sign(headerAndClaims.getBytes());
-
-        String signatureBase64 = Base64.encodeBase64URLSafeString(signature);
+    /**
+     * Performs one step of {@link #getRevocationHash(List)}, null salts are skipped
+     */
+    private static String appendRevocationHash(String result, String salt) {
+        if (salt == null) {
+            return result;
+        }
+        byte[] hashable = (result + "###" + salt).getBytes();
+        return Integer.toHexString(murmurhash3x8632(hashable, 0, hashable.length, 0xF0F0));
+    }
 
-        return headerAndClaims + "." + signatureBase64;
+    public static String constructToken(Map<String, Object> header, Map<String, Object> claims, Signer signer) {
+        return JwtHelper.encode(header, claims, signer);
     }
 
     public static boolean isJwtToken(String token) {
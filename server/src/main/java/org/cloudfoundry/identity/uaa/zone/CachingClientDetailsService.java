@@ -0,0 +1,314 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.zone;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.resources.jdbc.CachedZoneVersions;
+import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcCacheVersions;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.security.oauth2.common.exceptions.InvalidClientException;
+import org.springframework.security.oauth2.provider.ClientAlreadyExistsException;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches clients loaded by id, so that client authentication, token issuance and
+ * token validation do not query the client and parse its additional information on
+ * every request.
+ * <p>
+ * Entries are scoped to the identity zone and evicted locally when a client or its
+ * secret is changed through this service. Each local change also increments the
+ * version of the zone in the <code>cache_invalidation_versions</code> table; once
+ * every {@link #getRefreshCheckInSeconds()} the version is read back and entries
+ * loaded at an older version are discarded, so changes made on other nodes become
+ * visible. The cache is disabled by default.
+ * <p>
+ * Independently of the cache, a client is loaded at most once per HTTP request.
+ * Callers always receive their own copy, as some of them modify the client they
+ * loaded before saving it.
+ */
+@ManagedResource
+public class CachingClientDetailsService implements ClientServicesExtension, ApplicationListener<AbstractUaaEvent> {
+
+    public static final String CACHE_NAME = "clients";
+
+    private static final String REQUEST_ATTRIBUTE = CachingClientDetailsService.class.getName() + ".CLIENTS";
+
+    private final ClientServicesExtension delegate;
+    private final CachedZoneVersions zoneVersions;
+
+    private boolean enabled = false;
+    private int maxEntries = 10000;
+    private int expiryInSeconds = 60;
+
+    private volatile Cache<String, CachedEntry> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingClientDetailsService(ClientServicesExtension delegate, JdbcCacheVersions cacheVersions) {
+        this.delegate = delegate;
+        this.zoneVersions = new CachedZoneVersions(cacheVersions, CACHE_NAME);
+        buildCache();
+    }
+
+    @Override
+    public ClientDetails loadClientByClientId(String clientId) throws InvalidClientException {
+        String zoneId = IdentityZoneHolder.get().getId();
+        String key = getKey(zoneId, clientId);
+        Map<String, ClientDetails> requestClients = getRequestClients();
+        ClientDetails client = requestClients == null ? null : requestClients.get(key);
+        if (client == null) {
+            client = isEnabled() ? loadCached(zoneId, key, clientId) : delegate.loadClientByClientId(clientId);
+            if (requestClients != null) {
+                requestClients.put(key, client);
+            }
+        }
+        return copy(client);
+    }
+
+    private ClientDetails loadCached(String zoneId, String key, String clientId) {
+        long version = zoneVersions.getVersion(zoneId);
+        CachedEntry cached = cache.getIfPresent(key);
+        if (cached != null) {
+            if (cached.getVersion() == version) {
+                hits.incrementAndGet();
+                return cached.getValue();
+            }
+            if (cache.asMap().remove(key, cached)) {
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        ClientDetails client = delegate.loadClientByClientId(clientId);
+        cache.put(key, new CachedEntry(client, version));
+        return client;
+    }
+
+    @Override
+    public void addClientDetails(ClientDetails clientDetails) throws ClientAlreadyExistsException {
+        delegate.addClientDetails(clientDetails);
+        evictClient(clientDetails.getClientId());
+    }
+
+    @Override
+    public void updateClientDetails(ClientDetails clientDetails) throws NoSuchClientException {
+        delegate.updateClientDetails(clientDetails);
+        evictClient(clientDetails.getClientId());
+    }
+
+    @Override
+    public void updateClientSecret(String clientId, String secret) throws NoSuchClientException {
+        delegate.updateClientSecret(clientId, secret);
+        evictClient(clientId);
+    }
+
+    @Override
+    public void removeClientDetails(String clientId) throws NoSuchClientException {
+        delegate.removeClientDetails(clientId);
+        evictClient(clientId);
+    }
+
+    @Override
+    public void addClientSecret(String clientId, String newSecret) throws NoSuchClientException {
+        delegate.addClientSecret(clientId, newSecret);
+        evictClient(clientId);
+    }
+
+    @Override
+    public void deleteClientSecret(String clientId) throws NoSuchClientException {
+        delegate.deleteClientSecret(clientId);
+        evictClient(clientId);
+    }
+
+    @Override
+    public List<ClientDetails> listClientDetails() {
+        return delegate.listClientDetails();
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof EntityDeletedEvent && ((EntityDeletedEvent) event).getDeleted() instanceof IdentityZone) {
+            evictZone(((IdentityZone) ((EntityDeletedEvent) event).getDeleted()).getId());
+        }
+    }
+
+    private void evictClient(String clientId) {
+        String zoneId = IdentityZoneHolder.get().getId();
+        String key = getKey(zoneId, clientId);
+        Map<String, ClientDetails> requestClients = getRequestClients();
+        if (requestClients != null) {
+            requestClients.remove(key);
+        }
+        if (cache.asMap().remove(key) != null) {
+            evictions.incrementAndGet();
+        }
+        if (isEnabled()) {
+            zoneVersions.increment(zoneId);
+        }
+    }
+
+    public void evictZone(String zoneId) {
+        String prefix = getKey(zoneId, "");
+        cache.asMap().keySet().removeIf(key -> {
+            boolean matches = key.startsWith(prefix);
+            if (matches) {
+                evictions.incrementAndGet();
+            }
+            return matches;
+        });
+        if (isEnabled()) {
+            zoneVersions.increment(zoneId);
+        }
+    }
+
+    @ManagedOperation(description = "Remove all cached clients on this node")
+    public void evictAll() {
+        evictions.addAndGet(cache.size());
+        cache.invalidateAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ClientDetails> getRequestClients() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Map<String, ClientDetails> clients = (Map<String, ClientDetails>) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (clients == null) {
+            clients = new HashMap<>();
+            attributes.setAttribute(REQUEST_ATTRIBUTE, clients, RequestAttributes.SCOPE_REQUEST);
+        }
+        return clients;
+    }
+
+    private static ClientDetails copy(ClientDetails client) {
+        BaseClientDetails result = new BaseClientDetails(client);
+        if (client.getAdditionalInformation() != null) {
+            result.setAdditionalInformation(client.getAdditionalInformation());
+        }
+        if (client.getAutoApproveScopes() != null) {
+            result.setAutoApproveScopes(client.getAutoApproveScopes());
+        }
+        return result;
+    }
+
+    private static String getKey(String zoneId, String clientId) {
+        return zoneId + ":" + clientId;
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Client Cache Hits")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Client Cache Misses")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Client Cache Evictions")
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Client Cache Version Checks")
+    public long getVersionCheckCount() {
+        return zoneVersions.getVersionCheckCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Client Cache Size")
+    public long getSize() {
+        return cache.size();
+    }
+
+    public ClientServicesExtension getDelegate() {
+        return delegate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        buildCache();
+    }
+
+    public int getExpiryInSeconds() {
+        return expiryInSeconds;
+    }
+
+    public void setExpiryInSeconds(int expiryInSeconds) {
+        this.expiryInSeconds = expiryInSeconds;
+        buildCache();
+    }
+
+    public int getRefreshCheckInSeconds() {
+        return zoneVersions.getRefreshCheckInSeconds();
+    }
+
+    public void setRefreshCheckInSeconds(int refreshCheckInSeconds) {
+        zoneVersions.setRefreshCheckInSeconds(refreshCheckInSeconds);
+    }
+
+    protected void buildCache() {
+        cache = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(expiryInSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+
+    private static class CachedEntry {
+        private final ClientDetails value;
+        private final long version;
+
+        CachedEntry(ClientDetails value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        ClientDetails getValue() {
+            return value;
+        }
+
+        long getVersion() {
+            return version;
+        }
+    }
+}
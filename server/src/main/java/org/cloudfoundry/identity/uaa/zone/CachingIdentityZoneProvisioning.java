@@ -0,0 +1,214 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.zone;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches identity zones by subdomain for the zone resolving filters, so that
+ * resolving the zone of a request does not query and parse the zone
+ * configuration every time.
+ * <p>
+ * Entries are evicted locally when a zone is created, updated or deleted. Changes
+ * made by other nodes are detected by comparing the cached zone version to the
+ * version in the database once every {@link #getRefreshCheckInSeconds()}; the full
+ * zone is only reloaded when the version has changed.
+ */
+@ManagedResource
+public class CachingIdentityZoneProvisioning implements IdentityZoneProvisioning, ApplicationListener<AbstractUaaEvent> {
+
+    private static final Log logger = LogFactory.getLog(CachingIdentityZoneProvisioning.class);
+
+    private final JdbcIdentityZoneProvisioning delegate;
+
+    private int maxZones = 1000;
+    private int expiryInSeconds = 600;
+    private int refreshCheckInSeconds = 10;
+
+    private volatile Cache<String, CachedZone> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong versionChecks = new AtomicLong();
+
+    public CachingIdentityZoneProvisioning(JdbcIdentityZoneProvisioning delegate) {
+        this.delegate = delegate;
+        buildCache();
+    }
+
+    @Override
+    public IdentityZone create(IdentityZone identityZone) {
+        IdentityZone result = delegate.create(identityZone);
+        evict(result.getId());
+        return result;
+    }
+
+    @Override
+    public IdentityZone update(IdentityZone identityZone) {
+        IdentityZone result = delegate.update(identityZone);
+        evict(result.getId());
+        return result;
+    }
+
+    @Override
+    public IdentityZone retrieve(String id) {
+        return delegate.retrieve(id);
+    }
+
+    @Override
+    public List<IdentityZone> retrieveAll() {
+        return delegate.retrieveAll();
+    }
+
+    @Override
+    public IdentityZone retrieveBySubdomain(String subdomain) {
+        if (subdomain==null) {
+            throw new EmptyResultDataAccessException("Subdomain cannot be null", 1);
+        }
+        String key = subdomain.toLowerCase();
+        CachedZone cached = cache.getIfPresent(key);
+        if (cached!=null && isCurrent(key, cached)) {
+            hits.incrementAndGet();
+            return cached.getZone();
+        }
+        misses.incrementAndGet();
+        IdentityZone zone = delegate.retrieveBySubdomain(key);
+        cache.put(key, new CachedZone(zone, System.currentTimeMillis()));
+        return zone;
+    }
+
+    private boolean isCurrent(String key, CachedZone cached) {
+        long now = System.currentTimeMillis();
+        if (now - cached.getCheckedAt() < TimeUnit.SECONDS.toMillis(refreshCheckInSeconds)) {
+            return true;
+        }
+        versionChecks.incrementAndGet();
+        Integer version = delegate.retrieveVersion(cached.getZone().getId());
+        if (version!=null && version==cached.getZone().getVersion()) {
+            cached.setCheckedAt(now);
+            return true;
+        }
+        logger.debug("Identity zone for subdomain '"+key+"' changed, reloading.");
+        cache.invalidate(key);
+        return false;
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof IdentityZoneModifiedEvent) {
+            evict(((IdentityZone) event.getSource()).getId());
+        } else if (event instanceof EntityDeletedEvent && ((EntityDeletedEvent) event).getDeleted() instanceof IdentityZone) {
+            evict(((IdentityZone) ((EntityDeletedEvent) event).getDeleted()).getId());
+        }
+    }
+
+    public void evict(String zoneId) {
+        cache.asMap().values().removeIf(cached -> cached.getZone().getId().equals(zoneId));
+    }
+
+    @ManagedOperation(description = "Remove all cached identity zones")
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Identity Zone Cache Hits")
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Identity Zone Cache Misses")
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Identity Zone Cache Version Checks")
+    public long getVersionCheckCount() {
+        return versionChecks.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Identity Zone Cache Size")
+    public long getSize() {
+        return cache.size();
+    }
+
+    public int getMaxZones() {
+        return maxZones;
+    }
+
+    public void setMaxZones(int maxZones) {
+        this.maxZones = maxZones;
+        buildCache();
+    }
+
+    public int getExpiryInSeconds() {
+        return expiryInSeconds;
+    }
+
+    public void setExpiryInSeconds(int expiryInSeconds) {
+        this.expiryInSeconds = expiryInSeconds;
+        buildCache();
+    }
+
+    public int getRefreshCheckInSeconds() {
+        return refreshCheckInSeconds;
+    }
+
+    public void setRefreshCheckInSeconds(int refreshCheckInSeconds) {
+        this.refreshCheckInSeconds = refreshCheckInSeconds;
+    }
+
+    protected void buildCache() {
+        cache = CacheBuilder.newBuilder()
+            .maximumSize(maxZones)
+            .expireAfterWrite(expiryInSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+
+    private static class CachedZone {
+        private final IdentityZone zone;
+        private volatile long checkedAt;
+
+        CachedZone(IdentityZone zone, long checkedAt) {
+            this.zone = zone;
+            this.checkedAt = checkedAt;
+        }
+
+        IdentityZone getZone() {
+            return zone;
+        }
+
+        long getCheckedAt() {
+            return checkedAt;
+        }
+
+        void setCheckedAt(long checkedAt) {
+            this.checkedAt = checkedAt;
+        }
+    }
+}
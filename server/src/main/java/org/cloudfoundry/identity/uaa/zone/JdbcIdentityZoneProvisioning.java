@@ -49,6 +49,8 @@ public class JdbcIdentityZoneProvisioning implements IdentityZoneProvisioning, S
 
     public static final String IDENTITY_ZONE_BY_SUBDOMAIN_QUERY = "select " + ID_ZONE_FIELDS + " from identity_zone " + "where subdomain=?";
 
+    public static final String IDENTITY_ZONE_VERSION_BY_ID_QUERY = "select version from identity_zone where id=?";
+
     public static final Log logger = LogFactory.getLog(JdbcIdentityZoneProvisioning.class);
 
     protected final JdbcTemplate jdbcTemplate;
@@ -84,6 +86,14 @@ public class JdbcIdentityZoneProvisioning implements IdentityZoneProvisioning, S
         return identityZone;
     }
 
+    /**
+     * @return the current version of the zone, or null if the zone does not exist
+     */
+    public Integer retrieveVersion(String id) {
+        List<Integer> versions = jdbcTemplate.queryForList(IDENTITY_ZONE_VERSION_BY_ID_QUERY, Integer.class, id);
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+
     @Override
     public IdentityZone create(final IdentityZone identityZone) {
 
@@ -0,0 +1,23 @@
+--
+-- Cloud Foundry
+-- Copyright (c) [2016] Pivotal Software, Inc. All Rights Reserved.
+--
+-- This product is licensed to you under the Apache License, Version 2.0 (the "License").
+-- You may not use this product except in compliance with the License.
+--
+-- This product includes a number of subcomponents with
+-- separate copyright notices and license terms. Your use of these
+-- subcomponents is subject to the terms and conditions of the
+-- subcomponent's license, as noted in the LICENSE file.
+--
+
+CREATE TABLE group_membership_closure (
+  member_id VARCHAR(36) NOT NULL,
+  group_id VARCHAR(36) NOT NULL,
+  identity_zone_id VARCHAR(36) NOT NULL,
+  PRIMARY KEY (member_id, group_id)
+);
+
+CREATE INDEX idx_group_membership_closure_group ON group_membership_closure(group_id);
+
+CREATE INDEX idx_group_membership_closure_zone ON group_membership_closure(identity_zone_id);
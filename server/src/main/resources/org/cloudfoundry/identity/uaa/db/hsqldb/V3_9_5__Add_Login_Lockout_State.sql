@@ -0,0 +1,21 @@
+--
+-- Cloud Foundry
+-- Copyright (c) [2016] Pivotal Software, Inc. All Rights Reserved.
+--
+-- This product is licensed to you under the Apache License, Version 2.0 (the "License").
+-- You may not use this product except in compliance with the License.
+--
+-- This product includes a number of subcomponents with
+-- separate copyright notices and license terms. Your use of these
+-- subcomponents is subject to the terms and conditions of the
+-- subcomponent's license, as noted in the LICENSE file.
+--
+
+
+CREATE TABLE login_lockout_state (
+  principal_id VARCHAR(255) NOT NULL PRIMARY KEY,
+  identity_zone_id VARCHAR(36) NOT NULL,
+  failure_count INTEGER NOT NULL,
+  first_failure BIGINT NOT NULL,
+  last_failure BIGINT NOT NULL
+);
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.audit;
+
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationFailure;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncAuditServiceTests {
+
+    private List<List<AuditEvent>> batches;
+    private CountDownLatch release;
+    private AsyncAuditService auditService;
+
+    @Before
+    public void createService() {
+        batches = Collections.synchronizedList(new ArrayList<>());
+        release = new CountDownLatch(0);
+        auditService = new AsyncAuditService(new UaaAuditService() {
+            @Override
+            public List<AuditEvent> find(String principal, long after) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void log(AuditEvent auditEvent) {
+                logAll(Collections.singletonList(auditEvent));
+            }
+
+            @Override
+            public void logAll(List<AuditEvent> auditEvents) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                batches.add(new ArrayList<>(auditEvents));
+            }
+        });
+        auditService.setFlushIntervalMillis(50);
+    }
+
+    @After
+    public void stopService() throws Exception {
+        release.countDown();
+        auditService.destroy();
+    }
+
+    @Test
+    public void disabled_logs_on_calling_thread() {
+        auditService.setEnabled(false);
+        auditService.afterPropertiesSet();
+        auditService.log(event());
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void events_are_written_in_batches() throws Exception {
+        release = new CountDownLatch(1);
+        auditService.setBatchSize(3);
+        auditService.afterPropertiesSet();
+        for (int i = 0; i < 7; i++) {
+            auditService.log(event());
+        }
+        assertEquals(0, batches.size());
+        release.countDown();
+        for (int i = 0; i < 100 && auditService.getWrittenCount() < 7; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(7, auditService.getWrittenCount());
+        for (List<AuditEvent> batch : batches) {
+            assertTrue(batch.size() <= 3);
+        }
+        assertTrue(batches.size() < 7);
+    }
+
+    @Test
+    public void events_are_dropped_when_queue_is_full() throws Exception {
+        release = new CountDownLatch(1);
+        auditService.setCapacity(2);
+        auditService.setBatchSize(1);
+        auditService.afterPropertiesSet();
+        auditService.log(event());
+        for (int i = 0; i < 100 && auditService.getQueueSize() > 0; i++) {
+            Thread.sleep(10);
+        }
+        //the writer is blocked on the first event, two more fit in the queue
+        auditService.log(event());
+        auditService.log(event());
+        auditService.log(event());
+        assertEquals(1, auditService.getDroppedCount());
+    }
+
+    @Test
+    public void queued_events_are_written_on_shutdown() throws Exception {
+        release = new CountDownLatch(1);
+        auditService.setFlushIntervalMillis(5000);
+        auditService.afterPropertiesSet();
+        for (int i = 0; i < 5; i++) {
+            auditService.log(event());
+        }
+        release.countDown();
+        auditService.destroy();
+        assertEquals(5, auditService.getWrittenCount());
+        assertEquals(0, auditService.getQueueSize());
+    }
+
+    private AuditEvent event() {
+        return new AuditEvent(UserAuthenticationFailure, "1", "", "", System.currentTimeMillis(), IdentityZone.getUaa().getId());
+    }
+}
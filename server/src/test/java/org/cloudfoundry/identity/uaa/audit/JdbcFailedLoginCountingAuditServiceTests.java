@@ -13,6 +13,7 @@
 package org.cloudfoundry.identity.uaa.audit;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.cloudfoundry.identity.uaa.audit.AuditEventType.PasswordChangeSuccess;
@@ -57,13 +58,28 @@ public class JdbcFailedLoginCountingAuditServiceTests extends JdbcTestBase {
     }
 
     @Test
-    public void userAuthenticationFailureDeletesOldData() throws Exception {
+    public void userAuthenticationFailureDoesNotDeleteOldData() throws Exception {
         long now = System.currentTimeMillis();
         auditService.log(getAuditEvent(UserAuthenticationFailure, "1", "joe"));
         assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='1'", Integer.class), is(1));
         // Set the created column to 25 hours past
         jdbcTemplate.update("update sec_audit set created=?", new Timestamp(now - 25 * 3600 * 1000));
         auditService.log(getAuditEvent(UserAuthenticationFailure, "1", "joe"));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='1'", Integer.class), is(2));
+        assertEquals(1, auditService.deleteExpiredEntries(10));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='1'", Integer.class), is(1));
+    }
+
+    @Test
+    public void expiredDataIsDeletedInChunks() throws Exception {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            auditService.log(getAuditEvent(UserAuthenticationFailure, "1", "joe", now - (25 * 3600 * 1000) - i * 1000));
+        }
+        auditService.log(getAuditEvent(UserAuthenticationFailure, "1", "joe"));
+        assertEquals(2, auditService.deleteExpiredEntries(2));
+        assertEquals(1, auditService.deleteExpiredEntries(2));
+        assertEquals(0, auditService.deleteExpiredEntries(2));
         assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='1'", Integer.class), is(1));
     }
 
@@ -114,13 +130,15 @@ public class JdbcFailedLoginCountingAuditServiceTests extends JdbcTestBase {
     }
 
     @Test
-    public void clientAuthenticationFailureDeletesOldData() throws Exception {
+    public void clientAuthenticationFailureDoesNotDeleteOldData() throws Exception {
         long now = System.currentTimeMillis();
         auditService.log(getAuditEvent(ClientAuthenticationFailure, "client", "testman"));
         assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='client'", Integer.class), is(1));
         // Set the created column to 25 hours past
         jdbcTemplate.update("update sec_audit set created=?", new Timestamp(now - 25 * 3600 * 1000));
         auditService.log(getAuditEvent(ClientAuthenticationFailure, "client", "testman"));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='client'", Integer.class), is(2));
+        assertEquals(1, auditService.deleteExpiredEntries(10));
         assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='client'", Integer.class), is(1));
     }
 
@@ -140,8 +158,25 @@ public class JdbcFailedLoginCountingAuditServiceTests extends JdbcTestBase {
         assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='client'", Integer.class), is(0));
     }
 
+    @Test
+    public void logAllKeepsOrderOfFailuresAndResets() throws Exception {
+        auditService.logAll(Arrays.asList(
+            getAuditEvent(UserAuthenticationFailure, "1", "joe"),
+            getAuditEvent(ClientAuthenticationFailure, "client", "testman"),
+            getAuditEvent(UserAuthenticationSuccess, "1", "joe"),
+            getAuditEvent(UserAuthenticationFailure, "1", "joe"),
+            getAuditEvent(ClientAuthenticationFailure, "client", "testman")
+        ));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='1'", Integer.class), is(1));
+        assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='client'", Integer.class), is(2));
+    }
+
     private AuditEvent getAuditEvent(AuditEventType type, String principal, String data) {
-        return new AuditEvent(type, principal, authDetails, data, System.currentTimeMillis(), IdentityZone.getUaa().getId());
+        return getAuditEvent(type, principal, data, System.currentTimeMillis());
+    }
+
+    private AuditEvent getAuditEvent(AuditEventType type, String principal, String data, long time) {
+        return new AuditEvent(type, principal, authDetails, data, time, IdentityZone.getUaa().getId());
     }
 
 }
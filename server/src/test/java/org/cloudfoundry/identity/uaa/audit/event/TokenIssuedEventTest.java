@@ -0,0 +1,47 @@
+/*
+ * ****************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ * ****************************************************************************
+ */
+
+package org.cloudfoundry.identity.uaa.audit.event;
+
+import org.cloudfoundry.identity.uaa.audit.AuditEvent;
+import org.cloudfoundry.identity.uaa.provider.IdentityProviderValidationRequest;
+import org.junit.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TokenIssuedEventTest {
+
+    private Authentication authentication = new IdentityProviderValidationRequest.UsernamePasswordAuthentication("username","password");
+
+    @Test
+    public void principal_id_is_not_read_from_token() throws Exception {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("not.a.jwt");
+        token.setScope(Collections.singleton("openid"));
+        AuditEvent event = new TokenIssuedEvent(token, authentication, "user-id").getAuditEvent();
+        assertEquals("user-id", event.getPrincipalId());
+        assertEquals("[\"openid\"]", event.getData());
+    }
+
+    @Test
+    public void opaque_token_without_principal_id() throws Exception {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("opaque-token-id");
+        assertNull(new TokenIssuedEvent(token, authentication).getAuditEvent().getPrincipalId());
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.authentication.manager;
+
+import org.cloudfoundry.identity.uaa.audit.AuditEvent;
+import org.cloudfoundry.identity.uaa.audit.AuditEventType;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.provider.LockoutPolicy;
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.ClientAuthenticationFailure;
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.ClientAuthenticationSuccess;
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.SecretChangeSuccess;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JdbcLockoutStateStoreTests extends JdbcTestBase {
+
+    private static final long ONE_HOUR = 3600 * 1000;
+
+    private JdbcLockoutStateStore store;
+    private long now;
+
+    @Before
+    public void createStore() {
+        store = new JdbcLockoutStateStore(jdbcTemplate);
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    public void no_failures() {
+        assertSame(LockoutState.NONE, store.getState("client"));
+    }
+
+    @Test
+    public void failures_are_counted() {
+        store.recordFailure("client", "uaa", now - 2, now - ONE_HOUR);
+        store.recordFailure("client", "uaa", now - 1, now - ONE_HOUR);
+        LockoutState state = store.getState("client");
+        assertEquals(2, state.getFailureCount());
+        assertEquals(now - 2, state.getFirstFailure());
+        assertEquals(now - 1, state.getLastFailure());
+    }
+
+    @Test
+    public void count_restarts_after_counting_period() {
+        store.recordFailure("client", "uaa", now - 2 * ONE_HOUR, now - 3 * ONE_HOUR);
+        store.recordFailure("client", "uaa", now - ONE_HOUR - 1, now - 2 * ONE_HOUR);
+        store.recordFailure("client", "uaa", now, now - ONE_HOUR);
+        LockoutState state = store.getState("client");
+        assertEquals(1, state.getFailureCount());
+        assertEquals(now, state.getFirstFailure());
+    }
+
+    @Test
+    public void reset_clears_failures() {
+        store.recordFailure("client", "uaa", now, now - ONE_HOUR);
+        store.reset("client");
+        assertSame(LockoutState.NONE, store.getState("client"));
+        store.setCacheEnabled(false);
+        assertSame(LockoutState.NONE, store.getState("client"));
+    }
+
+    @Test
+    public void states_are_cached_until_changed_on_this_node() {
+        store.getState("client");
+        store.getState("client");
+        assertEquals(1, store.getMissCount());
+        assertEquals(1, store.getHitCount());
+        store.recordFailure("client", "uaa", now, now - ONE_HOUR);
+        assertEquals(1, store.getState("client").getFailureCount());
+        assertEquals(2, store.getMissCount());
+    }
+
+    @Test
+    public void old_states_are_deleted() {
+        store.recordFailure("old", "uaa", now - 25 * ONE_HOUR, now - 26 * ONE_HOUR);
+        store.recordFailure("recent", "uaa", now, now - ONE_HOUR);
+        assertEquals(1, store.deleteExpiredEntries(10));
+        assertEquals(1, (int) jdbcTemplate.queryForObject("select count(*) from login_lockout_state", Integer.class));
+    }
+
+    @Test
+    public void policy_locks_client_after_failure_events() {
+        LockoutPolicy lockoutPolicy = new LockoutPolicy(60, 2, 3600);
+        ClientLockoutPolicyRetriever retriever = mock(ClientLockoutPolicyRetriever.class);
+        when(retriever.getLockoutPolicy()).thenReturn(lockoutPolicy);
+        CommonLoginPolicy policy = new CommonLoginPolicy(store, retriever, ClientAuthenticationSuccess, ClientAuthenticationFailure);
+        policy.setResetEventTypes(Collections.singletonList(SecretChangeSuccess));
+
+        policy.onApplicationEvent(event(ClientAuthenticationFailure));
+        assertTrue(policy.isAllowed("client").isAllowed());
+        policy.onApplicationEvent(event(ClientAuthenticationFailure));
+        assertFalse(policy.isAllowed("client").isAllowed());
+        assertEquals(2, policy.isAllowed("client").getFailureCount());
+
+        policy.onApplicationEvent(event(SecretChangeSuccess));
+        assertTrue(policy.isAllowed("client").isAllowed());
+
+        policy.onApplicationEvent(event(ClientAuthenticationFailure));
+        policy.onApplicationEvent(event(ClientAuthenticationSuccess));
+        assertEquals(0, policy.isAllowed("client").getFailureCount());
+    }
+
+    private AbstractUaaEvent event(AuditEventType type) {
+        AbstractUaaEvent event = mock(AbstractUaaEvent.class);
+        when(event.getAuditEvent()).thenReturn(new AuditEvent(type, "client", "", "", System.currentTimeMillis(), "uaa"));
+        return event;
+    }
+}
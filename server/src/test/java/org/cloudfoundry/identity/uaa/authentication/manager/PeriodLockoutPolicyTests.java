@@ -12,30 +12,21 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.authentication.manager;
 
-import org.cloudfoundry.identity.uaa.audit.AuditEvent;
 import org.cloudfoundry.identity.uaa.audit.AuditEventType;
-import org.cloudfoundry.identity.uaa.audit.UaaAuditService;
 import org.cloudfoundry.identity.uaa.provider.LockoutPolicy;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.user.UaaUser;
 import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
-import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.cloudfoundry.identity.uaa.provider.UaaIdentityProviderDefinition;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.security.core.Authentication;
 
-import java.util.Arrays;
-
-import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationFailure;
-import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationSuccess;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
-import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -45,7 +36,7 @@ import static org.mockito.Mockito.when;
 public class PeriodLockoutPolicyTests {
     private static final int ONE_HOUR = 60 * 60;
 
-    private UaaAuditService as;
+    private LockoutStateStore store;
     private UaaUser joe;
     private long now;
     private PeriodLockoutPolicy policy;
@@ -56,7 +47,7 @@ public class PeriodLockoutPolicyTests {
     @Before
     public void setUp() throws Exception {
         now = System.currentTimeMillis();
-        as = mock(UaaAuditService.class);
+        store = mock(LockoutStateStore.class);
         joe = mock(UaaUser.class);
         when(joe.getId()).thenReturn("1");
         providerProvisioning = mock(IdentityProviderProvisioning.class);
@@ -65,17 +56,14 @@ public class PeriodLockoutPolicyTests {
         lockoutPolicy.setLockoutPeriodSeconds(ONE_HOUR);
         when(providerProvisioning.retrieveByOrigin(anyString(), anyString())).thenReturn(new IdentityProvider());
         policyRetriever = new UserLockoutPolicyRetriever(providerProvisioning);
-        innerPolicy = new CommonLoginPolicy(as, policyRetriever, AuditEventType.UserAuthenticationSuccess, AuditEventType.UserAuthenticationFailure);
+        innerPolicy = new CommonLoginPolicy(store, policyRetriever, AuditEventType.UserAuthenticationSuccess, AuditEventType.UserAuthenticationFailure);
         policyRetriever.setDefaultLockoutPolicy(lockoutPolicy);
         policy = new PeriodLockoutPolicy(innerPolicy);
     }
 
     @Test
     public void loginIsDeniedIfAllowedFailuresIsExceeded() {
-        when(as.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
-                        new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 1, IdentityZone.getUaa().getId()),
-                        new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 2, IdentityZone.getUaa().getId())
-                        ));
+        when(store.getState("1")).thenReturn(new LockoutState(2, now - 2, now - 1));
 
         policyRetriever.getDefaultLockoutPolicy().setLockoutAfterFailures(2);
         assertFalse(policy.isAllowed(joe, mock(Authentication.class)));
@@ -83,11 +71,8 @@ public class PeriodLockoutPolicyTests {
 
     @Test
     public void loginIsAllowedIfSuccessfulLoginIntercedesExcessiveFailures() {
-        when(as.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
-                        new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 1, IdentityZone.getUaa().getId()),
-                        new AuditEvent(UserAuthenticationSuccess, "joe", "", "", now - 2, IdentityZone.getUaa().getId()),
-                        new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 3, IdentityZone.getUaa().getId())
-                        ));
+        // the successful login reset the failure before it
+        when(store.getState("1")).thenReturn(new LockoutState(1, now - 1, now - 1));
 
         policy.getDefaultLockoutPolicy().setLockoutAfterFailures(2);
         assertTrue(policy.isAllowed(joe, mock(Authentication.class)));
@@ -95,11 +80,7 @@ public class PeriodLockoutPolicyTests {
 
     @Test
     public void loginIsAllowedWithExcessiveFailuresIfLockoutPeriodHasElapsed() {
-        when(as.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
-                        new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 5001, IdentityZone.getUaa().getId()),
-                        new AuditEvent(UserAuthenticationSuccess, "joe", "", "", now - 5002, IdentityZone.getUaa().getId()),
-                        new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 5003, IdentityZone.getUaa().getId())
-                        ));
+        when(store.getState("1")).thenReturn(new LockoutState(2, now - 5003, now - 5001));
 
         policy.getDefaultLockoutPolicy().setLockoutAfterFailures(2);
         policy.getDefaultLockoutPolicy().setLockoutPeriodSeconds(5);
@@ -109,10 +90,7 @@ public class PeriodLockoutPolicyTests {
 
     @Test
     public void loginIsAllowedIfAllowedFailuresIsNotExceeded() {
-        when(as.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
-                        new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 1, IdentityZone.getUaa().getId()),
-                        new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 2, IdentityZone.getUaa().getId())
-                        ));
+        when(store.getState("1")).thenReturn(new LockoutState(2, now - 2, now - 1));
 
         policy.getDefaultLockoutPolicy().setLockoutAfterFailures(3);
         assertTrue(policy.isAllowed(joe, mock(Authentication.class)));
@@ -120,10 +98,7 @@ public class PeriodLockoutPolicyTests {
 
     @Test
     public void testUseLockoutPolicyFromDbIfPresent() throws Exception {
-        when(as.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
-            new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 1, IdentityZone.getUaa().getId()),
-            new AuditEvent(UserAuthenticationFailure, "joe", "", "", now - 1, IdentityZone.getUaa().getId())
-        ));
+        when(store.getState("1")).thenReturn(new LockoutState(2, now - 1, now - 1));
         LockoutPolicy lockoutPolicy = new LockoutPolicy();
         lockoutPolicy.setLockoutAfterFailures(2);
         lockoutPolicy.setLockoutPeriodSeconds(900);
@@ -133,4 +108,13 @@ public class PeriodLockoutPolicyTests {
         when(providerProvisioning.retrieveByOrigin(OriginKeys.UAA, IdentityZoneHolder.get().getId())).thenReturn(provider);
         assertFalse(policy.isAllowed(joe, mock(Authentication.class)));
     }
+
+    @Test
+    public void failuresOutsideOfCountingPeriodAreIgnored() {
+        when(store.getState("1")).thenReturn(new LockoutState(2, now - ONE_HOUR * 1000 - 2, now - ONE_HOUR * 1000 - 1));
+
+        policy.getDefaultLockoutPolicy().setLockoutAfterFailures(2);
+        policy.getDefaultLockoutPolicy().setLockoutPeriodSeconds(2 * ONE_HOUR);
+        assertTrue(policy.isAllowed(joe, mock(Authentication.class)));
+    }
 }
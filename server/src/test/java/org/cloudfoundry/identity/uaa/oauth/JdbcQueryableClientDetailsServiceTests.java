@@ -13,6 +13,7 @@
 package org.cloudfoundry.identity.uaa.oauth;
 
 import org.cloudfoundry.identity.uaa.client.JdbcQueryableClientDetailsService;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.zone.JdbcIdentityZoneProvisioning;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.resources.jdbc.LimitSqlAdapter;
@@ -20,8 +21,14 @@ import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
 import org.cloudfoundry.identity.uaa.zone.*;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class JdbcQueryableClientDetailsServiceTests extends JdbcTestBase {
 
@@ -91,4 +98,29 @@ public class JdbcQueryableClientDetailsServiceTests extends JdbcTestBase {
         testQueryExists();
         assertEquals(8,delegate.getTotalCount());
     }
+
+    @Test
+    public void testQueryPageByClientId() throws Exception {
+        addClients();
+        KeysetPage<ClientDetails> page = service.queryPage("client_id pr", "client_id", true, "", 3);
+        assertEquals(4, page.getTotalResults());
+        assertEquals(Arrays.asList("admin", "app", "cf"), page.getResources().stream().map(ClientDetails::getClientId).collect(Collectors.toList()));
+        assertNotNull(page.getNextCursor());
+
+        page = service.queryPage("client_id pr", "client_id", true, page.getNextCursor(), 3);
+        assertEquals(4, page.getTotalResults());
+        assertEquals(Arrays.asList("scimadmin"), page.getResources().stream().map(ClientDetails::getClientId).collect(Collectors.toList()));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testQueryPageWithoutTotalInAnotherZone() throws Exception {
+        addClients();
+        IdentityZoneHolder.set(otherZone);
+        addClient("other", "secret", "cc", "cc.read", "implicit", "myRedirectUri", "cc.read", 100, 200);
+        KeysetPage<ClientDetails> page = service.queryPage("client_id pr", "client_id", false, "", 10, false);
+        assertEquals(-1, page.getTotalResults());
+        assertEquals(Arrays.asList("other"), page.getResources().stream().map(ClientDetails::getClientId).collect(Collectors.toList()));
+        assertNull(page.getNextCursor());
+    }
 }
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Cloud Foundry
+ * Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ * <p>
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ * <p>
+ * This product includes a number of subcomponents with
+ * separate copyright notices and license terms. Your use of these
+ * subcomponents is subject to the terms and conditions of the
+ * subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.util.TokenValidation;
+import org.cloudfoundry.identity.uaa.util.UaaTokenUtils;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.MultitenancyFixture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+
+import java.util.Map;
+
+import static org.cloudfoundry.identity.uaa.util.TokenValidation.validate;
+import static org.cloudfoundry.identity.uaa.util.UaaMapUtils.entry;
+import static org.cloudfoundry.identity.uaa.util.UaaMapUtils.map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class VerifiedTokenCacheTests {
+
+    private VerifiedTokenCache cache;
+    private String token;
+    private TokenValidation validation;
+
+    @Before
+    public void setUp() {
+        cache = new VerifiedTokenCache();
+        cache.setEnabled(true);
+        token = tokenExpiringIn(3600);
+        validation = validate(token);
+    }
+
+    @After
+    public void clearZone() {
+        IdentityZoneHolder.clear();
+    }
+
+    @Test
+    public void key_is_a_digest_of_the_token() {
+        String key = cache.getKey(token);
+        assertFalse(key.contains(token));
+        assertEquals(IdentityZoneHolder.get().getId() + ":", key.substring(0, key.indexOf(':') + 1));
+        assertEquals(64, key.length() - key.indexOf(':') - 1);
+        assertEquals(key, cache.getKey(token));
+        assertNotEquals(key, cache.getKey(tokenExpiringIn(60)));
+    }
+
+    @Test
+    public void disabled_by_default() {
+        VerifiedTokenCache disabled = new VerifiedTokenCache();
+        disabled.put(token, validation);
+        assertNull(disabled.get(token));
+    }
+
+    @Test
+    public void returns_cached_validation() {
+        cache.put(token, validation);
+        assertSame(validation, cache.get(token));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void expired_tokens_are_not_cached() {
+        String expired = tokenExpiringIn(-10);
+        cache.put(expired, validate(expired));
+        assertNull(cache.get(expired));
+    }
+
+    @Test
+    public void entries_are_scoped_to_zone() {
+        cache.put(token, validation);
+        IdentityZoneHolder.set(MultitenancyFixture.identityZone("other-zone", "other-zone"));
+        assertNull(cache.get(token));
+        IdentityZoneHolder.set(IdentityZone.getUaa());
+        assertSame(validation, cache.get(token));
+    }
+
+    @Test
+    public void revoked_token_is_evicted() {
+        cache.put(token, validation);
+        cache.evictByTokenId("token-id");
+        assertNull(cache.get(token));
+    }
+
+    @Test
+    public void revoked_user_and_client_are_evicted() {
+        cache.put(token, validation);
+        cache.evictByUserId("user-id");
+        assertNull(cache.get(token));
+
+        cache.put(token, validation);
+        cache.evictByClientId("other-client");
+        assertSame(validation, cache.get(token));
+        cache.evictByClientId("client");
+        assertNull(cache.get(token));
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    private String tokenExpiringIn(int seconds) {
+        Map<String, Object> claims = map(
+            entry("jti", "token-id"),
+            entry("cid", "client"),
+            entry("user_id", "user-id"),
+            entry("exp", (int) (System.currentTimeMillis() / 1000) + seconds)
+        );
+        return UaaTokenUtils.constructToken(map(entry("alg", "HS256")), claims, new MacSigner("secret"));
+    }
+}
@@ -16,7 +16,10 @@ import org.cloudfoundry.identity.uaa.approval.Approval;
 import org.cloudfoundry.identity.uaa.approval.ApprovalStore;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 
@@ -65,4 +68,17 @@ public class InMemoryApprovalStore implements ApprovalStore {
         return returnList;
     }
 
+    @Override
+    public Map<String, List<Approval>> getApprovalsForUsers(Collection<String> userIds) {
+        Map<String, List<Approval>> result = new HashMap<String, List<Approval>>();
+        for (String userId : userIds) {
+            result.put(userId, new ArrayList<Approval>());
+        }
+        for (Approval a : store) {
+            if (result.containsKey(a.getUserId())) {
+                result.get(a.getUserId()).add(a);
+            }
+        }
+        return result;
+    }
 }
@@ -1,8 +1,15 @@
 package org.cloudfoundry.identity.uaa.oauth.jwt;
 
+import org.apache.commons.codec.binary.Base64;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.junit.Test;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
 import org.springframework.security.jwt.crypto.sign.MacSigner;
 
+import java.util.Map;
+
+import static org.cloudfoundry.identity.uaa.util.UaaMapUtils.entry;
+import static org.cloudfoundry.identity.uaa.util.UaaMapUtils.map;
 import static org.junit.Assert.*;
 
 public class JwtHelperTest {
@@ -17,4 +24,41 @@ public class JwtHelperTest {
         assertEquals("testKid", jwt.getHeader().getKid());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testEncodeClaimsMap() {
+        MacSigner macSigner = new MacSigner("symmetricKey");
+        Signer signer = new IdentifiedSigner("testKid", macSigner);
+        Map<String, Object> claims = map(entry("sub", "user-id"), entry("scope", new String[] {"openid"}), entry("exp", 1234));
+
+        Jwt jwt = JwtHelper.encode(claims, signer);
+        assertEquals(JwtHelper.encode(JsonUtils.writeValueAsString(claims), signer).getEncoded(), jwt.getEncoded());
+        assertEquals(JsonUtils.writeValueAsString(claims), jwt.getClaims());
+
+        Jwt decoded = JwtHelper.decode(jwt.getEncoded());
+        decoded.verifySignature(macSigner);
+        assertEquals(jwt.getClaims(), decoded.getClaims());
+    }
+
+    @Test(expected = InvalidSignatureException.class)
+    public void testDecodedTokenIsVerifiedAgainstEncodedSegments() {
+        MacSigner macSigner = new MacSigner("symmetricKey");
+        String token = JwtHelper.encode("{\"sub\":\"user-id\"}", new IdentifiedSigner(null, macSigner)).getEncoded();
+        String[] segments = token.split("\\.");
+        String tampered = segments[0] + "." + Base64.encodeBase64URLSafeString("{\"sub\":\"admin\"}".getBytes()) + "." + segments[2];
+        JwtHelper.decode(tampered).verifySignature(macSigner);
+    }
+
+    @Test
+    public void testEncodeWithHeaderMatchesSeparateEncoding() {
+        MacSigner signer = new MacSigner("symmetricKey");
+        Map<String, Object> header = map(entry("alg", "HS256"), entry("kid", "testKid"));
+        Map<String, Object> claims = map(entry("sub", "user-id"));
+
+        String headerAndClaims = Base64.encodeBase64URLSafeString(JsonUtils.writeValueAsBytes(header)) + "." +
+            Base64.encodeBase64URLSafeString(JsonUtils.writeValueAsBytes(claims));
+        String expected = headerAndClaims + "." + Base64.encodeBase64URLSafeString(signer.sign(headerAndClaims.getBytes()));
+
+        assertEquals(expected, JwtHelper.encode(header, claims, signer));
+    }
+
+}
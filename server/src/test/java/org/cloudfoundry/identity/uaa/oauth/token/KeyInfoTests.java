@@ -32,6 +32,8 @@ import java.util.Map;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -96,6 +98,23 @@ public class KeyInfoTests {
         assertEquals(KeyInfo.getActiveKey().getSigningKey(), "testLegacyKey");
     }
 
+    @Test
+    public void testParsedKeysAreReusedUntilKeysChange() {
+        String keyId = generator.generate();
+        configureDefaultZoneKeys(Collections.singletonMap(keyId, "testkey"));
+
+        KeyInfo key = KeyInfo.getKey(keyId);
+        assertSame(key, KeyInfo.getKey(keyId));
+
+        configureDefaultZoneKeys(Collections.singletonMap(keyId, "othertestkey"));
+        KeyInfo changed = KeyInfo.getKey(keyId);
+        assertNotSame(key, changed);
+        assertEquals("othertestkey", changed.getSigningKey());
+
+        KeyInfo.evictKeys(IdentityZone.getUaa().getId());
+        assertNotSame(changed, KeyInfo.getKey(keyId));
+    }
+
     private void configureDefaultZoneKeys(Map<String,String> keys) {
         IdentityZoneHolder.clear();
         IdentityZoneProvisioning provisioning = mock(IdentityZoneProvisioning.class);
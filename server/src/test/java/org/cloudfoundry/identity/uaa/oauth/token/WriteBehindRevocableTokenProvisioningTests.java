@@ -0,0 +1,190 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth.token;
+
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import java.util.List;
+
+import static org.cloudfoundry.identity.uaa.oauth.token.RevocableToken.TokenType.ACCESS_TOKEN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class WriteBehindRevocableTokenProvisioningTests extends JdbcTestBase {
+
+    private WriteBehindRevocableTokenProvisioning provisioning;
+    private JdbcRevocableTokenProvisioning jdbc;
+
+    @Before
+    public void createProvisioning() {
+        jdbc = new JdbcRevocableTokenProvisioning(jdbcTemplate);
+        provisioning = new WriteBehindRevocableTokenProvisioning(jdbc);
+        provisioning.setEnabled(true);
+        provisioning.setFlushInterval(60000);
+    }
+
+    @After
+    public void clear() throws Exception {
+        provisioning.destroy();
+        IdentityZoneHolder.clear();
+        jdbcTemplate.update("DELETE FROM revocable_tokens");
+    }
+
+    @Test
+    public void queued_token_can_be_retrieved_before_flush() {
+        RevocableToken token = token("token-1");
+        provisioning.create(token);
+        assertEquals(1, provisioning.getPendingCount());
+        assertSame(token, provisioning.retrieve("token-1"));
+        assertEquals(0, countTokens());
+    }
+
+    @Test
+    public void flush_writes_queued_tokens_in_batches() {
+        provisioning.setBatchSize(2);
+        for (int i=0; i<5; i++) {
+            provisioning.create(token("token-" + i));
+        }
+        provisioning.flush();
+        assertEquals(5, countTokens());
+        assertEquals(5, provisioning.getBatchedWriteCount());
+        assertEquals(0, provisioning.getPendingCount());
+        assertNotNull(jdbc.retrieve("token-3"));
+    }
+
+    @Test
+    public void queued_duplicate_is_rejected() {
+        provisioning.create(token("token-1"));
+        try {
+            provisioning.create(token("token-1"));
+            fail("Duplicate token should be rejected");
+        } catch (DuplicateKeyException expected) {
+        }
+    }
+
+    @Test
+    public void existing_access_token_is_updated_by_batch() {
+        jdbc.create(token("token-1"));
+        provisioning.create(token("token-1").setScope("updated"));
+        provisioning.flush();
+        assertEquals(1, countTokens());
+        assertEquals("updated", jdbc.retrieve("token-1").getScope());
+        assertEquals(0, provisioning.getFailedWriteCount());
+    }
+
+    @Test
+    public void failed_batch_is_written_one_by_one() {
+        provisioning = new WriteBehindRevocableTokenProvisioning(new FailingProvisioning(2));
+        provisioning.setEnabled(true);
+        for (int i=0; i<3; i++) {
+            provisioning.create(token("token-" + i));
+        }
+        provisioning.flush();
+        assertEquals(3, countTokens());
+        assertEquals(0, provisioning.getPendingCount());
+        assertEquals(0, provisioning.getFailedWriteCount());
+        assertEquals(3, provisioning.getRetriedWriteCount());
+        assertEquals(0, provisioning.getSynchronousWriteCount());
+    }
+
+    @Test
+    public void tokens_that_cannot_be_written_stay_queued() {
+        FailingProvisioning failing = new FailingProvisioning(1);
+        provisioning = new WriteBehindRevocableTokenProvisioning(failing);
+        provisioning.setEnabled(true);
+        RevocableToken token = token("token-1");
+        provisioning.create(token);
+        provisioning.flush();
+        assertEquals(0, countTokens());
+        assertEquals(1, provisioning.getPendingCount());
+        assertEquals(1, provisioning.getFailedWriteCount());
+        assertSame(token, provisioning.retrieve("token-1"));
+
+        failing.failAt = Integer.MAX_VALUE;
+        provisioning.flush();
+        assertEquals(1, countTokens());
+        assertEquals(0, provisioning.getPendingCount());
+    }
+
+    @Test
+    public void deleting_queued_token_removes_it_from_queue() {
+        provisioning.create(token("token-1"));
+        provisioning.delete("token-1", -1);
+        provisioning.flush();
+        assertEquals(0, countTokens());
+        try {
+            provisioning.retrieve("token-1");
+            fail("Deleted token should not be returned");
+        } catch (EmptyResultDataAccessException expected) {
+        }
+    }
+
+    @Test
+    public void listing_tokens_flushes_queue() {
+        provisioning.create(token("token-1"));
+        assertEquals(1, provisioning.getUserTokens("user-id").size());
+    }
+
+    @Test
+    public void disabled_writes_synchronously() {
+        provisioning.setEnabled(false);
+        provisioning.create(token("token-1"));
+        assertEquals(1, countTokens());
+        assertEquals(1, provisioning.getSynchronousWriteCount());
+    }
+
+    private class FailingProvisioning extends JdbcRevocableTokenProvisioning {
+        private int failAt;
+
+        FailingProvisioning(int failAt) {
+            super(jdbcTemplate);
+            this.failAt = failAt;
+        }
+
+        @Override
+        public void createAll(List<RevocableToken> tokens) {
+            if (tokens.size() >= failAt) {
+                throw new DataAccessResourceFailureException("Unable to write " + tokens.size() + " tokens");
+            }
+            super.createAll(tokens);
+        }
+    }
+
+    private int countTokens() {
+        return jdbcTemplate.queryForObject("select count(*) from revocable_tokens", Integer.class);
+    }
+
+    private RevocableToken token(String tokenId) {
+        long now = System.currentTimeMillis();
+        return new RevocableToken()
+            .setTokenId(tokenId)
+            .setClientId("client-id")
+            .setUserId("user-id")
+            .setResponseType(ACCESS_TOKEN)
+            .setIssuedAt(now)
+            .setExpiresAt(now + 60000)
+            .setValue("value")
+            .setScope("openid")
+            .setFormat("JWT")
+            .setZoneId(IdentityZoneHolder.get().getId());
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import org.cloudfoundry.identity.uaa.codestore.JdbcExpiringCodeStore;
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiredEntrySweeperTests extends JdbcTestBase {
+
+    private JdbcExpiringCodeStore codeStore;
+    private ExpiredEntrySweeper sweeper;
+
+    @Before
+    public void createSweeper() {
+        codeStore = new JdbcExpiringCodeStore(dataSource);
+        codeStore.setLimitSqlAdapter(limitSqlAdapter);
+        sweeper = new ExpiredEntrySweeper(new JdbcJobLock(jdbcTemplate, "this-node"), Collections.singletonList(codeStore));
+        sweeper.setChunkSize(2);
+        sweeper.setPauseBetweenChunks(0);
+    }
+
+    @Test
+    public void expired_entries_are_deleted_in_chunks() {
+        long now = System.currentTimeMillis();
+        for (int i=0; i<5; i++) {
+            jdbcTemplate.update(JdbcExpiringCodeStore.insert, "expired-" + i, now - 1000, "{}", null);
+        }
+        jdbcTemplate.update(JdbcExpiringCodeStore.insert, "valid", now + 60000, "{}", null);
+
+        assertEquals(2, codeStore.deleteExpiredEntries(2));
+        assertEquals(3, sweeper.sweep());
+        assertEquals(1, (int) jdbcTemplate.queryForObject("select count(*) from expiring_code_store", Integer.class));
+        assertEquals(3, sweeper.getDeletedEntryCount());
+        assertEquals(1, sweeper.getSweepCount());
+    }
+
+    @Test
+    public void only_lock_holder_sweeps() {
+        JdbcJobLock other = new JdbcJobLock(jdbcTemplate, "other-node");
+        assertTrue(other.tryLock(ExpiredEntrySweeper.LOCK_NAME, 60000));
+        jdbcTemplate.update(JdbcExpiringCodeStore.insert, "expired", System.currentTimeMillis() - 1000, "{}", null);
+
+        assertEquals(0, sweeper.sweep());
+        assertEquals(0, sweeper.getSweepCount());
+
+        other.release(ExpiredEntrySweeper.LOCK_NAME);
+        assertEquals(1, sweeper.sweep());
+    }
+
+    @Test
+    public void expired_lock_can_be_taken_over() {
+        JdbcJobLock lock = new JdbcJobLock(jdbcTemplate, "this-node");
+        JdbcJobLock other = new JdbcJobLock(jdbcTemplate, "other-node");
+        assertTrue(other.tryLock("job", -1));
+        assertTrue(lock.tryLock("job", 60000));
+        assertFalse(other.tryLock("job", 60000));
+        assertTrue(lock.tryLock("job", 60000));
+    }
+}
@@ -12,9 +12,11 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.scim.endpoints;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.resources.NdjsonWriter;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.jdbc.DefaultLimitSqlAdapter;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
@@ -34,12 +36,14 @@ import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.scim.test.TestUtils;
 import org.cloudfoundry.identity.uaa.security.SecurityContextAccessor;
 import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.web.ExceptionReportHttpMessageConverter;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.converter.HttpMessageConversionException;
@@ -280,6 +284,36 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
         }
     }
 
+    @Test
+    public void testExportGroups() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        endpoints.exportGroups(null, "displayName eq \"uaa.none\" or displayName eq \"uaa.admin\"", "displayName", "ascending", response);
+        assertEquals(NdjsonWriter.CONTENT_TYPE, response.getContentType().split(";")[0]);
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(groupIds.get(1), JsonUtils.readValue(lines[0], ScimGroup.class).getId());
+        assertEquals(groupIds.get(2), JsonUtils.readValue(lines[1], ScimGroup.class).getId());
+    }
+
+    @Test
+    public void testExportGroupAttributes() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        endpoints.exportGroups("id,displayName", "displayName eq \"uaa.resource\"", "created", "ascending", response);
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(1, lines.length);
+        Map<String, Object> group = JsonUtils.readValue(lines[0], new TypeReference<Map<String, Object>>() {});
+        assertEquals(2, group.size());
+        assertEquals(groupIds.get(0), group.get("id"));
+        assertEquals("uaa.resource", group.get("displayName"));
+    }
+
+    @Test
+    public void testExportGroupsWithInvalidFilter() throws Exception {
+        expectedEx.expect(ScimException.class);
+        expectedEx.expectMessage("Invalid filter expression");
+        endpoints.exportGroups(null, "displayName cr \"admin\"", "created", "ascending", new MockHttpServletResponse());
+    }
+
     @Test
     public void testListGroupsWithNameEqFilter() {
         validateSearchResults(endpoints.listGroups("id,displayName", "displayName eq \"uaa.user\"", "created",
@@ -689,6 +723,13 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
                         HttpStatus.BAD_REQUEST);
     }
 
+    @Test(expected = DataAccessResourceFailureException.class)
+    public void testExceptionAfterResponseIsCommitted() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCommitted(true);
+        endpoints.handleException(new DataAccessResourceFailureException("Connection lost"), new MockHttpServletRequest(), response);
+    }
+
     private void validateView(View view, HttpStatus status) {
         MockHttpServletResponse response = new MockHttpServletResponse();
         try {
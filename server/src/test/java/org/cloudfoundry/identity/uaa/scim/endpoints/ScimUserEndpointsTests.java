@@ -12,12 +12,14 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.scim.endpoints;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.approval.Approval;
 import org.cloudfoundry.identity.uaa.approval.ApprovalStore;
 import org.cloudfoundry.identity.uaa.approval.JdbcApprovalStore;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.resources.NdjsonWriter;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
 import org.cloudfoundry.identity.uaa.resources.jdbc.DefaultLimitSqlAdapter;
@@ -40,6 +42,7 @@ import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.scim.jdbc.ScimSearchQueryConverter;
 import org.cloudfoundry.identity.uaa.scim.test.TestUtils;
 import org.cloudfoundry.identity.uaa.scim.validate.PasswordValidator;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.web.ConvertingExceptionView;
 import org.cloudfoundry.identity.uaa.web.ExceptionReportHttpMessageConverter;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
@@ -78,15 +81,18 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -543,6 +549,70 @@ public class ScimUserEndpointsTests {
         assertEquals(0, results.getResources().size());
     }
 
+    @Test
+    public void testFindPagesOfIdsWithCursor() {
+        SearchResults<?> results = endpoints.findUsers("id", "id pr", "created", "ascending", 1, 1, "", true);
+        assertEquals(2, results.getTotalResults());
+        assertEquals(1, results.getResources().size());
+        assertNotNull(results.getNextCursor());
+        Object first = ((Map<?, ?>) results.getResources().get(0)).get("id");
+
+        results = endpoints.findUsers("id", "id pr", "created", "ascending", 1, 1, results.getNextCursor(), true);
+        assertEquals(2, results.getTotalResults());
+        assertEquals(1, results.getResources().size());
+        assertNull(results.getNextCursor());
+        assertNotEquals(first, ((Map<?, ?>) results.getResources().get(0)).get("id"));
+    }
+
+    @Test
+    public void testFindPagesOfIdsWithCursorWithoutTotal() {
+        SearchResults<?> results = endpoints.findUsers("id", "id pr", "created", "ascending", 1, 1, "", false);
+        assertEquals(-1, results.getTotalResults());
+        assertEquals(1, results.getResources().size());
+
+        results = endpoints.findUsers("id", "id pr", "created", "ascending", 1, 1, results.getNextCursor(), false);
+        assertEquals(-1, results.getTotalResults());
+        assertEquals(1, results.getResources().size());
+        assertNull(results.getNextCursor());
+    }
+
+    @Test
+    public void testFindUsersWithInvalidCursor() {
+        expected.expect(ScimException.class);
+        expected.expectMessage("Invalid filter expression");
+        endpoints.findUsers("id", "id pr", "created", "ascending", 1, 1, "not-a-cursor", true);
+    }
+
+    @Test
+    public void testExportUsers() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        endpoints.exportUsers(null, "id pr", "userName", "ascending", response);
+        assertEquals(NdjsonWriter.CONTENT_TYPE, response.getContentType().split(";")[0]);
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(joel.getId(), JsonUtils.readValue(lines[0], ScimUser.class).getId());
+        assertEquals(dale.getId(), JsonUtils.readValue(lines[1], ScimUser.class).getId());
+    }
+
+    @Test
+    public void testExportUserAttributes() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        endpoints.exportUsers("userName,familyName", "userName eq \"olds\"", "created", "ascending", response);
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(1, lines.length);
+        Map<String, Object> user = JsonUtils.readValue(lines[0], new TypeReference<Map<String, Object>>() {});
+        assertEquals(2, user.size());
+        assertEquals("olds", user.get("userName"));
+        assertEquals("Olds", user.get("familyName"));
+    }
+
+    @Test
+    public void testExportUsersWithInvalidFilter() throws Exception {
+        expected.expect(ScimException.class);
+        expected.expectMessage("Invalid filter expression");
+        endpoints.exportUsers(null, "userName eq", "created", "ascending", new MockHttpServletResponse());
+    }
+
     @Test
     public void testFindAllNames() {
         SearchResults<?> results = endpoints.findUsers("userName", "id pr", null, "ascending", 1, 100);
@@ -613,7 +683,7 @@ public class ScimUserEndpointsTests {
         endpoints.setScimGroupMembershipManager(mockgroupMembershipManager);
 
         endpoints.findUsers("", "id pr", null, "ascending", 1, 100);
-        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithMember(anyString(), anyBoolean());
+        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithUsers(anyCollectionOf(String.class), anyBoolean());
 
         endpoints.setScimGroupMembershipManager(mm);
     }
@@ -624,7 +694,7 @@ public class ScimUserEndpointsTests {
         endpoints.setScimGroupMembershipManager(mockgroupMembershipManager);
 
         endpoints.findUsers("groups", "id pr", null, "ascending", 1, 100);
-        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithMember(anyString(), anyBoolean());
+        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithUsers(anyCollectionOf(String.class), anyBoolean());
 
         endpoints.setScimGroupMembershipManager(mm);
     }
@@ -640,13 +710,55 @@ public class ScimUserEndpointsTests {
         endpoints.setScimGroupMembershipManager(mm);
     }
 
+    @Test
+    public void testFindUsersGroupsSyncedIfIncludedWithOtherAttributes() throws Exception {
+        ScimGroupMembershipManager mockgroupMembershipManager = mock(ScimGroupMembershipManager.class);
+        endpoints.setScimGroupMembershipManager(mockgroupMembershipManager);
+
+        endpoints.findUsers("id,groups.display", "id pr", null, "ascending", 1, 100);
+        verify(mockgroupMembershipManager, times(2)).getGroupsWithUsers(anyCollectionOf(String.class), anyBoolean());
+        verify(mockgroupMembershipManager, never()).getGroupsWithMember(anyString(), anyBoolean());
+
+        endpoints.setScimGroupMembershipManager(mm);
+    }
+
+    @Test
+    public void testFindUsersSyncsGroupsAndApprovalsForWholePage() throws Exception {
+        ScimGroup direct = new ScimGroup(null, "test1", IdentityZoneHolder.get().getId());
+        direct.setMembers(Arrays.asList(new ScimGroupMember(joel.getId())));
+        direct = groupEndpoints.createGroup(direct, new MockHttpServletResponse());
+        ScimGroup nested = new ScimGroup(null, "test2", IdentityZoneHolder.get().getId());
+        nested.setMembers(Arrays.asList(new ScimGroupMember(direct.getId(), ScimGroupMember.Type.GROUP, ScimGroupMember.GROUP_MEMBER)));
+        groupEndpoints.createGroup(nested, new MockHttpServletResponse());
+        am.addApproval(new Approval()
+            .setUserId(joel.getId())
+            .setClientId("c1")
+            .setScope("s1")
+            .setExpiresAt(Approval.timeFromNow(6000))
+            .setStatus(Approval.ApprovalStatus.APPROVED));
+
+        List<ScimUser> users = (List<ScimUser>) endpoints.findUsers("", "id pr", "userName", "ascending", 1, 100).getResources();
+        assertEquals(2, users.size());
+        ScimUser foundJoel = users.get(0);
+        ScimUser foundDale = users.get(1);
+        assertEquals(joel.getId(), foundJoel.getId());
+
+        validateUserGroups(foundJoel, "test1", "test2");
+        for (ScimUser.Group group : foundJoel.getGroups()) {
+            assertEquals("test2".equals(group.getDisplay()) ? ScimUser.Group.Type.INDIRECT : ScimUser.Group.Type.DIRECT, group.getType());
+        }
+        validateUserGroups(foundDale);
+        assertEquals(1, foundJoel.getApprovals().size());
+        assertEquals(0, foundDale.getApprovals().size());
+    }
+
     @Test
     public void testFindUsersApprovalsSyncedByDefault() throws Exception {
         ApprovalStore mockApprovalStore = mock(ApprovalStore.class);
         endpoints.setApprovalStore(mockApprovalStore);
 
         endpoints.findUsers("", "id pr", null, "ascending", 1, 100);
-        verify(mockApprovalStore, atLeastOnce()).getApprovals(anyString());
+        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUsers(anyCollectionOf(String.class));
 
         endpoints.setApprovalStore(am);
     }
@@ -657,7 +769,7 @@ public class ScimUserEndpointsTests {
         endpoints.setApprovalStore(mockApprovalStore);
 
         endpoints.findUsers("approvals", "id pr", null, "ascending", 1, 100);
-        verify(mockApprovalStore, atLeastOnce()).getApprovals(anyString());
+        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUsers(anyCollectionOf(String.class));
 
         endpoints.setApprovalStore(am);
     }
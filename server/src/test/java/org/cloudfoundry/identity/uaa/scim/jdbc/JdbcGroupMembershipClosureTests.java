@@ -0,0 +1,196 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.scim.jdbc;
+
+import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
+import org.cloudfoundry.identity.uaa.scim.ScimGroup;
+import org.cloudfoundry.identity.uaa.scim.ScimGroupMember;
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.cloudfoundry.identity.uaa.user.ClosureGroupMembershipSqlAdapter;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.cloudfoundry.identity.uaa.scim.ScimGroupMember.Type.GROUP;
+import static org.cloudfoundry.identity.uaa.scim.ScimGroupMember.Type.USER;
+import static org.junit.Assert.assertEquals;
+
+public class JdbcGroupMembershipClosureTests extends JdbcTestBase {
+
+    private static final String ADD_USER_SQL = "insert into users (id, username, password, email, givenName, familyName, identity_zone_id) values (?,?,?,?,?,?,?)";
+
+    private JdbcGroupMembershipClosure closure;
+    private JdbcScimGroupMembershipManager manager;
+    private String zoneId;
+
+    @Before
+    public void createManager() {
+        zoneId = IdentityZoneHolder.get().getId();
+        JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter);
+        JdbcScimGroupProvisioning groupProvisioning = new JdbcScimGroupProvisioning(jdbcTemplate, pagingListFactory);
+        closure = new JdbcGroupMembershipClosure(jdbcTemplate);
+        closure.setSqlAdapter(webApplicationContext.getBean(GroupMembershipClosureSqlAdapter.class));
+        closure.setEnabled(true);
+        groupProvisioning.setMembershipClosure(closure);
+        manager = new JdbcScimGroupMembershipManager(jdbcTemplate, pagingListFactory);
+        manager.setScimGroupProvisioning(groupProvisioning);
+        manager.setScimUserProvisioning(new JdbcScimUserProvisioning(jdbcTemplate, pagingListFactory));
+        manager.setMembershipClosure(closure);
+
+        for (String group : Arrays.asList("a", "b", "c", "d")) {
+            groupProvisioning.create(new ScimGroup(group, group, zoneId), zoneId);
+        }
+        jdbcTemplate.update(ADD_USER_SQL, "user", "user", "password", "user@test.org", "user", "user", zoneId);
+    }
+
+    @After
+    public void clearZone() {
+        IdentityZoneHolder.clear();
+    }
+
+    @Test
+    public void nested_groups_are_added_to_closure() {
+        addMember("a", "user", USER);
+        addMember("b", "a", GROUP);
+        addMember("c", "b", GROUP);
+        assertGroups("user", "a", "b", "c");
+        assertGroups("a", "b", "c");
+        assertGroups("b", "c");
+    }
+
+    @Test
+    public void circular_membership_terminates() {
+        addMember("a", "user", USER);
+        addMember("b", "a", GROUP);
+        addMember("a", "b", GROUP);
+        assertGroups("user", "a", "b");
+        assertGroups("a", "a", "b");
+    }
+
+    @Test
+    public void removed_membership_keeps_other_paths() {
+        addMember("a", "user", USER);
+        addMember("b", "user", USER);
+        addMember("c", "a", GROUP);
+        addMember("c", "b", GROUP);
+        addMember("d", "c", GROUP);
+
+        manager.removeMemberById("c", groupId("a"));
+        assertGroups("user", "a", "b", "c", "d");
+
+        manager.removeMemberById("c", groupId("b"));
+        assertGroups("user", "a", "b");
+    }
+
+    @Test
+    public void removed_group_members_are_recomputed() {
+        addMember("a", "user", USER);
+        addMember("b", "a", GROUP);
+        addMember("c", "b", GROUP);
+
+        manager.removeMembersByGroupId(groupId("b"));
+        assertGroups("user", "a");
+        assertGroups("a");
+        assertGroups("b", "c");
+    }
+
+    @Test
+    public void removed_member_is_recomputed() {
+        addMember("a", "user", USER);
+        addMember("b", "a", GROUP);
+
+        manager.removeMembersByMemberId(groupId("a"));
+        assertGroups("user", "a");
+    }
+
+    @Test
+    public void rebuild_matches_incremental_closure() {
+        addMember("a", "user", USER);
+        addMember("b", "a", GROUP);
+        addMember("c", "b", GROUP);
+        addMember("a", "c", GROUP);
+        Set<String> incremental = getClosureRows();
+
+        closure.rebuild(zoneId);
+        assertEquals(incremental, getClosureRows());
+    }
+
+    @Test
+    public void existing_closure_rows_are_skipped() {
+        addMember("a", "user", USER);
+        closure.insert("user", new HashSet<>(Arrays.asList(groupId("a"), groupId("b"))), zoneId);
+        assertGroups("user", "a", "b");
+    }
+
+    @Test
+    public void existing_closure_rows_do_not_abort_transaction() {
+        addMember("a", "user", USER);
+        TransactionTemplate transaction = new TransactionTemplate(webApplicationContext.getBean(PlatformTransactionManager.class));
+        transaction.execute(status -> {
+            closure.insert("user", new HashSet<>(Arrays.asList(groupId("a"), groupId("b"))), zoneId);
+            addMember("c", "user", USER);
+            return null;
+        });
+        assertGroups("user", "a", "b", "c");
+    }
+
+    @Test
+    public void groups_of_users_are_read_from_closure() {
+        jdbcTemplate.update(ADD_USER_SQL, "other", "other", "password", "other@test.org", "other", "other", zoneId);
+        addMember("a", "user", USER);
+        addMember("b", "a", GROUP);
+
+        Map<String, Set<ScimGroup>> groups = manager.getGroupsWithUsers(Arrays.asList("user", "other"), true);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), groups.get("user").stream().map(ScimGroup::getDisplayName).collect(Collectors.toSet()));
+        assertEquals(Collections.emptySet(), groups.get("other"));
+    }
+
+    @Test
+    public void closure_adapter_returns_nested_authorities() {
+        addMember("a", "user", USER);
+        addMember("b", "a", GROUP);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new ClosureGroupMembershipSqlAdapter().getGroupNames(jdbcTemplate, "user", zoneId));
+    }
+
+    private void addMember(String group, String member, ScimGroupMember.Type type) {
+        String memberId = type == USER ? member : groupId(member);
+        manager.addMember(groupId(group), new ScimGroupMember(memberId, type, Collections.singletonList(ScimGroupMember.Role.MEMBER)));
+    }
+
+    private String groupId(String displayName) {
+        return jdbcTemplate.queryForObject("select id from groups where displayName=? and identity_zone_id=?", String.class, displayName, zoneId);
+    }
+
+    private Set<String> getClosureRows() {
+        return new HashSet<>(jdbcTemplate.query("select member_id, group_id from group_membership_closure", (rs, rowNum) -> rs.getString(1) + ":" + rs.getString(2)));
+    }
+
+    private void assertGroups(String member, String... expected) {
+        String memberId = "user".equals(member) ? member : groupId(member);
+        Set<String> groups = manager.getGroupsWithMember(memberId, true).stream()
+            .map(ScimGroup::getDisplayName)
+            .filter(name -> !"uaa.user".equals(name))
+            .collect(Collectors.toSet());
+        assertEquals(new HashSet<>(Arrays.asList(expected)), groups);
+    }
+}
@@ -18,6 +18,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
@@ -252,6 +253,33 @@ public class JdbcScimGroupMembershipManagerTests extends JdbcTestBase {
         assertEquals(3, groups.size());
     }
 
+    @Test
+    public void canGetGroupsForUsers() {
+        addMembers();
+
+        Map<String, Set<ScimGroup>> groups = dao.getGroupsWithUsers(Arrays.asList("m1", "m2", "m3"), false);
+        assertEquals(3, groups.size());
+        assertEquals(1, groups.get("m1").size());
+        assertEquals(2, groups.get("m2").size());
+        assertEquals(3, groups.get("m3").size());
+
+        groups = dao.getGroupsWithUsers(Arrays.asList("m1", "m2", "m3"), true);
+        assertEquals(dao.getGroupsWithMember("m2", true), groups.get("m2"));
+        assertEquals(dao.getGroupsWithMember("m3", true), groups.get("m3"));
+    }
+
+    @Test
+    public void canGetGroupsForUsersEvenWhenCycleExistsInGroupHierarchy() {
+        addMember("g1", "m3", "USER", "READER");
+        addMember("g1", "g2", "GROUP", "READER");
+        addMember("g2", "g3", "GROUP", "READER");
+        addMember("g3", "g1", "GROUP", "READER");
+
+        Map<String, Set<ScimGroup>> groups = dao.getGroupsWithUsers(Arrays.asList("m2", "m3"), true);
+        assertEquals(4, groups.get("m3").size());
+        assertEquals(1, groups.get("m2").size());
+    }
+
     private void addMembers(String origin) {
         addMember("g1", "m3", "USER", "READER", origin);
         addMember("g1", "g2", "GROUP", "READER", origin);
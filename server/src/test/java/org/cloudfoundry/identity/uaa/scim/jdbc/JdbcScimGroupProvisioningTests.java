@@ -13,6 +13,7 @@
 package org.cloudfoundry.identity.uaa.scim.jdbc;
 
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.jdbc.DefaultLimitSqlAdapter;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.scim.ScimGroup;
@@ -41,6 +42,7 @@ import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -127,6 +129,53 @@ public class JdbcScimGroupProvisioningTests extends JdbcTestBase {
         assertEquals(3, dao.query("displayName eq \"foo\" or id sw \"g\"").size());
     }
 
+    @Test
+    public void canRetrieveGroupsByName() {
+        List<ScimGroup> groups = dao.getByName("UAA.User", IdentityZoneHolder.get().getId());
+        assertEquals(1, groups.size());
+        assertEquals("g1", groups.get(0).getId());
+        assertEquals(0, dao.getByName("uaa.user", "other-zone").size());
+        assertEquals(0, dao.getByName("uaa", IdentityZoneHolder.get().getId()).size());
+    }
+
+    @Test
+    public void canPageGroupsWithCursor() {
+        KeysetPage<ScimGroup> page = dao.queryPage("displayName pr", "displayName", true, "", 2);
+        assertEquals(3, page.getTotalResults());
+        assertEquals(Arrays.asList("openid", "uaa.admin"), page.getResources().stream().map(ScimGroup::getDisplayName).collect(Collectors.toList()));
+        assertNotNull(page.getNextCursor());
+
+        page = dao.queryPage("displayName pr", "displayName", true, page.getNextCursor(), 2);
+        assertEquals(3, page.getTotalResults());
+        assertEquals(Arrays.asList("uaa.user"), page.getResources().stream().map(ScimGroup::getDisplayName).collect(Collectors.toList()));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void canPageGroupsWithCursorWithoutTotal() {
+        KeysetPage<ScimGroup> page = dao.queryPage("displayName pr", "displayName", false, "", 2, false);
+        assertEquals(-1, page.getTotalResults());
+        assertEquals(Arrays.asList("uaa.user", "uaa.admin"), page.getResources().stream().map(ScimGroup::getDisplayName).collect(Collectors.toList()));
+
+        page = dao.queryPage("displayName pr", "displayName", false, page.getNextCursor(), 2, false);
+        assertEquals(-1, page.getTotalResults());
+        assertEquals(Arrays.asList("openid"), page.getResources().stream().map(ScimGroup::getDisplayName).collect(Collectors.toList()));
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void cursorPagingOfGroupsIsZoneScoped() {
+        IdentityZoneHolder.set(MultitenancyFixture.identityZone(new RandomValueStringGenerator().generate(), new RandomValueStringGenerator().generate()));
+        try {
+            KeysetPage<ScimGroup> page = dao.queryPage("displayName pr", "displayName", true, "", 10);
+            assertEquals(0, page.getTotalResults());
+            assertEquals(0, page.getResources().size());
+            assertNull(page.getNextCursor());
+        } finally {
+            IdentityZoneHolder.clear();
+        }
+    }
+
     @Test
     public void canRetrieveGroupsWithFilterAndSortBy() {
         assertEquals(3, dao.query("displayName pr", "id", true).size());
@@ -16,6 +16,7 @@ import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.provider.JdbcIdentityProviderProvisioning;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
@@ -35,6 +36,7 @@ import org.cloudfoundry.identity.uaa.zone.MultitenancyFixture;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
@@ -49,9 +51,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.cloudfoundry.identity.uaa.constants.OriginKeys.LOGIN_SERVER;
 import static org.cloudfoundry.identity.uaa.constants.OriginKeys.UAA;
@@ -973,6 +977,89 @@ public class JdbcScimUserProvisioningTests extends JdbcTestBase {
         assertEquals(2 + existingUserCount, db.query("username pr", "emails.value", true).size());
     }
 
+    @Test
+    public void canPageUsersWithCursor() {
+        List<String> expected = db.query("username pr", "created", true).stream().map(ScimUser::getId).collect(Collectors.toList());
+        List<String> ids = new ArrayList<>();
+        KeysetPage<ScimUser> page = db.queryPage("username pr", "created", true, "", 1);
+        while (true) {
+            assertEquals(2 + existingUserCount, page.getTotalResults());
+            assertEquals(1, page.getResources().size());
+            ids.add(page.getResources().get(0).getId());
+            if (page.getNextCursor() == null) {
+                break;
+            }
+            page = db.queryPage("username pr", "created", true, page.getNextCursor(), 1);
+        }
+        assertEquals(expected.size(), ids.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(ids));
+    }
+
+    @Test
+    public void canPageUsersWithCursorDescending() {
+        KeysetPage<ScimUser> page = db.queryPage("username eq \"joe\" or username eq \"mabel\"", "username", false, "", 1);
+        assertEquals(2, page.getTotalResults());
+        assertEquals("mabel", page.getResources().get(0).getUserName());
+        assertNotNull(page.getNextCursor());
+
+        page = db.queryPage("username eq \"joe\" or username eq \"mabel\"", "username", false, page.getNextCursor(), 1);
+        assertEquals(2, page.getTotalResults());
+        assertEquals("joe", page.getResources().get(0).getUserName());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void cursorPagingIsZoneScoped() {
+        IdentityZone zone = MultitenancyFixture.identityZone(generator.generate(), generator.generate());
+        IdentityZoneHolder.set(zone);
+        try {
+            KeysetPage<ScimUser> page = db.queryPage("username pr", "username", true, "", 10);
+            assertEquals(0, page.getTotalResults());
+            assertEquals(0, page.getResources().size());
+            assertNull(page.getNextCursor());
+        } finally {
+            IdentityZoneHolder.clear();
+        }
+    }
+
+    @Test
+    public void canStreamUsers() {
+        db.setExportFetchSize(1);
+        List<ScimUser> users = new ArrayList<>();
+        db.stream("username eq \"joe\" or username eq \"mabel\"", "username", false, users::add);
+        assertEquals(2, users.size());
+        assertEquals("mabel", users.get(0).getUserName());
+        assertEquals("joe", users.get(1).getUserName());
+
+        IdentityZoneHolder.set(MultitenancyFixture.identityZone(generator.generate(), generator.generate()));
+        users.clear();
+        db.stream("username pr", null, true, users::add);
+        assertEquals(0, users.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotStreamUsersWithInvalidSortField() {
+        db.stream("username pr", "password", true, user -> fail());
+    }
+
+    @Test(expected = DataAccessResourceFailureException.class)
+    public void streamFailureAfterFirstUserIsNotAnInvalidFilter() {
+        db.stream("username pr", "username", true, user -> {
+            throw new DataAccessResourceFailureException("Connection lost");
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotPageUsersWithCursorForDifferentSortOrder() {
+        KeysetPage<ScimUser> page = db.queryPage("username pr", "username", true, "", 1);
+        db.queryPage("username pr", "created", true, page.getNextCursor(), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotPageUsersWithInvalidCursor() {
+        db.queryPage("username pr", "username", true, "not-a-cursor", 1);
+    }
+
     @Test
     public void canRetrieveUsersWithFilterBooleanAnd() {
         assertEquals(2, db.query("username pr and emails.value co \".com\"").size());
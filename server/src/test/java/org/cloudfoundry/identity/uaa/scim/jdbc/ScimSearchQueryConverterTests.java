@@ -17,11 +17,15 @@ import org.cloudfoundry.identity.uaa.resources.jdbc.SearchQueryConverter.Process
 import org.junit.Before;
 import org.junit.Test;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ScimSearchQueryConverterTests {
 
@@ -141,6 +145,82 @@ public class ScimSearchQueryConverterTests {
         validate(filterProcessor.convert("username pr", "emails.value", true), "username IS NOT NULL ORDER BY email ASC", 0);
     }
 
+    @Test
+    public void filtersWithTheSameShapeShareOnePlan() {
+        ProcessedFilter joe = filterProcessor.convert("username eq \"joe\" and emails.value co \".com\"", null, false);
+        ProcessedFilter mabel = filterProcessor.convert("username eq \"mabel\" and emails.value co \".org\"", null, false);
+        assertEquals(1, filterProcessor.getCachedPlanCount());
+        validate(mabel, "(LOWER(username) = LOWER(:__value_0) AND LOWER(email) LIKE LOWER(:__value_1))", 2);
+        assertEquals(joe.getSql(), mabel.getSql());
+        assertEquals("joe", joe.getParams().get(joe.getParamPrefix() + "0"));
+        assertEquals("%.com%", joe.getParams().get(joe.getParamPrefix() + "1"));
+        assertEquals("mabel", mabel.getParams().get(mabel.getParamPrefix() + "0"));
+        assertEquals("%.org%", mabel.getParams().get(mabel.getParamPrefix() + "1"));
+    }
+
+    @Test
+    public void cachedPlansBindDatesAndConstants() throws Exception {
+        filterProcessor.convert("meta.created gt \"1970-01-01T00:00:00.000Z\" and password eq \"secret\"", null, false);
+        ProcessedFilter filter = filterProcessor.convert("meta.created gt \"2016-05-01T12:30:00.000Z\" and password eq \"other\"", null, false);
+        validate(filter, "(created > :__value_0 AND LOWER(password) = LOWER(:__value_1))", 2, Date.class, String.class);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        assertEquals(format.parse("2016-05-01T12:30:00.000Z"), filter.getParams().get(filter.getParamPrefix() + "0"));
+        assertEquals("", filter.getParams().get(filter.getParamPrefix() + "1"));
+
+        filterProcessor.convert("username eq \"joe\" and active eq true", null, false);
+        filter = filterProcessor.convert("username eq \"mabel\" and active eq true", null, false);
+        validate(filter, "(LOWER(username) = LOWER(:__value_0) AND active = :__value_1)", 2, String.class, Boolean.class);
+        assertEquals("mabel", filter.getParams().get(filter.getParamPrefix() + "0"));
+        assertEquals(2, filterProcessor.getCachedPlanCount());
+    }
+
+    @Test
+    public void datesAndStringsCompileToDifferentPlans() {
+        validate(filterProcessor.convert("meta.created gt \"1970-01-01T00:00:00.000Z\"", null, false), "created > :__value_0", 1, Date.class);
+        validate(filterProcessor.convert("meta.created gt \"yesterday\"", null, false), "LOWER(created) > LOWER(:__value_0)", 1, String.class);
+        assertEquals(2, filterProcessor.getCachedPlanCount());
+    }
+
+    @Test
+    public void sortOrderIsPartOfThePlan() {
+        validate(filterProcessor.convert("username eq \"joe\"", "username", true), "LOWER(username) = LOWER(:__value_0) ORDER BY username ASC", 1);
+        validate(filterProcessor.convert("username eq \"joe\"", "username", false), "LOWER(username) = LOWER(:__value_0) ORDER BY username DESC", 1);
+        validate(filterProcessor.convert("username eq \"joe\"", null, false), "LOWER(username) = LOWER(:__value_0)", 1);
+        assertEquals(3, filterProcessor.getCachedPlanCount());
+    }
+
+    @Test
+    public void legacyFiltersAreNotCached() {
+        validate(filterProcessor.convert("username eq 'joe'", null, false), "LOWER(username) = LOWER(:__value_0)", 1);
+        assertEquals(0, filterProcessor.getCachedPlanCount());
+    }
+
+    @Test
+    public void changingTheConverterDropsCachedPlans() {
+        filterProcessor.convert("username eq \"joe\"", null, false);
+        filterProcessor.setDbCaseInsensitive(true);
+        assertEquals(0, filterProcessor.getCachedPlanCount());
+        validate(filterProcessor.convert("username eq \"joe\"", null, false), "username = :__value_0", 1);
+    }
+
+    @Test
+    public void invalidFilterIsReportedWithItsValues() {
+        try {
+            filterProcessor.convert("username eq \"joe\" and", null, false);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("username eq \"joe\" and"));
+        }
+        assertEquals(0, filterProcessor.getCachedPlanCount());
+    }
+
+    @Test
+    public void planCacheCanBeDisabled() {
+        filterProcessor.setPlanCacheSize(0);
+        validate(filterProcessor.convert("username eq \"joe\"", null, false), "LOWER(username) = LOWER(:__value_0)", 1);
+        assertEquals(0, filterProcessor.getCachedPlanCount());
+    }
+
     private void validate(ProcessedFilter filter, String expectedSql, int expectedParamCount, Class... types) {
         assertNotNull(filter);
         expectedSql = expectedSql.replaceAll("__value_", filter.getParamPrefix());
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.user;
+
+import org.cloudfoundry.identity.uaa.account.event.PasswordChangeEvent;
+import org.cloudfoundry.identity.uaa.authentication.manager.ExternalGroupAuthorizationEvent;
+import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcCacheVersions;
+import org.cloudfoundry.identity.uaa.scim.event.GroupModifiedEvent;
+import org.cloudfoundry.identity.uaa.scim.event.UserModifiedEvent;
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class CachingUaaUserDatabaseTests extends JdbcTestBase {
+
+    private static final String ADD_USER_SQL = "insert into users (id, username, password, email, givenName, familyName, origin, identity_zone_id, created, lastmodified, passwd_lastmodified) values (?,?,?,?,?,?,?,?,?,?,?)";
+
+    private CachingUaaUserDatabase database;
+    private JdbcCacheVersions cacheVersions;
+    private String zoneId;
+
+    @Before
+    public void createDatabase() {
+        zoneId = IdentityZoneHolder.get().getId();
+        cacheVersions = new JdbcCacheVersions(jdbcTemplate);
+        database = newDatabase();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.update(ADD_USER_SQL, "user-id", "user", "password", "user@test.org", "user", "user", OriginKeys.UAA, zoneId, now, now, now);
+    }
+
+    @After
+    public void clearZone() {
+        IdentityZoneHolder.clear();
+    }
+
+    @Test
+    public void disabled_by_default() {
+        CachingUaaUserDatabase disabled = new CachingUaaUserDatabase(new JdbcUaaUserDatabase(jdbcTemplate), cacheVersions);
+        assertNotSame(disabled.retrieveUserById("user-id"), disabled.retrieveUserById("user-id"));
+        assertEquals(0, disabled.getSize());
+    }
+
+    @Test
+    public void user_is_served_from_cache() {
+        UaaUser first = database.retrieveUserById("user-id");
+        assertSame(first, database.retrieveUserById("user-id"));
+        assertEquals(1, database.getMissCount());
+        assertEquals(1, database.getHitCount());
+    }
+
+    @Test
+    public void user_modified_event_evicts_user_and_increments_version() {
+        UaaUser cached = database.retrieveUserById("user-id");
+        database.onApplicationEvent(UserModifiedEvent.userModified("user-id", "user"));
+        assertNotSame(cached, database.retrieveUserById("user-id"));
+        assertEquals(1, database.getEvictionCount());
+        assertEquals(1, cacheVersions.getVersion(CachingUaaUserDatabase.CACHE_NAME, zoneId));
+    }
+
+    @Test
+    public void user_modified_event_changes_version_on_this_node() {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.update(ADD_USER_SQL, "other-id", "other", "password", "other@test.org", "other", "other", OriginKeys.UAA, zoneId, now, now, now);
+        UaaUser other = database.retrieveUserById("other-id");
+        database.onApplicationEvent(UserModifiedEvent.userModified("user-id", "user"));
+        assertNotSame(other, database.retrieveUserById("other-id"));
+    }
+
+    @Test
+    public void group_modified_event_evicts_zone_and_increments_version() {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.update(ADD_USER_SQL, "other-id", "other", "password", "other@test.org", "other", "other", OriginKeys.UAA, zoneId, now, now, now);
+        UaaUser cached = database.retrieveUserById("user-id");
+        UaaUser nested = database.retrieveUserById("other-id");
+        database.onApplicationEvent(GroupModifiedEvent.groupModified("group-id", "group", new String[] {"user-id"}));
+        assertNotSame(cached, database.retrieveUserById("user-id"));
+        assertNotSame(nested, database.retrieveUserById("other-id"));
+        assertEquals(1, cacheVersions.getVersion(CachingUaaUserDatabase.CACHE_NAME, zoneId));
+    }
+
+    @Test
+    public void group_changes_by_other_nodes_are_detected_by_version() {
+        database.setRefreshCheckInSeconds(0);
+        CachingUaaUserDatabase otherNode = newDatabase();
+        UaaUser cached = database.retrieveUserById("user-id");
+        otherNode.onApplicationEvent(GroupModifiedEvent.groupModified("group-id", "group", new String[0]));
+        assertNotSame(cached, database.retrieveUserById("user-id"));
+    }
+
+    @Test
+    public void external_group_authorization_evicts_user_and_increments_version() {
+        UaaUser cached = database.retrieveUserById("user-id");
+        database.onApplicationEvent(new ExternalGroupAuthorizationEvent(cached, false, Collections.emptyList(), true));
+        assertNotSame(cached, database.retrieveUserById("user-id"));
+        assertEquals(1, database.getEvictionCount());
+        assertEquals(1, cacheVersions.getVersion(CachingUaaUserDatabase.CACHE_NAME, zoneId));
+    }
+
+    @Test
+    public void password_last_modified_is_cached_without_loading_user() {
+        Date first = database.retrievePasswordLastModified("user-id");
+        assertNotNull(first);
+        assertSame(first, database.retrievePasswordLastModified("user-id"));
+        assertEquals(0, database.getSize());
+        assertEquals(1, database.getPasswordEntryCount());
+    }
+
+    @Test
+    public void password_change_evicts_password_last_modified() {
+        Date cached = database.retrievePasswordLastModified("user-id");
+        Timestamp changed = new Timestamp(cached.getTime() + 1000);
+        jdbcTemplate.update("update users set passwd_lastmodified=? where id=?", changed, "user-id");
+        UaaUser user = new UaaUser("user-id", "user", "password", "user@test.org", Collections.emptyList(), "user", "user",
+            cached, cached, OriginKeys.UAA, null, true, zoneId, null, changed);
+        database.onApplicationEvent(new PasswordChangeEvent("Password changed", user, null));
+        assertEquals(changed.getTime(), database.retrievePasswordLastModified("user-id").getTime());
+    }
+
+    @Test
+    public void changes_by_other_nodes_are_detected_by_version() {
+        database.setRefreshCheckInSeconds(0);
+        CachingUaaUserDatabase otherNode = newDatabase();
+        UaaUser cached = database.retrieveUserById("user-id");
+        assertSame(cached, database.retrieveUserById("user-id"));
+
+        jdbcTemplate.update("update users set givenName=? where id=?", "changed", "user-id");
+        otherNode.onApplicationEvent(UserModifiedEvent.userModified("user-id", "user"));
+        UaaUser reloaded = database.retrieveUserById("user-id");
+        assertNotSame(cached, reloaded);
+        assertEquals("changed", reloaded.getGivenName());
+        assertSame(reloaded, database.retrieveUserById("user-id"));
+    }
+
+    private CachingUaaUserDatabase newDatabase() {
+        JdbcUaaUserDatabase jdbcDatabase = new JdbcUaaUserDatabase(jdbcTemplate);
+        jdbcDatabase.setDefaultAuthorities(Collections.singleton("uaa.user"));
+        CachingUaaUserDatabase result = new CachingUaaUserDatabase(jdbcDatabase, cacheVersions);
+        result.setEnabled(true);
+        return result;
+    }
+}
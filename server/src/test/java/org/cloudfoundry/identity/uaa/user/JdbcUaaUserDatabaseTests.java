@@ -129,6 +129,16 @@ public class JdbcUaaUserDatabaseTests extends JdbcTestBase {
         assertEquals(joe.getCreated(), joe.getPasswordLastModified());
     }
 
+    @Test
+    public void passwordLastModifiedIsRetrievedWithoutUser() {
+        assertEquals(db.retrieveUserById(JOE_ID).getPasswordLastModified(), db.retrievePasswordLastModified(JOE_ID));
+        try {
+            db.retrievePasswordLastModified(ALICE_ID);
+            fail("User in another zone should not be found");
+        } catch (UsernameNotFoundException expected) {
+        }
+    }
+
     @Test
     public void getSaltValueWorks() {
         UaaUser joe = db.retrieveUserByName("joe", OriginKeys.UAA);
@@ -248,6 +258,31 @@ public class JdbcUaaUserDatabaseTests extends JdbcTestBase {
         evaluateNestedJoe();
     }
 
+    @Test
+    public void getUserWithNestedAuthoritiesWorks_with_database_adapter() {
+        db.setGroupMembershipSqlAdapter(webApplicationContext.getBean(GroupMembershipSqlAdapter.class));
+        getUserWithNestedAuthoritiesWorks();
+    }
+
+    @Test
+    public void nested_authorities_are_limited_to_zone() {
+        db.setGroupMembershipSqlAdapter(webApplicationContext.getBean(GroupMembershipSqlAdapter.class));
+        String directId = new RandomValueStringGenerator().generate();
+        String otherZoneId = new RandomValueStringGenerator().generate();
+        jdbcTemplate.update(ADD_GROUP_SQL, directId, "direct", IdentityZoneHolder.get().getId());
+        jdbcTemplate.update(ADD_GROUP_SQL, otherZoneId, "other.zone", otherIdentityZone.getId());
+        jdbcTemplate.update(ADD_MEMBER_SQL, directId, JOE_ID, "USER", "MEMBER");
+        jdbcTemplate.update(ADD_MEMBER_SQL, otherZoneId, directId, "GROUP", "MEMBER");
+
+        UaaUser joe = db.retrieveUserById(JOE_ID);
+        assertThat(joe.getAuthorities(),
+                   containsInAnyOrder(
+                       new SimpleGrantedAuthority("direct"),
+                       new SimpleGrantedAuthority("uaa.user")
+                   )
+        );
+    }
+
     protected void evaluateNestedJoe() {
         UaaUser joe;
         joe = db.retrieveUserByName("joe", OriginKeys.UAA);
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.util;
+
+import org.cloudfoundry.identity.uaa.authentication.PasswordCheckRejectedException;
+import org.cloudfoundry.identity.uaa.authentication.UaaExceptionTranslator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BoundedPasswordEncoderTest {
+
+    private CountDownLatch release;
+    private String checkedOn;
+    private BoundedPasswordEncoder encoder;
+    private ExecutorService callers;
+
+    @Before
+    public void setUpEncoder() {
+        release = new CountDownLatch(0);
+        encoder = new BoundedPasswordEncoder(new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                checkedOn = Thread.currentThread().getName();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString().equals(encodedPassword);
+            }
+        });
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void shutdown() {
+        release.countDown();
+        callers.shutdownNow();
+        encoder.destroy();
+    }
+
+    @Test
+    public void disabled_checks_on_calling_thread() {
+        encoder.afterPropertiesSet();
+        assertTrue(encoder.matches("password", "password"));
+        assertEquals(Thread.currentThread().getName(), checkedOn);
+    }
+
+    @Test
+    public void enabled_checks_on_pool() {
+        encoder.setEnabled(true);
+        encoder.afterPropertiesSet();
+        assertTrue(encoder.matches("password", "password"));
+        assertFalse(encoder.matches("password", "other"));
+        assertNotEquals(Thread.currentThread().getName(), checkedOn);
+        assertEquals(0, encoder.getPendingCount());
+    }
+
+    @Test
+    public void full_pool_rejects_with_service_unavailable() throws Exception {
+        encoder.setEnabled(true);
+        encoder.setPoolSize(1);
+        encoder.setMaxQueued(0);
+        encoder.afterPropertiesSet();
+        Future<Boolean> blocked = blockPool(1);
+
+        PasswordCheckRejectedException rejection = assertRejected();
+        assertEquals(503, rejection.getHttpStatus());
+        assertEquals(503, new UaaExceptionTranslator().translate(rejection).getStatusCode().value());
+        assertEquals(1, encoder.getRejectedCount());
+
+        release.countDown();
+        assertTrue(blocked.get());
+    }
+
+    @Test
+    public void zone_limit_rejects_with_too_many_requests() throws Exception {
+        encoder.setEnabled(true);
+        encoder.setPoolSize(2);
+        encoder.setMaxQueued(2);
+        encoder.setMaxPendingPerZone(1);
+        encoder.afterPropertiesSet();
+        Future<Boolean> blocked = blockPool(1);
+
+        assertEquals(429, assertRejected().getHttpStatus());
+        assertEquals(1, encoder.getZoneRejectedCount());
+
+        release.countDown();
+        assertTrue(blocked.get());
+    }
+
+    private Future<Boolean> blockPool(int checks) throws InterruptedException {
+        release = new CountDownLatch(1);
+        Future<Boolean> result = callers.submit(() -> encoder.matches("password", "password"));
+        for (int i = 0; i < 100 && encoder.getPendingCount() < checks; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(checks, encoder.getPendingCount());
+        return result;
+    }
+
+    private PasswordCheckRejectedException assertRejected() {
+        try {
+            encoder.matches("password", "password");
+            fail("Password check should have been rejected");
+            return null;
+        } catch (PasswordCheckRejectedException e) {
+            return e;
+        }
+    }
+}
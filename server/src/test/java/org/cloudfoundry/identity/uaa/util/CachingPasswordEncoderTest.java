@@ -18,8 +18,12 @@ import org.junit.Test;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
@@ -85,10 +89,10 @@ public class CachingPasswordEncoderTest  {
         for (int i=0; i<iterations; i++) {
             assertTrue(cachingPasswordEncoder.getPasswordEncoder().matches(password, encoded));
             assertTrue(cachingPasswordEncoder.matches(password, encoded));
-            assertTrue(cachingPasswordEncoder.getOrCreateHashList(cacheKey).size()>0);
+            assertTrue(cachingPasswordEncoder.getHashes(cacheKey).size()>0);
         }
         Thread.sleep(5500);
-        assertTrue(cachingPasswordEncoder.getOrCreateHashList(cacheKey).size()==0);
+        assertTrue(cachingPasswordEncoder.getHashes(cacheKey).size()==0);
     }
 
     @Test
@@ -146,8 +150,10 @@ public class CachingPasswordEncoderTest  {
         String password = new RandomValueStringGenerator().generate();
         String encoded = cachingPasswordEncoder.encode(password);
         assertTrue(cachingPasswordEncoder.matches(password, encoded));
-        //overflow happened
-        assertEquals(1, cachingPasswordEncoder.getNumberOfKeys());
+        //overflow evicted the least recently used keys, not the whole cache
+        assertTrue(cachingPasswordEncoder.getNumberOfKeys() > 1);
+        assertTrue(cachingPasswordEncoder.getNumberOfKeys() < maxkeys + 1);
+        assertTrue(cachingPasswordEncoder.getEvictionCount() > 0);
 
 
         for (int j=1; j<cachingPasswordEncoder.getMaxEncodedPasswords(); j++) {
@@ -155,13 +161,41 @@ public class CachingPasswordEncoderTest  {
             assertTrue(cachingPasswordEncoder.matches(password, encoded));
         }
 
-        ConcurrentMap<CharSequence, Set<String>> cache = cachingPasswordEncoder.asMap();
+        ConcurrentMap<CharSequence, List<String>> cache = cachingPasswordEncoder.asMap();
         assertNotNull(cache);
-        Set<String> passwords = cache.get(cachingPasswordEncoder.cacheEncode(password));
+        String cacheKey = cachingPasswordEncoder.cacheEncode(password);
+        List<String> passwords = cache.get(cacheKey);
         assertNotNull(passwords);
         assertEquals(maxpasswords, passwords.size());
-        cachingPasswordEncoder.matches(password, cachingPasswordEncoder.encode(password));
-        assertEquals(1, passwords.size());
+        encoded = cachingPasswordEncoder.encode(password);
+        cachingPasswordEncoder.matches(password, encoded);
+        //the oldest hash is replaced by the newest one
+        List<String> replaced = cache.get(cacheKey);
+        assertEquals(maxpasswords, replaced.size());
+        assertFalse(replaced.contains(passwords.get(0)));
+        assertEquals(encoded, replaced.get(maxpasswords - 1));
+        assertTrue(cache.values().stream().mapToInt(List::size).sum() <= maxkeys * maxpasswords);
+    }
+
+    @Test
+    public void testConcurrentMatches() throws Exception {
+        String encoded = cachingPasswordEncoder.encode(password);
+        assertTrue(cachingPasswordEncoder.matches(password, encoded));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i=0; i<200; i++) {
+                results.add(executor.submit(() -> cachingPasswordEncoder.matches(password, encoded)));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(200, cachingPasswordEncoder.getHitCount());
+        assertEquals(1, cachingPasswordEncoder.getMissCount());
+        assertEquals(0, cachingPasswordEncoder.getConcurrentCheckCount());
     }
 
 
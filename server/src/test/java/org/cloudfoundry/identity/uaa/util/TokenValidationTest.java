@@ -46,6 +46,7 @@ import static org.cloudfoundry.identity.uaa.util.UaaMapUtils.map;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -143,6 +144,18 @@ public class TokenValidationTest {
         assertTrue(validation.isValid());
     }
 
+    @Test
+    public void validateToken_Keeps_Loaded_Client_And_User() throws Exception {
+        TokenValidation validation = validate(getToken())
+            .checkClient(clientDetailsService)
+            .checkUser(userDb);
+
+        assertTrue(validation.isValid());
+        assertEquals("app", validation.getClientDetails().getClientId());
+        assertEquals("a7f07bf6-e720-4652-8999-e980189cef54", validation.getUser().getId());
+        assertEquals("app", validation.clone().getClientDetails().getClientId());
+    }
+
     @Test
     public void validateToken_Without_Email_And_Username() throws Exception {
         TokenValidation validation = validate(getToken(Arrays.asList(EMAIL, USER_NAME)))
@@ -12,10 +12,13 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.util;
 
+import org.cloudfoundry.identity.uaa.user.UaaUser;
 import org.junit.Test;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 import org.springframework.util.StringUtils;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -38,6 +41,21 @@ public class UaaTokenUtilsTest {
         assertEquals(hash1, hash2);
     }
 
+    @Test
+    public void testRevocableTokenSignatureMatchesRevocationHash() throws Exception {
+        BaseClientDetails client = new BaseClientDetails("client", null, "openid", "password", null);
+        UaaUser user = new UaaUser("marissa", "password-hash", "marissa@test.org", "Marissa", "Bloggs");
+
+        assertEquals(
+            UaaTokenUtils.getRevocationHash(Arrays.asList("client", "secret", user.getId(), "password-hash", "marissa@test.org", "marissa")),
+            UaaTokenUtils.getRevocableTokenSignature(client, "secret", user)
+        );
+        assertEquals(
+            UaaTokenUtils.getRevocationHash(Arrays.asList("client")),
+            UaaTokenUtils.getRevocableTokenSignature(client, null, null)
+        );
+    }
+
     @Test
     public void isJwtToken() {
 
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.zone;
+
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcCacheVersions;
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class CachingClientDetailsServiceTests extends JdbcTestBase {
+
+    private CachingClientDetailsService service;
+    private JdbcCacheVersions cacheVersions;
+    private String zoneId;
+
+    @Before
+    public void createService() {
+        zoneId = IdentityZoneHolder.get().getId();
+        cacheVersions = new JdbcCacheVersions(jdbcTemplate);
+        service = newService();
+        BaseClientDetails client = new BaseClientDetails("client-id", null, "openid", "client_credentials", "uaa.none");
+        client.setClientSecret("secret");
+        client.addAdditionalInformation("name", "client");
+        service.addClientDetails(client);
+    }
+
+    @After
+    public void clearContext() {
+        RequestContextHolder.resetRequestAttributes();
+        IdentityZoneHolder.clear();
+    }
+
+    @Test
+    public void disabled_by_default() {
+        CachingClientDetailsService disabled = new CachingClientDetailsService(new MultitenantJdbcClientDetailsService(dataSource), cacheVersions);
+        disabled.loadClientByClientId("client-id");
+        disabled.loadClientByClientId("client-id");
+        assertEquals(0, disabled.getSize());
+        assertEquals(0, disabled.getMissCount());
+    }
+
+    @Test
+    public void client_is_served_from_cache() {
+        ClientDetails first = service.loadClientByClientId("client-id");
+        ClientDetails second = service.loadClientByClientId("client-id");
+        assertNotSame(first, second);
+        assertEquals("client", second.getAdditionalInformation().get("name"));
+        assertEquals(1, service.getMissCount());
+        assertEquals(1, service.getHitCount());
+    }
+
+    @Test
+    public void changes_to_loaded_client_are_not_cached() {
+        BaseClientDetails loaded = (BaseClientDetails) service.loadClientByClientId("client-id");
+        loaded.addAdditionalInformation("name", "changed");
+        loaded.setClientSecret("changed");
+        ClientDetails reloaded = service.loadClientByClientId("client-id");
+        assertEquals("client", reloaded.getAdditionalInformation().get("name"));
+        assertEquals("secret", reloaded.getClientSecret());
+    }
+
+    @Test
+    public void update_evicts_client_and_increments_version() {
+        BaseClientDetails client = (BaseClientDetails) service.loadClientByClientId("client-id");
+        client.addAdditionalInformation("name", "changed");
+        service.updateClientDetails(client);
+        assertEquals("changed", service.loadClientByClientId("client-id").getAdditionalInformation().get("name"));
+        assertEquals(1, service.getEvictionCount());
+        assertEquals(2, cacheVersions.getVersion(CachingClientDetailsService.CACHE_NAME, zoneId));
+    }
+
+    @Test
+    public void secret_change_evicts_client() {
+        service.loadClientByClientId("client-id");
+        service.updateClientSecret("client-id", "new-secret");
+        assertEquals("new-secret", service.loadClientByClientId("client-id").getClientSecret());
+    }
+
+    @Test
+    public void zone_deletion_evicts_zone() {
+        service.loadClientByClientId("client-id");
+        IdentityZone zone = new IdentityZone();
+        zone.setId(zoneId);
+        service.onApplicationEvent(new EntityDeletedEvent<>(zone, null));
+        assertEquals(0, service.getSize());
+    }
+
+    @Test
+    public void changes_by_other_nodes_are_detected_by_version() {
+        service.setRefreshCheckInSeconds(0);
+        CachingClientDetailsService otherNode = newService();
+        service.loadClientByClientId("client-id");
+
+        otherNode.updateClientSecret("client-id", "new-secret");
+        assertEquals("new-secret", service.loadClientByClientId("client-id").getClientSecret());
+        assertEquals(2, service.getMissCount());
+    }
+
+    @Test
+    public void client_is_loaded_once_per_request() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        service.setEnabled(false);
+        service.loadClientByClientId("client-id");
+        jdbcTemplate.update("update oauth_client_details set client_secret=? where client_id=?", "changed", "client-id");
+        assertEquals("secret", service.loadClientByClientId("client-id").getClientSecret());
+
+        service.updateClientSecret("client-id", "new-secret");
+        assertEquals("new-secret", service.loadClientByClientId("client-id").getClientSecret());
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        jdbcTemplate.update("update oauth_client_details set client_secret=? where client_id=?", "changed", "client-id");
+        assertEquals("changed", service.loadClientByClientId("client-id").getClientSecret());
+    }
+
+    private CachingClientDetailsService newService() {
+        CachingClientDetailsService result = new CachingClientDetailsService(new MultitenantJdbcClientDetailsService(dataSource), cacheVersions);
+        result.setEnabled(true);
+        return result;
+    }
+}
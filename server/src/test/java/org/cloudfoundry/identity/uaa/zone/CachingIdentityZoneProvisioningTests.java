@@ -0,0 +1,78 @@
+package org.cloudfoundry.identity.uaa.zone;
+
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CachingIdentityZoneProvisioningTests extends JdbcTestBase {
+
+    private CachingIdentityZoneProvisioning provisioning;
+    private RandomValueStringGenerator generator = new RandomValueStringGenerator(8);
+    private IdentityZone zone;
+
+    @Before
+    public void createProvisioning() throws Exception {
+        provisioning = new CachingIdentityZoneProvisioning(new JdbcIdentityZoneProvisioning(jdbcTemplate));
+        IdentityZone identityZone = MultitenancyFixture.identityZone(generator.generate(), generator.generate());
+        zone = provisioning.create(identityZone);
+    }
+
+    @Test
+    public void zone_is_served_from_cache() {
+        IdentityZone first = provisioning.retrieveBySubdomain(zone.getSubdomain());
+        IdentityZone second = provisioning.retrieveBySubdomain(zone.getSubdomain().toUpperCase());
+        assertSame(first, second);
+        assertEquals(1, provisioning.getMissCount());
+        assertEquals(1, provisioning.getHitCount());
+    }
+
+    @Test
+    public void update_evicts_zone() {
+        IdentityZone cached = provisioning.retrieveBySubdomain(zone.getSubdomain());
+        cached.setName("updated");
+        provisioning.update(cached);
+        IdentityZone reloaded = provisioning.retrieveBySubdomain(zone.getSubdomain());
+        assertNotSame(cached, reloaded);
+        assertEquals("updated", reloaded.getName());
+    }
+
+    @Test
+    public void modified_event_evicts_zone() {
+        IdentityZone cached = provisioning.retrieveBySubdomain(zone.getSubdomain());
+        provisioning.onApplicationEvent(IdentityZoneModifiedEvent.identityZoneModified(cached));
+        assertNotSame(cached, provisioning.retrieveBySubdomain(zone.getSubdomain()));
+    }
+
+    @Test
+    public void changes_by_other_nodes_are_detected_by_version() {
+        provisioning.setRefreshCheckInSeconds(0);
+        IdentityZone cached = provisioning.retrieveBySubdomain(zone.getSubdomain());
+        assertSame(cached, provisioning.retrieveBySubdomain(zone.getSubdomain()));
+
+        jdbcTemplate.update("update identity_zone set version=version+1, name=? where id=?", "changed", zone.getId());
+        IdentityZone reloaded = provisioning.retrieveBySubdomain(zone.getSubdomain());
+        assertNotSame(cached, reloaded);
+        assertEquals("changed", reloaded.getName());
+    }
+
+    @Test
+    public void deleted_zone_is_not_served() {
+        provisioning.retrieveBySubdomain(zone.getSubdomain());
+        jdbcTemplate.update("delete from identity_zone where id=?", zone.getId());
+        provisioning.onApplicationEvent(new EntityDeletedEvent<>(zone, null));
+        try {
+            provisioning.retrieveBySubdomain(zone.getSubdomain());
+            fail("Deleted zone should not be returned");
+        } catch (EmptyResultDataAccessException expected) {
+        }
+    }
+}
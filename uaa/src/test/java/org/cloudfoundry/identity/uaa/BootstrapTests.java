@@ -17,7 +17,10 @@ import org.cloudfoundry.identity.uaa.impl.config.YamlServletProfileInitializer;
 import org.cloudfoundry.identity.uaa.client.ClientAdminBootstrap;
 import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.test.TestUtils;
+import org.cloudfoundry.identity.uaa.user.CachingUaaUserDatabase;
 import org.cloudfoundry.identity.uaa.user.JdbcUaaUserDatabase;
+import org.cloudfoundry.identity.uaa.zone.CachingClientDetailsService;
+import org.cloudfoundry.identity.uaa.zone.MultitenantJdbcClientDetailsService;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -86,6 +89,7 @@ public class BootstrapTests {
         if (context != null) {
             if (context.containsBean("scimEndpoints")) {
                 TestUtils.deleteFrom(context.getBean("dataSource", DataSource.class), "sec_audit");
+                TestUtils.deleteFrom(context.getBean("dataSource", DataSource.class), "login_lockout_state");
             }
             context.close();
         }
@@ -94,7 +98,10 @@ public class BootstrapTests {
     @Test
     public void testRootContextDefaults() throws Exception {
         context = getServletContext("hsqldb", "file:./src/main/webapp/WEB-INF/spring-servlet.xml");
-        assertNotNull(context.getBean("userDatabase", JdbcUaaUserDatabase.class));
+        assertNotNull(context.getBean("jdbcUserDatabase", JdbcUaaUserDatabase.class));
+        assertNotNull(context.getBean("userDatabase", CachingUaaUserDatabase.class));
+        assertNotNull(context.getBean("multitenantJdbcClientDetailsService", MultitenantJdbcClientDetailsService.class));
+        assertNotNull(context.getBean("jdbcClientDetailsService", CachingClientDetailsService.class));
         FilterChainProxy filterChain = (FilterChainProxy)context.getBean("org.springframework.security.filterChainProxy");
         MockHttpServletResponse response = new MockHttpServletResponse();
         MockHttpServletRequest request = new MockHttpServletRequest("GET", "/Users");